@@ -0,0 +1,179 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Dados e utilitários compartilhados pelos benchmarks. Os serviços são instanciados diretamente, sem o contexto
+ * Spring; as dependências são atribuídas por reflexão.
+ */
+final class BenchmarkFixtures {
+
+    static final int NESTED_DEPTH = 3;
+    static final int NESTED_ITEMS = 4;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Atribui um valor a um campo privado (dependências @Autowired) do objeto
+     *
+     * @param target    Objeto alvo
+     * @param fieldName Nome do campo
+     * @param value     Valor a ser atribuído
+     */
+    static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static FieldTypeService fieldTypeService() {
+        return new FieldTypeService();
+    }
+
+    static EntityOperationService entityOperationService(FieldTypeService fieldTypeService) {
+        EntityOperationService entityOperationService = new EntityOperationService();
+        inject(entityOperationService, "fieldTypeService", fieldTypeService);
+        inject(entityOperationService, "metricsService", new MetricsService());
+        return entityOperationService;
+    }
+
+    /**
+     * Entidade com campos simples de todos os tipos escalares e validações usuais
+     */
+    static EntityDescriptor flatDescriptor(List<String> keys) {
+        FieldDescriptor nome = new FieldDescriptor("nome", FieldTypeService.DefaultFieldTypes.STRING, false);
+        nome.setMinLength(3);
+        nome.setMaxLength(100);
+        FieldDescriptor valor = new FieldDescriptor("valor", FieldTypeService.DefaultFieldTypes.DECIMAL, false);
+        valor.setMin(BigDecimal.ZERO);
+        FieldDescriptor quantidade = new FieldDescriptor("quantidade", FieldTypeService.DefaultFieldTypes.INTEGER, true);
+        quantidade.setMin(BigDecimal.ZERO);
+        quantidade.setMax(BigDecimal.valueOf(10000));
+        FieldDescriptor situacao = new FieldDescriptor("situacao", FieldTypeService.DefaultFieldTypes.STRING, false);
+        situacao.setAllowedValues(Arrays.asList("ATIVO", "INATIVO", "BLOQUEADO"));
+        FieldDescriptor ativo = new FieldDescriptor("ativo", FieldTypeService.DefaultFieldTypes.BOOLEAN, false);
+        ativo.setDefaultValue("true");
+        FieldDescriptor tags = new FieldDescriptor("tags", FieldTypeService.DefaultFieldTypes.STRING_ARR, true);
+        tags.setMaxLength(10);
+
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setUriName("produto");
+        descriptor.setEntityName("Produto");
+        descriptor.setKeys(keys);
+        descriptor.setFields(Arrays.asList(
+                new FieldDescriptor("empresa", FieldTypeService.DefaultFieldTypes.INTEGER, false),
+                new FieldDescriptor("codigo", FieldTypeService.DefaultFieldTypes.LONG, false),
+                nome, valor, quantidade, situacao, ativo, tags,
+                new FieldDescriptor("cadastro", FieldTypeService.DefaultFieldTypes.TIMESTAMP, true)
+        ));
+        return descriptor;
+    }
+
+    static Map<String, Object> flatValues() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("empresa", 10);
+        values.put("codigo", 123456L);
+        values.put("nome", "Produto de teste");
+        values.put("valor", "1234.56");
+        values.put("quantidade", 42);
+        values.put("situacao", "ATIVO");
+        values.put("tags", Arrays.asList("a", "b", "c"));
+        values.put("cadastro", "2018-04-01T20:38:55.000+0000");
+        values.put("naoDeclarado", "ignorado");
+        return values;
+    }
+
+    /**
+     * Entidade com {@value #NESTED_DEPTH} níveis de Document[] aninhados
+     */
+    static EntityDescriptor nestedDescriptor() {
+        List<FieldDescriptor> fields = leafFields();
+        for (int i = NESTED_DEPTH; i > 0; i--) {
+            List<FieldDescriptor> level = new ArrayList<>(leafFields());
+            level.add(new FieldDescriptor("itens", FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, true, fields));
+            fields = level;
+        }
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setUriName("pedido");
+        descriptor.setEntityName("Pedido");
+        descriptor.setKeys(Collections.singletonList("codigo"));
+        descriptor.setFields(fields);
+        return descriptor;
+    }
+
+    static Map<String, Object> nestedValues() {
+        Map<String, Object> values = leafValues(0);
+        for (int i = NESTED_DEPTH; i > 0; i--) {
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (int j = 0; j < NESTED_ITEMS; j++) {
+                Map<String, Object> item = leafValues(j);
+                item.put("itens", values.get("itens"));
+                items.add(item);
+            }
+            values = leafValues(i);
+            values.put("itens", items);
+        }
+        return values;
+    }
+
+    private static List<FieldDescriptor> leafFields() {
+        FieldDescriptor descricao = new FieldDescriptor("descricao", FieldTypeService.DefaultFieldTypes.STRING, true);
+        descricao.setMaxLength(200);
+        return Arrays.asList(
+                new FieldDescriptor("codigo", FieldTypeService.DefaultFieldTypes.LONG, false),
+                descricao,
+                new FieldDescriptor("valor", FieldTypeService.DefaultFieldTypes.DECIMAL, true)
+        );
+    }
+
+    private static Map<String, Object> leafValues(int index) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("codigo", (long) index);
+        values.put("descricao", "Item " + index);
+        values.put("valor", 10.5 * index);
+        return values;
+    }
+
+    /**
+     * Dados do descritor no formato enviado ao cadastro de entidades
+     */
+    static Map<String, Object> descriptorData(EntityDescriptor descriptor) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(EntityManagementService.URI_FIELD_NAME, descriptor.getUriName());
+        data.put(EntityManagementService.ENTITY_FIELD_NAME, descriptor.getEntityName());
+        data.put(EntityManagementService.KEYS_FIELD_NAME, descriptor.getKeys());
+        data.put(EntityManagementService.FIELDS_FIELD_NAME, fieldsData(descriptor.getFields()));
+        return data;
+    }
+
+    private static List<Map<String, Object>> fieldsData(List<FieldDescriptor> fields) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (FieldDescriptor field : fields) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("fieldName", field.getFieldName());
+            data.put("fieldType", field.getFieldType());
+            data.put("nullable", field.getNullable());
+            data.put("allowedValues", field.getAllowedValues());
+            data.put("min", field.getMin());
+            data.put("max", field.getMax());
+            data.put("minLength", field.getMinLength());
+            data.put("maxLength", field.getMaxLength());
+            data.put("defaultValue", field.getDefaultValue());
+            if (field.getDocumentFields() != null) {
+                data.put("documentFields", fieldsData(field.getDocumentFields()));
+            }
+            result.add(data);
+        }
+        return result;
+    }
+}
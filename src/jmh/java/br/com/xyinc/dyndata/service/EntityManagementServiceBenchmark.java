@@ -0,0 +1,57 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Obtenção de descritores de entidade: desserialização do documento de configuração (cache invalidado a cada
+ * chamada) e leitura do cache em memória
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityManagementServiceBenchmark {
+
+    private EntityManagementService entityManagementService;
+    private String                  uriName;
+
+    @Setup
+    public void setUp() {
+        FieldTypeService fieldTypeService = BenchmarkFixtures.fieldTypeService();
+        entityManagementService = new EntityManagementService();
+        BenchmarkFixtures.inject(entityManagementService, "fieldTypeService", fieldTypeService);
+
+        EntityDescriptor descriptor = BenchmarkFixtures.nestedDescriptor();
+        uriName = descriptor.getUriName();
+        // Documento como gravado na coleção de configuração e lido de volta pelo driver
+        Document stored = fieldTypeService.toDocument(entityManagementService.getConfigurationCollection(), BenchmarkFixtures.descriptorData(descriptor));
+        List<Document> result = Collections.singletonList(Document.parse(stored.toJson()));
+
+        BenchmarkFixtures.inject(entityManagementService, "entityOperationService", new EntityOperationService() {
+            @Override
+            public List<Document> query(EntityDescriptor descriptor, Bson query) {
+                return result;
+            }
+        });
+    }
+
+    @Benchmark
+    public EntityDescriptor findEntityDescriptorUncached() {
+        entityManagementService.invalidateEntityDescriptor(uriName);
+        return entityManagementService.findEntityDescriptor(uriName);
+    }
+
+    @Benchmark
+    public EntityDescriptor findEntityDescriptorCached() {
+        return entityManagementService.findEntityDescriptor(uriName);
+    }
+}
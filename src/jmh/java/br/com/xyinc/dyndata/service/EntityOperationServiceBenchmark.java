@@ -0,0 +1,52 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import org.bson.conversions.Bson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Montagem dos filtros de chave e da projeção de campos usados em toda leitura e escrita de entidades
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityOperationServiceBenchmark {
+
+    private EntityOperationService entityOperationService;
+    private EntityDescriptor       singleKeyDescriptor;
+    private EntityDescriptor       compositeKeyDescriptor;
+    private List<String>           singleKeyId;
+    private List<String>           compositeKeyId;
+
+    @Setup
+    public void setUp() {
+        entityOperationService = BenchmarkFixtures.entityOperationService(BenchmarkFixtures.fieldTypeService());
+        singleKeyDescriptor = BenchmarkFixtures.flatDescriptor(Collections.singletonList("codigo"));
+        compositeKeyDescriptor = BenchmarkFixtures.flatDescriptor(Arrays.asList("empresa", "codigo"));
+        singleKeyId = Collections.singletonList("123456");
+        compositeKeyId = Arrays.asList("10", "123456");
+    }
+
+    @Benchmark
+    public Bson getKeysFromEntitySingle() {
+        return entityOperationService.getKeysFromEntity(singleKeyDescriptor, singleKeyId);
+    }
+
+    @Benchmark
+    public Bson getKeysFromEntityComposite() {
+        return entityOperationService.getKeysFromEntity(compositeKeyDescriptor, compositeKeyId);
+    }
+
+    @Benchmark
+    public Bson getFieldsFromEntity() {
+        return entityOperationService.getFieldsFromEntity(singleKeyDescriptor);
+    }
+}
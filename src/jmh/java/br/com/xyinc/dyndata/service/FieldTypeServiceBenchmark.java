@@ -0,0 +1,87 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversão JSON =&gt; BSON de documentos de entidade ({@link FieldTypeService#toDocument(EntityDescriptor, Map)}).
+ * Para o corpo de requisição completo, compara a leitura em mapa pelo Jackson seguida da conversão e da codificação
+ * BSON (caminho usado anteriormente nas escritas) com a leitura em uma única passada
+ * ({@link FieldTypeService#parseDocument(EntityDescriptor, java.io.InputStream, Map)}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FieldTypeServiceBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final ObjectMapper  mapper        = new ObjectMapper();
+    private final DocumentCodec documentCodec = new DocumentCodec();
+
+    private FieldTypeService    fieldTypeService;
+    private EntityDescriptor    flatDescriptor;
+    private Map<String, Object> flatValues;
+    private byte[]              flatBody;
+    private EntityDescriptor    nestedDescriptor;
+    private Map<String, Object> nestedValues;
+    private byte[]              nestedBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        fieldTypeService = BenchmarkFixtures.fieldTypeService();
+        flatDescriptor = BenchmarkFixtures.flatDescriptor(Collections.singletonList("codigo"));
+        flatValues = BenchmarkFixtures.flatValues();
+        flatBody = mapper.writeValueAsBytes(flatValues);
+        nestedDescriptor = BenchmarkFixtures.nestedDescriptor();
+        nestedValues = BenchmarkFixtures.nestedValues();
+        nestedBody = mapper.writeValueAsBytes(nestedValues);
+    }
+
+    @Benchmark
+    public Document toDocumentFlat() {
+        return fieldTypeService.toDocument(flatDescriptor, flatValues);
+    }
+
+    @Benchmark
+    public Document toDocumentNested() {
+        return fieldTypeService.toDocument(nestedDescriptor, nestedValues);
+    }
+
+    @Benchmark
+    public RawBsonDocument readMapFlat() throws IOException {
+        Map<String, Object> values = mapper.readValue(flatBody, MAP_TYPE);
+        return new RawBsonDocument(fieldTypeService.toDocument(flatDescriptor, values), documentCodec);
+    }
+
+    @Benchmark
+    public RawBsonDocument parseDocumentFlat() {
+        return fieldTypeService.parseDocument(flatDescriptor, new ByteArrayInputStream(flatBody), Collections.emptyMap());
+    }
+
+    @Benchmark
+    public RawBsonDocument readMapNested() throws IOException {
+        Map<String, Object> values = mapper.readValue(nestedBody, MAP_TYPE);
+        return new RawBsonDocument(fieldTypeService.toDocument(nestedDescriptor, values), documentCodec);
+    }
+
+    @Benchmark
+    public RawBsonDocument parseDocumentNested() {
+        return fieldTypeService.parseDocument(nestedDescriptor, new ByteArrayInputStream(nestedBody), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,92 @@
+package br.com.xyinc.dyndata.service;
+
+import com.mongodb.util.JSON;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.Decimal128;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialização de uma página de {@value #PAGE_SIZE} objetos em JSON: {@link JSON#serialize(Object)} sobre os
+ * documentos decodificados (usado anteriormente) comparado a {@link JsonOutputService} sobre os bytes BSON
+ * ({@link RawBsonDocument}) e sobre {@link Document}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonOutputServiceBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final JsonOutputService jsonOutputService = new JsonOutputService();
+    private final DocumentCodec     documentCodec     = new DocumentCodec();
+
+    private List<RawBsonDocument> rawDocuments;
+    private OutputStream          out;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        rawDocuments = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            Document document = new Document("empresa", 10)
+                    .append("codigo", 123456L + i)
+                    .append("nome", "Produto de teste " + i)
+                    .append("valor", new Decimal128(new BigDecimal("1234.56")))
+                    .append("quantidade", 42)
+                    .append("situacao", "ATIVO")
+                    .append("ativo", true)
+                    .append("tags", Arrays.asList("a", "b", "c"))
+                    .append("cadastro", new Date(1522615135000L));
+            rawDocuments.add(new RawBsonDocument(document, documentCodec));
+        }
+        out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blackhole.consume(b);
+            }
+        };
+    }
+
+    @Benchmark
+    public void legacySerialize() throws IOException {
+        List<Document> documents = new ArrayList<>(rawDocuments.size());
+        for (RawBsonDocument raw : rawDocuments) {
+            documents.add(raw.decode(documentCodec));
+        }
+        out.write(JSON.serialize(documents).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void writeRawDocuments() throws IOException {
+        jsonOutputService.writeDocuments(rawDocuments, out, false);
+    }
+
+    @Benchmark
+    public void writeDecodedDocuments() throws IOException {
+        List<Document> documents = new ArrayList<>(rawDocuments.size());
+        for (RawBsonDocument raw : rawDocuments) {
+            documents.add(raw.decode(documentCodec));
+        }
+        jsonOutputService.writeDocuments(documents, out, false);
+    }
+}
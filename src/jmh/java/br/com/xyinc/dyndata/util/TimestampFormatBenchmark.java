@@ -0,0 +1,53 @@
+package br.com.xyinc.dyndata.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leitura de campos Timestamp: {@link TimestampFormat} (formato canônico e formato alternativo) comparado ao
+ * {@link SimpleDateFormat} usado anteriormente (uma instância por thread, já que não é thread-safe) e ao
+ * {@link DateTimeFormatter} padrão do java.time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimestampFormatBenchmark {
+
+    private static final String CANONICAL   = "2018-04-01T17:38:55.000-0300";
+    private static final String ALTERNATIVE = "2018-04-01T17:38:55.123456-03:00";
+
+    private final SimpleDateFormat legacyFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    @Benchmark
+    public long legacySimpleDateFormat() throws ParseException {
+        return legacyFormat.parse(CANONICAL).getTime();
+    }
+
+    @Benchmark
+    public long parseCanonical() {
+        return TimestampFormat.parse(CANONICAL);
+    }
+
+    @Benchmark
+    public long parseAlternative() {
+        return TimestampFormat.parse(ALTERNATIVE);
+    }
+
+    @Benchmark
+    public long isoOffsetDateTime() {
+        return OffsetDateTime.parse(ALTERNATIVE, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
+    }
+
+    @Benchmark
+    public String format() {
+        return TimestampFormat.format(1522615135123L);
+    }
+}
@@ -1,20 +1,39 @@
 package br.com.xyinc.dyndata;
 
+import br.com.xyinc.dyndata.controller.ServerTimingFilter;
+import br.com.xyinc.dyndata.service.EntityExportService;
+import br.com.xyinc.dyndata.service.EntityManagementService;
+import br.com.xyinc.dyndata.service.JsonOutputService;
 import br.com.xyinc.dyndata.service.MongoService;
+import br.com.xyinc.dyndata.service.TimestampMigrationService;
+import org.bson.json.JsonMode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+
 @Service
 public class CommandLineProcessor implements CommandLineRunner {
 
     private static final String[] trueValues = new String[]{"1", "true"};
 
     @Autowired
-    private MongoService mongoService;
+    private MongoService              mongoService;
+    @Autowired
+    private EntityManagementService   entityManagementService;
+    @Autowired
+    private EntityExportService       entityExportService;
+    @Autowired
+    private TimestampMigrationService timestampMigrationService;
+    @Autowired
+    private JsonOutputService         jsonOutputService;
+    @Autowired
+    private ServerTimingFilter        serverTimingFilter;
 
     @Override
     public void run(String... args) {
+        boolean migrateTimestamps = true;
         for (String arg : args) {
             String[] kv = arg.split("=");
             if (kv.length != 2) continue;
@@ -37,8 +56,76 @@ public class CommandLineProcessor implements CommandLineRunner {
                 case "--dbname":
                     mongoService.setDbName(kv[1]);
                     break;
+                case "--dbpoolsize":
+                    mongoService.setPoolMaxSize(parseIntAtLeast(kv, 1));
+                    break;
+                case "--dbpoolminsize":
+                    mongoService.setPoolMinSize(parseIntAtLeast(kv, 0));
+                    break;
+                case "--dbwaitqueue":
+                    mongoService.setPoolWaitQueueMultiple(parseIntAtLeast(kv, 1));
+                    break;
+                case "--dbwaittime":
+                    mongoService.setPoolMaxWaitTime(parseIntAtLeast(kv, 0));
+                    break;
+                case "--dbidletime":
+                    mongoService.setPoolMaxIdleTime(parseIntAtLeast(kv, 0));
+                    break;
+                case "--dbsockettimeout":
+                    mongoService.setSocketTimeout(parseIntAtLeast(kv, 0));
+                    break;
+                case "--dbconnecttimeout":
+                    mongoService.setConnectTimeout(parseIntAtLeast(kv, 0));
+                    break;
+                case "--dbbatchsize":
+                    mongoService.setCursorBatchSize(parseIntAtLeast(kv, 0));
+                    break;
+                case "--slowopthreshold":
+                    mongoService.setSlowOperationThreshold(parseIntAtLeast(kv, 0));
+                    break;
+                case "--seqblocksize":
+                    mongoService.setSequenceBlockSize(parseIntAtLeast(kv, 1));
+                    break;
+                case "--exportthreads":
+                    entityExportService.setExportThreads(parseIntAtLeast(kv, 1));
+                    break;
+                case "--jsonmode":
+                    try {
+                        jsonOutputService.setJsonMode(JsonMode.valueOf(kv[1].toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Modo de JSON inválido: " + kv[1] + ". Use " + Arrays.toString(JsonMode.values()), e);
+                    }
+                    break;
+                case "--servertiming":
+                    serverTimingFilter.setEnabled(Arrays.asList(trueValues).contains(kv[1].toLowerCase()));
+                    break;
+                case "--migratetimestamps":
+                    migrateTimestamps = Arrays.asList(trueValues).contains(kv[1].toLowerCase());
+                    break;
+                case "--migrationbatchsize":
+                    timestampMigrationService.setBatchSize(parseIntAtLeast(kv, 1));
+                    break;
+                case "--migrationdelay":
+                    timestampMigrationService.setDelayMillis(parseIntAtLeast(kv, 0));
+                    break;
             }
         }
         mongoService.testConnection();
+        entityManagementService.loadEntityDescriptors();
+        if (migrateTimestamps) {
+            timestampMigrationService.migrateInBackground();
+        }
+    }
+
+    private int parseIntAtLeast(String[] kv, int minValue) {
+        try {
+            int value = Integer.parseInt(kv[1]);
+            if (value < minValue) {
+                throw new IllegalArgumentException(String.format("Valor do parâmetro %s deve ser maior ou igual a %d", kv[0], minValue));
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Valor numérico inválido para o parâmetro %s: %s", kv[0], kv[1]), e);
+        }
     }
 }
\ No newline at end of file
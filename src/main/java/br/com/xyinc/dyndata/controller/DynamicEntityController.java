@@ -1,18 +1,34 @@
 package br.com.xyinc.dyndata.controller;
 
+import br.com.xyinc.dyndata.model.BulkImportResult;
+import br.com.xyinc.dyndata.model.EntityPage;
 import br.com.xyinc.dyndata.model.ErrorModel;
 import br.com.xyinc.dyndata.service.DynamicEntityService;
-import com.mongodb.util.JSON;
+import br.com.xyinc.dyndata.service.EntityExport;
+import br.com.xyinc.dyndata.service.EntityExportService;
+import br.com.xyinc.dyndata.service.EntityImportService;
+import br.com.xyinc.dyndata.service.JsonOutputService;
+import br.com.xyinc.dyndata.service.MetricsService;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 import static br.com.xyinc.dyndata.service.EntityManagementService.REGEX_ENTITY;
 
@@ -21,24 +37,106 @@ import static br.com.xyinc.dyndata.service.EntityManagementService.REGEX_ENTITY;
 @RequestMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
 public class DynamicEntityController {
 
+    static final String       FORMAT_NDJSON             = "ndjson";
+    static final MediaType    NDJSON_MEDIA_TYPE         = MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+    static final MediaType    CSV_MEDIA_TYPE            = MediaType.parseMediaType("text/csv;charset=UTF-8");
+    static final String       CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
+    static final List<String> RESERVED_LIST_PARAMS      = Arrays.asList("format", "limit", "sort", "after");
+
     @Autowired
     private DynamicEntityService dynamicEntityService;
+    @Autowired
+    private EntityImportService  entityImportService;
+    @Autowired
+    private EntityExportService  entityExportService;
+    @Autowired
+    private JsonOutputService    jsonOutputService;
+    @Autowired
+    private MetricsService       metricsService;
 
     @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}", method = RequestMethod.GET)
-    public String list(@PathVariable("entityUri") String entityUri) {
-        return JSON.serialize(dynamicEntityService.list(entityUri));
+    public ResponseEntity<StreamingResponseBody> list(@PathVariable("entityUri") String entityUri,
+                               @RequestParam(value = "format", required = false) String format,
+                               @RequestParam(value = "limit", required = false) Integer limit,
+                               @RequestParam(value = "sort", required = false) String sort,
+                               @RequestParam(value = "after", required = false) String after,
+                               @RequestParam Map<String, String> params) {
+        try {
+            Map<String, String> filters = new HashMap<>(params);
+            filters.keySet().removeAll(RESERVED_LIST_PARAMS);
+            boolean                    ndjson  = FORMAT_NDJSON.equals(format);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(ndjson ? NDJSON_MEDIA_TYPE : MediaType.APPLICATION_JSON_UTF8);
+            Iterable<? extends Bson>   documents;
+            if (limit != null) {
+                EntityPage page = dynamicEntityService.listPage(entityUri, filters, limit, sort, after);
+                if (page.getContinuationToken() != null) {
+                    builder.header(CONTINUATION_TOKEN_HEADER, page.getContinuationToken());
+                }
+                documents = page.getDocuments();
+            } else {
+                documents = dynamicEntityService.list(entityUri, filters, sort, after);
+            }
+            return builder.body(out -> writeDocuments(entityUri, documents, out, ndjson));
+        } catch (IllegalArgumentException e) {
+            return streamError(e, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Escreve a listagem na resposta, medindo a serialização (que inclui a leitura dos lotes seguintes do cursor)
+     */
+    private void writeDocuments(String entityUri, Iterable<? extends Bson> documents, OutputStream out, boolean ndjson) throws IOException {
+        long start = metricsService.start();
+        try {
+            jsonOutputService.writeDocuments(documents, out, ndjson);
+        } finally {
+            metricsService.recordStage(entityUri, MetricsService.Stages.SERIALIZATION, start);
+        }
+    }
+
+    @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}/_export", method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_UTF8_VALUE, "application/x-ndjson", "text/csv"})
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable("entityUri") String entityUri,
+                                 @RequestParam(value = "format", defaultValue = EntityExport.FORMAT_NDJSON) String format,
+                                 @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                                 @RequestParam(value = "parallelism", required = false) Integer parallelism) {
+        try {
+            EntityExport export = entityExportService.createExport(entityUri, format, parallelism);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .contentType(export.isCsv() ? CSV_MEDIA_TYPE : NDJSON_MEDIA_TYPE)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + entityUri + "." + format + "\"");
+            if (gzip) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return builder.body(out -> writeExport(export, out, gzip));
+        } catch (IllegalArgumentException e) {
+            return streamError(e, HttpStatus.BAD_REQUEST);
+        }
     }
 
     @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}/{id:.+}", method = RequestMethod.GET)
-    public ResponseEntity<String> getById(@PathVariable("entityUri") String entityUri, @PathVariable("id") String id) {
-        Optional<Document> result = dynamicEntityService.get(entityUri, Arrays.asList(id.split("/")));
-        return result.map(document -> new ResponseEntity<>(JSON.serialize(document), HttpStatus.OK)).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    public ResponseEntity<byte[]> getById(@PathVariable("entityUri") String entityUri, @PathVariable("id") String id) {
+        Optional<byte[]> result = dynamicEntityService.getJson(entityUri, Arrays.asList(id.split("/")));
+        return result.map(json -> new ResponseEntity<>(json, HttpStatus.OK)).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}/_mget", method = RequestMethod.POST)
+    public ResponseEntity<StreamingResponseBody> getMany(@PathVariable("entityUri") String entityUri, @RequestBody Map<String, Object> request) {
+        try {
+            List<Document> documents = dynamicEntityService.getMany(entityUri, toIdList(request.get("ids")));
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(out -> jsonOutputService.writeDocuments(documents, out, false));
+        } catch (IllegalArgumentException e) {
+            return streamError(e, HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            return streamError(e, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
     }
 
     @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}", method = RequestMethod.POST)
-    public ResponseEntity create(@PathVariable("entityUri") String entityUri, @RequestBody Map<String, Object> newEntity) {
+    public ResponseEntity create(@PathVariable("entityUri") String entityUri, InputStream body) {
         try {
-            dynamicEntityService.create(entityUri, newEntity);
+            dynamicEntityService.create(entityUri, body);
             return new ResponseEntity(HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
@@ -48,10 +146,42 @@ public class DynamicEntityController {
         }
     }
 
+    @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}/_bulk", method = RequestMethod.POST)
+    public ResponseEntity bulkImport(@PathVariable("entityUri") String entityUri,
+                                     @RequestParam(value = "batchSize", defaultValue = "" + EntityImportService.DEFAULT_BATCH_SIZE) int batchSize,
+                                     @RequestParam(value = "ordered", defaultValue = "false") boolean ordered,
+                                     @RequestParam(value = "upsert", defaultValue = "false") boolean upsert,
+                                     InputStream body) {
+        try {
+            BulkImportResult result = entityImportService.importEntities(entityUri, body, batchSize, ordered, upsert);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}/{id:.+}", method = RequestMethod.PUT)
-    public ResponseEntity update(@PathVariable("entityUri") String entityUri, @RequestBody Map<String, Object> alterEntity, @PathVariable("id") String id) {
+    public ResponseEntity update(@PathVariable("entityUri") String entityUri, InputStream body, @PathVariable("id") String id) {
+        try {
+            dynamicEntityService.update(entityUri, body, Arrays.asList(id.split("/")));
+            return new ResponseEntity(HttpStatus.NO_CONTENT);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @RequestMapping(value = "/{entityUri:" + REGEX_ENTITY + "}/{id:.+}", method = RequestMethod.PATCH)
+    public ResponseEntity patch(@PathVariable("entityUri") String entityUri, @RequestBody Map<String, Object> changes, @PathVariable("id") String id) {
         try {
-            dynamicEntityService.update(entityUri, alterEntity, Arrays.asList(id.split("/")));
+            if (!dynamicEntityService.patch(entityUri, changes, Arrays.asList(id.split("/")))) {
+                return new ResponseEntity(HttpStatus.NOT_FOUND);
+            }
             return new ResponseEntity(HttpStatus.NO_CONTENT);
         } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
@@ -73,4 +203,55 @@ public class DynamicEntityController {
             return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    /**
+     * Resposta de erro dos serviços que respondem em stream, no mesmo formato de {@link ErrorModel}. O Spring só
+     * trata o {@link StreamingResponseBody} quando o tipo de retorno do método o declara, então o erro também é
+     * enviado como stream.
+     */
+    private ResponseEntity<StreamingResponseBody> streamError(Exception e, HttpStatus status) {
+        byte[] json = jsonOutputService.toJson(new Document("message", e.getMessage()));
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON_UTF8).body(out -> out.write(json));
+    }
+
+    /**
+     * Converte a lista de ids enviada no corpo da requisição, onde cada id é uma string no mesmo formato do path
+     * ({@code chave1/chave2}) ou um array com os valores das chaves
+     */
+    List<List<String>> toIdList(Object ids) {
+        if (!(ids instanceof List)) {
+            throw new IllegalArgumentException("O campo 'ids' deve ser um array!");
+        }
+        List<List<String>> result = new ArrayList<>(((List) ids).size());
+        for (Object id : (List) ids) {
+            if (id instanceof List) {
+                List<String> values = new ArrayList<>(((List) id).size());
+                for (Object value : (List) id) {
+                    if (value == null || value instanceof Map || value instanceof List) {
+                        throw new IllegalArgumentException("Id inválido: " + jsonOutputService.toJsonValue(id));
+                    }
+                    values.add(value.toString());
+                }
+                result.add(values);
+            } else if (id instanceof String || id instanceof Number) {
+                result.add(Arrays.asList(id.toString().split("/")));
+            } else {
+                throw new IllegalArgumentException("Id inválido: " + jsonOutputService.toJsonValue(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Escreve a exportação no stream de saída, compactando-a com gzip conforme é gerada se solicitado
+     */
+    static void writeExport(EntityExport export, OutputStream out, boolean gzip) throws IOException {
+        if (!gzip) {
+            export.writeTo(out);
+            return;
+        }
+        GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+        export.writeTo(compressed);
+        compressed.finish();
+    }
 }
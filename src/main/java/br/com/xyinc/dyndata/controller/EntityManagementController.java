@@ -2,14 +2,16 @@ package br.com.xyinc.dyndata.controller;
 
 import br.com.xyinc.dyndata.model.ErrorModel;
 import br.com.xyinc.dyndata.service.EntityManagementService;
-import com.mongodb.util.JSON;
+import br.com.xyinc.dyndata.service.JsonOutputService;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -19,16 +21,28 @@ public class EntityManagementController {
 
     @Autowired
     private EntityManagementService entityManagementService;
+    @Autowired
+    private JsonOutputService       jsonOutputService;
 
     @RequestMapping(value = "/configuration/entity", method = RequestMethod.GET)
-    public String listEntities() {
-        return JSON.serialize(entityManagementService.listEntities());
+    public ResponseEntity<StreamingResponseBody> listEntities() {
+        List<Document> entities = entityManagementService.listEntities();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(out -> jsonOutputService.writeDocuments(entities, out, false));
     }
 
     @RequestMapping(value = "/configuration/entity/{uriName}", method = RequestMethod.GET)
-    public ResponseEntity<String> getEntityByName(@PathVariable("uriName") String uriName) {
+    public ResponseEntity<byte[]> getEntityByName(@PathVariable("uriName") String uriName) {
         Optional<Document> result = entityManagementService.findEntity(uriName);
-        return result.map(document -> new ResponseEntity<>(JSON.serialize(document), HttpStatus.OK)).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        return result.map(document -> new ResponseEntity<>(jsonOutputService.toJson(document), HttpStatus.OK)).orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @RequestMapping(value = "/configuration/entity/{uriName}/cache", method = RequestMethod.GET)
+    public ResponseEntity getCacheStats(@PathVariable("uriName") String uriName) {
+        try {
+            return new ResponseEntity<>(entityManagementService.getCacheStats(uriName), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
     }
 
     @RequestMapping(value = "/configuration/entity", method = RequestMethod.POST)
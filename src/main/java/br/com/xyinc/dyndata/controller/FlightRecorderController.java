@@ -0,0 +1,72 @@
+package br.com.xyinc.dyndata.controller;
+
+import br.com.xyinc.dyndata.model.ErrorModel;
+import br.com.xyinc.dyndata.model.RecordingStatus;
+import br.com.xyinc.dyndata.service.FlightRecorderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+public class FlightRecorderController {
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @RequestMapping(value = "/configuration/recording", method = RequestMethod.GET)
+    public ResponseEntity getStatus() {
+        RecordingStatus status = flightRecorderService.getStatus();
+        return status == null ? new ResponseEntity(HttpStatus.NOT_FOUND) : new ResponseEntity<>(status, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/configuration/recording", method = RequestMethod.POST)
+    public ResponseEntity start(@RequestParam(value = "configuration", defaultValue = FlightRecorderService.DEFAULT_CONFIGURATION) String configuration,
+                                @RequestParam(value = "maxAge", defaultValue = "" + FlightRecorderService.DEFAULT_MAX_AGE_SECONDS) long maxAge,
+                                @RequestParam(value = "maxSize", defaultValue = "" + FlightRecorderService.DEFAULT_MAX_SIZE) long maxSize) {
+        try {
+            return new ResponseEntity<>(flightRecorderService.start(configuration, maxAge, maxSize), HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @RequestMapping(value = "/configuration/recording", method = RequestMethod.DELETE)
+    public ResponseEntity stop() {
+        try {
+            return new ResponseEntity<>(flightRecorderService.stop(), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new ErrorModel(e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @RequestMapping(value = "/configuration/recording/dump", method = RequestMethod.GET, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> dump() {
+        Path file;
+        try {
+            file = flightRecorderService.dump();
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"dyndata.jfr\"")
+                .body((StreamingResponseBody) out -> {
+                    try {
+                        Files.copy(file, out);
+                    } finally {
+                        flightRecorderService.delete(file);
+                    }
+                });
+    }
+}
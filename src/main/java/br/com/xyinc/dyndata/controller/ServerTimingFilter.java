@@ -0,0 +1,88 @@
+package br.com.xyinc.dyndata.controller;
+
+import br.com.xyinc.dyndata.service.ServerTiming;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Inclui o cabeçalho {@code Server-Timing} (ver {@link ServerTiming}) nas respostas dos serviços de entidades, quando
+ * ativado por {@code --servertiming=true}. O cabeçalho é gravado imediatamente antes do início do corpo da resposta,
+ * de modo que as respostas enviadas em stream (listagens) trazem apenas as etapas concluídas até então.
+ */
+@Component
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private volatile boolean enabled = false;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        if (!enabled) {
+            chain.doFilter(request, response);
+            return;
+        }
+        ServerTiming   timing         = ServerTiming.begin();
+        TimingResponse timingResponse = new TimingResponse(response, timing);
+        try {
+            chain.doFilter(request, timingResponse);
+            timingResponse.writeHeader();
+        } finally {
+            ServerTiming.end();
+        }
+    }
+
+    private static class TimingResponse extends HttpServletResponseWrapper {
+
+        private final ServerTiming timing;
+        private       boolean      written = false;
+
+        TimingResponse(HttpServletResponse response, ServerTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        synchronized void writeHeader() {
+            if (written || isCommitted()) {
+                return;
+            }
+            written = true;
+            if (timing.hasStages()) {
+                setHeader(ServerTiming.HEADER, timing.toHeader());
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeader();
+            super.flushBuffer();
+        }
+    }
+}
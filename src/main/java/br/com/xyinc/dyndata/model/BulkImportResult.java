@@ -0,0 +1,102 @@
+package br.com.xyinc.dyndata.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de uma importação em lote: contadores e relatório de erros por item (limitado a
+ * {@value #MAX_REPORTED_ERRORS} erros).
+ */
+@JsonSerialize
+public class BulkImportResult {
+
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    @JsonProperty
+    private long            received;
+    @JsonProperty
+    private long            written;
+    @JsonProperty
+    private long            failed;
+    @JsonProperty
+    private boolean         aborted;
+    @JsonProperty
+    private boolean         errorsTruncated;
+    @JsonProperty
+    private List<ItemError> errors = new ArrayList<>();
+
+    public void addReceived() {
+        received++;
+    }
+
+    public void addWritten(long count) {
+        written += count;
+    }
+
+    /**
+     * Registra a falha de um item. Após {@value #MAX_REPORTED_ERRORS} erros, apenas o contador é incrementado.
+     *
+     * @param line    Linha do início do item no corpo da requisição
+     * @param message Mensagem de erro
+     */
+    public void addError(int line, String message) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ItemError(line, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    public void setAborted(boolean aborted) {
+        this.aborted = aborted;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public List<ItemError> getErrors() {
+        return errors;
+    }
+
+    @JsonSerialize
+    public static class ItemError {
+        @JsonProperty
+        private final int    line;
+        @JsonProperty
+        private final String message;
+
+        public ItemError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package br.com.xyinc.dyndata.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Configuração e contadores do cache de objetos de uma entidade
+ */
+@JsonSerialize
+public class CacheStats {
+
+    @JsonProperty
+    private final boolean enabled;
+    @JsonProperty
+    private final int     maxEntries;
+    @JsonProperty
+    private final long    ttlSeconds;
+    @JsonProperty
+    private final int     size;
+    @JsonProperty
+    private final long    hits;
+    @JsonProperty
+    private final long    misses;
+    @JsonProperty
+    private final long    evictions;
+
+    public CacheStats(int maxEntries, long ttlSeconds, int size, long hits, long misses, long evictions) {
+        this.enabled = true;
+        this.maxEntries = maxEntries;
+        this.ttlSeconds = ttlSeconds;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    private CacheStats() {
+        this.enabled = false;
+        this.maxEntries = 0;
+        this.ttlSeconds = 0;
+        this.size = 0;
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * @return Estatísticas de uma entidade sem cache
+     */
+    public static CacheStats disabled() {
+        return new CacheStats();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+}
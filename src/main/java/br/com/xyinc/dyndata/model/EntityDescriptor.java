@@ -6,6 +6,9 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 import static br.com.xyinc.dyndata.service.EntityManagementService.DEFAULT_COLLECTION_PREFIX;
 
@@ -24,6 +27,17 @@ public class EntityDescriptor {
     @JsonProperty
     private List<String> keys = new ArrayList<>();
 
+    @JsonProperty
+    private List<IndexDescriptor> indexes = new ArrayList<>();
+
+    @JsonProperty
+    private Integer cacheMaxEntries;
+    @JsonProperty
+    private Integer cacheTtlSeconds;
+
+    // Estruturas derivadas do descritor e mantidas pelos serviços (planos compilados, cache de objetos)
+    private final ConcurrentMap<String, Object> attachments = new ConcurrentHashMap<>();
+
     public String getUriName() {
         return uriName;
     }
@@ -42,6 +56,7 @@ public class EntityDescriptor {
 
     public void setFields(List<FieldDescriptor> fields) {
         this.fields = fields;
+        this.attachments.clear();
     }
 
     public List<String> getKeys() {
@@ -50,6 +65,15 @@ public class EntityDescriptor {
 
     public void setKeys(List<String> keys) {
         this.keys = keys;
+        this.attachments.clear();
+    }
+
+    public List<IndexDescriptor> getIndexes() {
+        return indexes;
+    }
+
+    public void setIndexes(List<IndexDescriptor> indexes) {
+        this.indexes = indexes;
     }
 
     public String getSequenceField() {
@@ -63,9 +87,57 @@ public class EntityDescriptor {
 
     public void setSequenceField(String sequenceField) {
         this.sequenceField = sequenceField;
+        this.attachments.clear();
     }
 
     public String getEntityName() {
         return entityName;
     }
+
+    public void setEntityName(String entityName) {
+        this.entityName = entityName;
+    }
+
+    public Integer getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(Integer cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+        this.attachments.clear();
+    }
+
+    public Integer getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public void setCacheTtlSeconds(Integer cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+        this.attachments.clear();
+    }
+
+    /**
+     * Obtém uma estrutura derivada do descritor, criando-a no primeiro acesso. As estruturas ficam atreladas a esta
+     * instância, sendo descartadas junto com ela ou ao alterar os campos, as chaves, o campo de sequência ou a
+     * configuração de cache.
+     *
+     * @param name    Nome da estrutura, definido pelo serviço que a mantém
+     * @param factory Função que cria a estrutura a partir deste descritor (se retornar null, nada é armazenado)
+     * @return Estrutura armazenada, ou null se ainda não existia e a função retornou null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T computeAttachmentIfAbsent(String name, Function<EntityDescriptor, T> factory) {
+        // Consulta sem bloqueio quando a estrutura já existe (o computeIfAbsent do Java 8 bloqueia mesmo nesse caso)
+        Object attachment = attachments.get(name);
+        if (attachment == null) {
+            attachment = factory.apply(this);
+            if (attachment != null) {
+                Object previous = attachments.putIfAbsent(name, attachment);
+                if (previous != null) {
+                    attachment = previous;
+                }
+            }
+        }
+        return (T) attachment;
+    }
 }
@@ -0,0 +1,27 @@
+package br.com.xyinc.dyndata.model;
+
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+
+public class EntityPage {
+
+    private final List<RawBsonDocument> documents;
+    private final String                continuationToken;
+
+    public EntityPage(List<RawBsonDocument> documents, String continuationToken) {
+        this.documents = documents;
+        this.continuationToken = continuationToken;
+    }
+
+    public List<RawBsonDocument> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return Token para obter a próxima página, ou null se esta for a última
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+}
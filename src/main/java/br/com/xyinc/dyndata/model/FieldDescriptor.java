@@ -28,6 +28,12 @@ public class FieldDescriptor {
     private String                defaultValue;
     @JsonProperty
     private List<FieldDescriptor> documentFields;
+    @JsonProperty
+    private Boolean               indexed;
+    @JsonProperty
+    private Boolean               unique;
+    @JsonProperty
+    private Boolean               sparse;
 
     private FieldDescriptor() {
     }
@@ -116,4 +122,28 @@ public class FieldDescriptor {
     public void setDefaultValue(String defaultValue) {
         this.defaultValue = defaultValue;
     }
+
+    public boolean getIndexed() {
+        return indexed != null && indexed;
+    }
+
+    public void setIndexed(Boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    public boolean getUnique() {
+        return unique != null && unique;
+    }
+
+    public void setUnique(Boolean unique) {
+        this.unique = unique;
+    }
+
+    public boolean getSparse() {
+        return sparse != null && sparse;
+    }
+
+    public void setSparse(Boolean sparse) {
+        this.sparse = sparse;
+    }
 }
@@ -0,0 +1,53 @@
+package br.com.xyinc.dyndata.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+
+@JsonSerialize
+public class IndexDescriptor {
+    @JsonProperty
+    private String       name;
+    @JsonProperty
+    private List<String> fields;
+    @JsonProperty
+    private Boolean      unique;
+    @JsonProperty
+    private Boolean      sparse;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return Campos do índice, na ordem do índice. Campos precedidos de '-' são indexados em ordem decrescente.
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public boolean getUnique() {
+        return unique != null && unique;
+    }
+
+    public void setUnique(Boolean unique) {
+        this.unique = unique;
+    }
+
+    public boolean getSparse() {
+        return sparse != null && sparse;
+    }
+
+    public void setSparse(Boolean sparse) {
+        this.sparse = sparse;
+    }
+}
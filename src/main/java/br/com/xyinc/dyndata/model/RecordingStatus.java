@@ -0,0 +1,64 @@
+package br.com.xyinc.dyndata.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Situação da gravação do JDK Flight Recorder iniciada pela aplicação
+ */
+@JsonSerialize
+public class RecordingStatus {
+
+    @JsonProperty
+    private final String state;
+    @JsonProperty
+    private final String configuration;
+    @JsonProperty
+    private final String startTime;
+    @JsonProperty
+    private final String stopTime;
+    @JsonProperty
+    private final long   maxAgeSeconds;
+    @JsonProperty
+    private final long   maxSize;
+    @JsonProperty
+    private final long   size;
+
+    public RecordingStatus(String state, String configuration, String startTime, String stopTime, long maxAgeSeconds, long maxSize, long size) {
+        this.state = state;
+        this.configuration = configuration;
+        this.startTime = startTime;
+        this.stopTime = stopTime;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.maxSize = maxSize;
+        this.size = size;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getConfiguration() {
+        return configuration;
+    }
+
+    public String getStartTime() {
+        return startTime;
+    }
+
+    public String getStopTime() {
+        return stopTime;
+    }
+
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,167 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.CacheStats;
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import org.bson.BsonValue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache em memória dos objetos de uma entidade, já serializados em JSON e indexados pela chave canônica
+ * (ver {@link EntityOperationService#getCanonicalKey(br.com.xyinc.dyndata.model.EntityDescriptor, List)}).
+ * Mantém no máximo {@code maxEntries} objetos, descartando os usados há mais tempo, e cada objeto expira após o TTL.
+ * <p>
+ * Uma leitura só grava no cache se a sua chave não foi invalidada desde o seu início (ver {@link #getStamp()}), de forma
+ * que uma escrita concorrente à leitura no banco não deixa a versão antiga armazenada. As invalidações são registradas por
+ * chave, então a escrita de um objeto não descarta as leituras em andamento dos demais. O registro guarda no máximo
+ * {@code maxEntries} chaves; ao descartar a mais antiga, as leituras iniciadas antes dela deixam de gravar seu resultado.
+ */
+public class DocumentCache {
+
+    private static final String ATTACHMENT_NAME = "documentCache";
+
+    private final int                                  maxEntries;
+    private final long                                 ttlSeconds;
+    private final long                                 ttlNanos;
+    private final LinkedHashMap<List<BsonValue>, Entry> entries;
+    private final LinkedHashMap<List<BsonValue>, Long>  invalidations;
+    private final LongAdder                            hits      = new LongAdder();
+    private final LongAdder                            misses    = new LongAdder();
+    private final LongAdder                            evictions = new LongAdder();
+    private       long                                 stamp;
+    private       long                                 floor;
+
+    /**
+     * Obtém o cache de objetos da entidade, criando-o no primeiro acesso. O cache fica atrelado à instância do
+     * descritor e é descartado junto com ela (ao alterar o descritor da entidade).
+     *
+     * @param descriptor Descritor da entidade
+     * @return Cache de objetos, ou null se a entidade não usa cache ({@code cacheMaxEntries} ausente ou zero)
+     */
+    public static DocumentCache of(EntityDescriptor descriptor) {
+        Integer maxEntries = descriptor.getCacheMaxEntries();
+        if (maxEntries == null || maxEntries <= 0) {
+            return null;
+        }
+        Integer ttlSeconds = descriptor.getCacheTtlSeconds();
+        return descriptor.computeAttachmentIfAbsent(ATTACHMENT_NAME, d -> new DocumentCache(maxEntries, ttlSeconds == null ? 0 : ttlSeconds));
+    }
+
+    /**
+     * @param maxEntries Quantidade máxima de objetos armazenados
+     * @param ttlSeconds Tempo de vida de cada objeto, em segundos (0 para não expirar)
+     */
+    public DocumentCache(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlSeconds = ttlSeconds;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = new LinkedHashMap<List<BsonValue>, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<BsonValue>, Entry> eldest) {
+                if (size() > DocumentCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.invalidations = new LinkedHashMap<List<BsonValue>, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<BsonValue>, Long> eldest) {
+                if (size() > DocumentCache.this.maxEntries) {
+                    floor = Math.max(floor, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Obtém o JSON armazenado para a chave, descartando-o se já expirou
+     *
+     * @param key Chave canônica do objeto
+     * @return JSON do objeto, ou null se não estiver no cache
+     */
+    public byte[] get(List<BsonValue> key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (ttlNanos == 0 || System.nanoTime() - entry.storedAt < ttlNanos) {
+                    hits.increment();
+                    return entry.json;
+                }
+                entries.remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @return Marca da última invalidação, a ser obtida antes da leitura no banco e informada em
+     * {@link #put(List, byte[], long)}
+     */
+    public synchronized long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Armazena o JSON do objeto, caso a chave não tenha sido invalidada desde a obtenção da marca
+     *
+     * @param key   Chave canônica do objeto
+     * @param json  JSON do objeto
+     * @param stamp Marca obtida por {@link #getStamp()} antes da leitura no banco
+     */
+    public synchronized void put(List<BsonValue> key, byte[] json, long stamp) {
+        Long invalidatedAt = invalidations.get(key);
+        if (stamp >= floor && (invalidatedAt == null || stamp >= invalidatedAt)) {
+            entries.put(key, new Entry(json, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Remove o objeto do cache. Leituras em andamento da mesma chave deixam de gravar seu resultado.
+     *
+     * @param key Chave canônica do objeto
+     */
+    public synchronized void invalidate(List<BsonValue> key) {
+        stamp++;
+        invalidations.remove(key);
+        invalidations.put(key, stamp);
+        entries.remove(key);
+    }
+
+    /**
+     * Remove todos os objetos do cache. Leituras em andamento de qualquer chave deixam de gravar seu resultado.
+     */
+    public synchronized void invalidateAll() {
+        stamp++;
+        floor = stamp;
+        invalidations.clear();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(maxEntries, ttlSeconds, size(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private static final class Entry {
+        private final byte[] json;
+        private final long   storedAt;
+
+        private Entry(byte[] json, long storedAt) {
+            this.json = json;
+            this.storedAt = storedAt;
+        }
+    }
+}
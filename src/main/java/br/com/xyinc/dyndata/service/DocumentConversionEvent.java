@@ -0,0 +1,29 @@
+package br.com.xyinc.dyndata.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento do JDK Flight Recorder para a conversão dos dados enviados de um objeto em documento BSON
+ * (ver {@link FieldTypeService})
+ */
+@Name("br.com.xyinc.dyndata.DocumentConversion")
+@Label("Conversão de documento")
+@Category({"dyndata", "Conversão"})
+@Description("Leitura e validação dos dados de um objeto e conversão em documento BSON")
+@StackTrace(false)
+class DocumentConversionEvent extends Event {
+
+    @Label("Entidade")
+    String entity;
+    @Label("Campos")
+    int    fields;
+    @Label("Tamanho")
+    @DataAmount
+    long   bytes;
+}
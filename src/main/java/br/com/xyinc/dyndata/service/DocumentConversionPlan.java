@@ -0,0 +1,459 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.exception.DocumentParseException;
+import br.com.xyinc.dyndata.exception.EntityDescriptorException;
+import br.com.xyinc.dyndata.exception.EntityKeyException;
+import br.com.xyinc.dyndata.exception.FieldValidationException;
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import br.com.xyinc.dyndata.model.FieldType;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.EncoderContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Plano de conversão compilado de uma lista de campos (de uma entidade ou de um subdocumento).
+ * Tipo, conversor de valor, validações e campos de subdocumento são resolvidos uma única vez; a cada documento
+ * apenas os valores são convertidos e validados.
+ */
+public class DocumentConversionPlan {
+
+    // Nome do plano dos campos da entidade entre as estruturas atreladas ao descritor
+    static final String ATTACHMENT_NAME = "conversionPlan";
+
+    private static final DocumentConversionPlan EMPTY = new DocumentConversionPlan(new FieldConverter[0]);
+
+    private static final BsonValueCodec BSON_VALUE_CODEC = new BsonValueCodec();
+    private static final EncoderContext ENCODER_CONTEXT  = EncoderContext.builder().build();
+
+    private final FieldConverter[]     converters;
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    private DocumentConversionPlan(FieldConverter[] converters) {
+        this.converters = converters;
+    }
+
+    /**
+     * Compila os campos informados em um plano de conversão
+     *
+     * @param fields           Campos a serem convertidos
+     * @param descriptor       Descritor da entidade dona dos campos (nulo para subdocumentos)
+     * @param fieldTypeService Serviço de tipos de campo
+     * @return Plano de conversão compilado
+     */
+    static DocumentConversionPlan compile(List<FieldDescriptor> fields, EntityDescriptor descriptor, FieldTypeService fieldTypeService) {
+        return compile(fields, descriptor, fieldTypeService, new IdentityHashMap<>());
+    }
+
+    /**
+     * Compila os campos reaproveitando os planos já compilados para a mesma lista de campos, já que descritores de
+     * subdocumento podem referenciar a si mesmos (como o descritor de configuração das entidades).
+     */
+    private static DocumentConversionPlan compile(List<FieldDescriptor> fields, EntityDescriptor descriptor, FieldTypeService fieldTypeService,
+                                                  Map<List<FieldDescriptor>, DocumentConversionPlan> compiled) {
+        if (fields == null || fields.isEmpty()) {
+            return EMPTY;
+        }
+        if (descriptor == null && compiled.containsKey(fields)) {
+            return compiled.get(fields);
+        }
+        String       seqField  = null;
+        List<String> keyFields = Collections.emptyList();
+        if (descriptor != null) {
+            seqField = descriptor.getSequenceField();
+            if (descriptor.getKeys() != null) {
+                keyFields = descriptor.getKeys();
+            }
+        }
+
+        DocumentConversionPlan plan = new DocumentConversionPlan(new FieldConverter[fields.size()]);
+        if (descriptor == null) {
+            compiled.put(fields, plan);
+        }
+        for (int i = 0; i < plan.converters.length; i++) {
+            FieldDescriptor field = fields.get(i);
+            FieldType       type  = fieldTypeService.getType(field.getFieldType());
+            if (type == null) {
+                throw new EntityDescriptorException("Tipo de campo não registrado! (" + field.getFieldType() + ")");
+            }
+            plan.converters[i] = new FieldConverter(field, type, field.getFieldName().equals(seqField), keyFields.contains(field.getFieldName()), fieldTypeService, compiled);
+            plan.indexes.put(field.getFieldName(), i);
+        }
+        return plan;
+    }
+
+    /**
+     * Converte e valida os valores informados, gravando-os no mapa de resultado
+     *
+     * @param values   Valores enviados
+     * @param tracking Caminho do campo sendo convertido, para mensagens de erro
+     * @param result   Mapa (Document ou BsonDocument) que recebe os valores convertidos
+     * @param sequence Fornecedor do próximo valor da sequência da entidade
+     */
+    @SuppressWarnings("unchecked")
+    void apply(Map<String, Object> values, List<String> tracking, Map result, LongSupplier sequence) {
+        for (FieldConverter converter : converters) {
+            tracking.add(converter.fieldName);
+            result.put(converter.fieldName, converter.convert(values.get(converter.fieldName), tracking, sequence));
+            tracking.remove(tracking.size() - 1);
+        }
+    }
+
+    /**
+     * Converte e valida apenas os valores enviados, para alteração parcial. Chaves e campos não enviados são
+     * ignorados; campos de sequência enviados nulos mantêm o valor atual. Valores nulos usam o valor padrão do campo ou,
+     * se o campo aceitar nulo, são removidos do documento.
+     *
+     * @param values   Valores enviados
+     * @param tracking Caminho do campo sendo convertido, para mensagens de erro
+     * @param set      Mapa que recebe os valores a serem gravados
+     * @param unset    Mapa que recebe os campos a serem removidos
+     */
+    void applyPartial(Map<String, Object> values, List<String> tracking, Map<String, Object> set, Map<String, Object> unset) {
+        for (FieldConverter converter : converters) {
+            if (converter.key || !values.containsKey(converter.fieldName)) {
+                continue;
+            }
+            Object value = values.get(converter.fieldName);
+            if (value == null && converter.sequence) {
+                continue;
+            }
+            tracking.add(converter.fieldName);
+            if (value == null && converter.defaultValue == null && converter.nullable) {
+                unset.put(converter.fieldName, "");
+            } else {
+                set.put(converter.fieldName, converter.convert(value, tracking, null));
+            }
+            tracking.remove(tracking.size() - 1);
+        }
+    }
+
+    /**
+     * Lê o objeto JSON token a token, validando cada campo conforme é lido e escrevendo o valor convertido
+     * diretamente no BSON de saída. Falha no primeiro campo inválido, sem ler o restante do objeto. Campos não
+     * declarados são ignorados; campos não enviados recebem o valor da sequência, o valor padrão ou nulo, como em
+     * {@link #apply(Map, List, Map, LongSupplier)}. Os campos são escritos na ordem em que foram enviados.
+     *
+     * @param parser      Parser posicionado no início do objeto ({@code START_OBJECT}); ao final, fica posicionado no
+     *                    fim do objeto
+     * @param writer      Destino do documento BSON
+     * @param tracking    Caminho do campo sendo convertido, para mensagens de erro
+     * @param fixedValues Valores já convertidos que substituem os enviados (ex.: chave informada na URI)
+     * @param sequence    Fornecedor do próximo valor da sequência da entidade
+     */
+    void parse(JsonParser parser, BsonWriter writer, List<String> tracking, Map<String, BsonValue> fixedValues, LongSupplier sequence) throws IOException {
+        boolean[] sent = new boolean[converters.length];
+        writer.writeStartDocument();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String  fieldName = parser.getCurrentName();
+            Integer index     = indexes.get(fieldName);
+            parser.nextToken();
+            if (index == null || fixedValues.containsKey(fieldName)) {
+                parser.skipChildren();
+                continue;
+            }
+            if (sent[index]) {
+                throw new FieldValidationException(String.format("Campo '%s' enviado mais de uma vez!", fieldName));
+            }
+            sent[index] = true;
+            FieldConverter converter = converters[index];
+            tracking.add(fieldName);
+            writer.writeName(fieldName);
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                writeValue(writer, converter.convert(null, tracking, sequence));
+            } else {
+                converter.parse(parser, writer, tracking);
+            }
+            tracking.remove(tracking.size() - 1);
+        }
+        // Campos de sequência por último, para não consumir a sequência se algum campo obrigatório estiver ausente
+        writeMissing(writer, tracking, fixedValues, sequence, sent, false);
+        writeMissing(writer, tracking, fixedValues, sequence, sent, true);
+        writer.writeEndDocument();
+    }
+
+    private void writeMissing(BsonWriter writer, List<String> tracking, Map<String, BsonValue> fixedValues, LongSupplier sequence, boolean[] sent,
+                              boolean sequenceFields) {
+        for (int i = 0; i < converters.length; i++) {
+            FieldConverter converter = converters[i];
+            if (sent[i] || converter.sequence != sequenceFields) {
+                continue;
+            }
+            tracking.add(converter.fieldName);
+            BsonValue fixed = fixedValues.get(converter.fieldName);
+            BsonValue value = fixed != null ? fixed : converter.convert(null, tracking, sequence);
+            writer.writeName(converter.fieldName);
+            writeValue(writer, value);
+            tracking.remove(tracking.size() - 1);
+        }
+    }
+
+    private static void writeValue(BsonWriter writer, BsonValue value) {
+        BSON_VALUE_CODEC.encode(writer, value, ENCODER_CONTEXT);
+    }
+
+    /**
+     * Lê o valor escalar do token atual nos mesmos tipos Java produzidos pela leitura do JSON em mapa
+     */
+    private static Object readScalar(JsonParser parser, String fieldName) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                throw new FieldValidationException(String.format("Itens da lista do campo '%s' não podem ser nulos!", fieldName));
+            default:
+                throw new FieldValidationException(String.format("Valor inválido para o campo '%s'!", fieldName));
+        }
+    }
+
+    private interface ItemConverter {
+        BsonValue convert(Object val, List<String> tracking);
+    }
+
+    private static final class FieldConverter {
+        private final String                 fieldName;
+        private final boolean                array;
+        private final boolean                numeric;
+        private final boolean                string;
+        private final boolean                sequence;
+        private final boolean                key;
+        private final boolean                nullable;
+        private final Object                 defaultValue;
+        private final ItemConverter          itemConverter;
+        private final DocumentConversionPlan documentPlan;
+        private final BigDecimal             min;
+        private final BigDecimal             max;
+        private final Integer                minLength;
+        private final Integer                maxLength;
+        private final Set<String>            allowedValues;
+        private final String                 allowedValuesText;
+
+        private FieldConverter(FieldDescriptor field, FieldType type, boolean sequence, boolean key, FieldTypeService fieldTypeService,
+                               Map<List<FieldDescriptor>, DocumentConversionPlan> compiled) {
+            this.fieldName = field.getFieldName();
+            this.array = type.isArray();
+            this.numeric = type.isNumeric();
+            this.string = type.isString();
+            this.sequence = sequence;
+            this.key = key;
+            this.nullable = field.getNullable();
+            this.defaultValue = field.getDefaultValue();
+            this.min = field.getMin();
+            this.max = field.getMax();
+            this.minLength = field.getMinLength();
+            this.maxLength = field.getMaxLength();
+            if (string && field.getAllowedValues() != null && !field.getAllowedValues().isEmpty()) {
+                this.allowedValues = new HashSet<>(field.getAllowedValues());
+                this.allowedValuesText = String.join("','", field.getAllowedValues());
+            } else {
+                this.allowedValues = null;
+                this.allowedValuesText = null;
+            }
+            Class<?> itemClass = array ? type.getTargetClass().getComponentType() : type.getTargetClass();
+            this.itemConverter = getItemConverter(itemClass, field.getDocumentFields(), fieldTypeService, compiled);
+            this.documentPlan = Map.class.isAssignableFrom(itemClass) ? compile(field.getDocumentFields(), null, fieldTypeService, compiled) : null;
+        }
+
+        /**
+         * Lê, valida e escreve o valor (não nulo) do token atual
+         */
+        private void parse(JsonParser parser, BsonWriter writer, List<String> tracking) throws IOException {
+            if (array != (parser.currentToken() == JsonToken.START_ARRAY)) {
+                throw new FieldValidationException("Objeto " + (array ? "DEVE" : "NÃO DEVE") + " ser um array!");
+            }
+            if (!array) {
+                BsonValue bsonValue = parseItem(parser, writer, tracking);
+                if (numeric) {
+                    validateNumber(bsonValue);
+                } else if (string) {
+                    validateStringOrArray(bsonValue);
+                }
+                if (bsonValue != null) {
+                    writeValue(writer, bsonValue);
+                }
+                return;
+            }
+            int size = 0;
+            writer.writeStartArray();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (maxLength != null && size == maxLength) {
+                    throw new FieldValidationException(String.format("A lista do campo '%s' deve conter no máximo %s itens!", fieldName, maxLength));
+                }
+                BsonValue item = parseItem(parser, writer, tracking);
+                if (item != null) {
+                    writeValue(writer, item);
+                }
+                size++;
+            }
+            if (minLength != null && size < minLength) {
+                throw new FieldValidationException(String.format("A lista do campo '%s' deve conter no mínimo %s itens!", fieldName, minLength));
+            }
+            writer.writeEndArray();
+        }
+
+        /**
+         * Lê um item: subdocumentos são escritos diretamente (retorna null); os demais valores são convertidos e
+         * retornados para validação
+         */
+        private BsonValue parseItem(JsonParser parser, BsonWriter writer, List<String> tracking) throws IOException {
+            if (documentPlan == null) {
+                return itemConverter.convert(readScalar(parser, fieldName), tracking);
+            }
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new DocumentParseException("Elemento deveria ser um mapa de valores! Encontrado: " + parser.currentToken(), null);
+            }
+            documentPlan.parse(parser, writer, tracking, Collections.emptyMap(), null);
+            return null;
+        }
+
+        private BsonValue convert(Object value, List<String> tracking, LongSupplier sequenceSupplier) {
+            BsonValue bsonValue = toBson(value, tracking);
+            if (bsonValue.isNull()) {
+                return convertNull(bsonValue, tracking, sequenceSupplier);
+            } else if (numeric) {
+                validateNumber(bsonValue);
+            } else if (string || array) {
+                validateStringOrArray(bsonValue);
+            }
+            return bsonValue;
+        }
+
+        private BsonValue toBson(Object value, List<String> tracking) {
+            if (value == null) {
+                return BsonNull.VALUE;
+            }
+            if (array != (value instanceof List)) {
+                throw new FieldValidationException("Objeto " + (array ? "DEVE" : "NÃO DEVE") + " ser um array!");
+            }
+            if (array) {
+                List<?>   items  = (List<?>) value;
+                BsonArray result = new BsonArray();
+                for (Object item : items) {
+                    result.add(toBsonItem(item, tracking));
+                }
+                return result;
+            }
+            return toBsonItem(value, tracking);
+        }
+
+        private BsonValue toBsonItem(Object item, List<String> tracking) {
+            if (item instanceof BsonValue) {
+                return (BsonValue) item;
+            }
+            return itemConverter.convert(item, tracking);
+        }
+
+        private BsonValue convertNull(BsonValue bsonValue, List<String> tracking, LongSupplier sequenceSupplier) {
+            if (sequence) {
+                return toBson(sequenceSupplier.getAsLong(), tracking);
+            } else if (defaultValue != null) {
+                return toBson(defaultValue, tracking);
+            } else if (key) {
+                throw new EntityKeyException(String.format("Campo '%s' é chave da entidade e não pode ser nulo!", fieldName));
+            } else if (!nullable) {
+                throw new FieldValidationException(String.format("Valor do campo '%s' não pode ser nulo!", fieldName));
+            }
+            return bsonValue;
+        }
+
+        private void validateNumber(BsonValue bsonValue) {
+            if (min == null && max == null) {
+                return;
+            }
+            // BsonDecimal128 não é um BsonNumber nesta versão do driver
+            double value = bsonValue.isDecimal128() ? bsonValue.asDecimal128().getValue().bigDecimalValue().doubleValue() : bsonValue.asNumber().doubleValue();
+            if (min != null && value < min.doubleValue()) {
+                throw new FieldValidationException(String.format("Valor do campo '%s' deve ser maior ou igual a %s !", fieldName, min));
+            }
+            if (max != null && value > max.doubleValue()) {
+                throw new FieldValidationException(String.format("Valor do campo '%s' deve ser menor ou igual a %s !", fieldName, max));
+            }
+        }
+
+        private void validateStringOrArray(BsonValue bsonValue) {
+            if (allowedValues != null) {
+                if (!allowedValues.contains(bsonValue.asString().getValue())) {
+                    throw new FieldValidationException(String.format("Valor inválido para o campo '%s'. Deve ser um dos seguintes valores: ['%s']", fieldName, allowedValuesText));
+                }
+                return;
+            }
+            if (minLength != null) {
+                if (string && bsonValue.asString().getValue().length() < minLength) {
+                    throw new FieldValidationException(String.format("Campo '%s' deve conter no mínimo %s caracteres!", fieldName, minLength));
+                }
+                if (array && bsonValue.asArray().size() < minLength) {
+                    throw new FieldValidationException(String.format("A lista do campo '%s' deve conter no mínimo %s itens!", fieldName, minLength));
+                }
+            }
+            if (maxLength != null) {
+                if (string && bsonValue.asString().getValue().length() > maxLength) {
+                    throw new FieldValidationException(String.format("Campo '%s' deve conter no máximo %s caracteres!", fieldName, maxLength));
+                }
+                if (array && bsonValue.asArray().size() > maxLength) {
+                    throw new FieldValidationException(String.format("A lista do campo '%s' deve conter no máximo %s itens!", fieldName, maxLength));
+                }
+            }
+        }
+    }
+
+    private static ItemConverter getItemConverter(Class<?> targetClass, List<FieldDescriptor> documentFields, FieldTypeService fieldTypeService,
+                                                  Map<List<FieldDescriptor>, DocumentConversionPlan> compiled) {
+        if (Map.class.isAssignableFrom(targetClass)) {
+            DocumentConversionPlan nested = compile(documentFields, null, fieldTypeService, compiled);
+            return (val, tracking) -> toBsonDocument(val, nested, tracking);
+        } else if (String.class.isAssignableFrom(targetClass)) {
+            return (val, tracking) -> new BsonString(val.toString());
+        } else if (Long.class.isAssignableFrom(targetClass)) {
+            return (val, tracking) -> FieldTypeService.parseBsonLong(val, targetClass);
+        } else if (Integer.class.isAssignableFrom(targetClass)) {
+            return (val, tracking) -> FieldTypeService.parseBsonInt(val, targetClass);
+        } else if (BigDecimal.class.isAssignableFrom(targetClass)) {
+            return (val, tracking) -> FieldTypeService.parseBsonDecimal(val, targetClass);
+        } else if (Boolean.class.isAssignableFrom(targetClass)) {
+            return (val, tracking) -> FieldTypeService.parseBsonBoolean(val);
+        } else if (Timestamp.class.isAssignableFrom(targetClass)) {
+            return (val, tracking) -> FieldTypeService.parseBsonTimestamp(val);
+        } else {
+            return (val, tracking) -> {
+                throw new EntityDescriptorException("Conversão não suportada para o tipo de campo " + targetClass.getName());
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BsonValue toBsonDocument(Object val, DocumentConversionPlan plan, List<String> tracking) {
+        if (!(val instanceof Map)) {
+            throw new DocumentParseException("Elemento deveria ser um mapa de valores! Encontrado: " + val.getClass(), null);
+        }
+        BsonDocument result = new BsonDocument();
+        plan.apply((Map<String, Object>) val, tracking, result, null);
+        return result;
+    }
+}
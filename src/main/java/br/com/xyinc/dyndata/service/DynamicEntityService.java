@@ -1,68 +1,316 @@
 package br.com.xyinc.dyndata.service;
 
 import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.EntityPage;
+import br.com.xyinc.dyndata.util.SingleFlight;
+import com.mongodb.client.MongoIterable;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
+import static com.mongodb.client.model.Filters.and;
+
 /**
  * Serviço de gerenciamento de novas entidades.
  */
 @Service
 public class DynamicEntityService {
 
+    public static final int    MAX_PAGE_SIZE = 1000;
+    public static final int    MAX_MGET_SIZE = 1000;
+    public static final String SORT_ASC      = "asc";
+    public static final String SORT_DESC     = "desc";
+
     @Autowired
     private EntityOperationService  entityOperationService;
     @Autowired
     private EntityManagementService entityManagementService;
+    @Autowired
+    private JsonOutputService       jsonOutputService;
+    @Autowired
+    private MetricsService          metricsService;
+
+    private final SingleFlight<List<Object>, Optional<byte[]>> getFlights  = new SingleFlight<>();
+    private final SingleFlight<List<Object>, EntityPage>       pageFlights = new SingleFlight<>();
 
     private EntityDescriptor getEntityDescriptor(String entityUri) {
+        long             start      = metricsService.start();
         EntityDescriptor descriptor = entityManagementService.findEntityDescriptor(entityUri);
         if (descriptor == null) {
             throw new IllegalArgumentException("Entidade não cadastrada!");
         }
+        metricsService.recordStage(descriptor.getUriName(), MetricsService.Stages.DESCRIPTOR, start);
         return descriptor;
     }
 
-    public List<Document> list(String entityUri) {
-        return entityOperationService.query(getEntityDescriptor(entityUri), null);
+    /**
+     * Lista os objetos da entidade, sem limite de quantidade. Com ordenação ou token de continuação, os objetos são
+     * ordenados pelas chaves; sem eles, seguem a ordem natural da coleção.
+     * O descritor é resolvido imediatamente, mas os documentos só são lidos do banco conforme o resultado é iterado
+     * (a métrica da operação não inclui a leitura dos documentos).
+     *
+     * @param entityUri URI da entidade
+     * @param filters   Parâmetros de filtro (ver {@link EntityOperationService#getFilterFromParams(EntityDescriptor, Map)})
+     * @param sort      Direção da ordenação pelas chaves ({@value SORT_ASC} ou {@value SORT_DESC}), ou null
+     * @param after     Token de continuação, ou null para iniciar do começo
+     * @return Iterável dos documentos da entidade
+     */
+    public MongoIterable<RawBsonDocument> list(String entityUri, Map<String, String> filters, String sort, String after) {
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        return metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.LIST, () -> {
+            Bson filter = entityOperationService.getFilterFromParams(descriptor, filters);
+            if (sort == null && after == null) {
+                return entityOperationService.find(descriptor, filter);
+            }
+            boolean descending = isDescending(sort);
+            Bson    query      = combine(filter, after == null ? null : entityOperationService.getKeysetFilter(descriptor, after, descending));
+            return entityOperationService.find(descriptor, query, entityOperationService.getKeySort(descriptor, descending), 0);
+        });
+    }
+
+    /**
+     * Obtém uma página de objetos da entidade ordenados pelas chaves (paginação por chave). Leituras simultâneas da
+     * mesma página (mesmos filtros, limite, ordenação e token) são feitas uma única vez, e a página é compartilhada.
+     *
+     * @param entityUri URI da entidade
+     * @param filters   Parâmetros de filtro (ver {@link EntityOperationService#getFilterFromParams(EntityDescriptor, Map)})
+     * @param limit     Quantidade máxima de objetos na página
+     * @param sort      Direção da ordenação pelas chaves ({@value SORT_ASC} ou {@value SORT_DESC}), ou null para crescente
+     * @param after     Token de continuação da página anterior, ou null para a primeira página
+     * @return Página com os documentos e o token da próxima página
+     */
+    public EntityPage listPage(String entityUri, Map<String, String> filters, int limit, String sort, String after) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("O limite deve estar entre 1 e " + MAX_PAGE_SIZE + "!");
+        }
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        return metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.PAGE,
+                () -> pageFlights.execute(Arrays.asList(descriptor.getUriName(), filters, limit, sort, after), () -> readPage(descriptor, filters, limit, sort, after)));
+    }
+
+    private EntityPage readPage(EntityDescriptor descriptor, Map<String, String> filters, int limit, String sort, String after) {
+        boolean               descending = isDescending(sort);
+        Bson                  query      = combine(entityOperationService.getFilterFromParams(descriptor, filters), after == null ? null : entityOperationService.getKeysetFilter(descriptor, after, descending));
+        List<RawBsonDocument> documents  = entityOperationService.find(descriptor, query, entityOperationService.getKeySort(descriptor, descending), limit).into(new ArrayList<>());
+        String                nextToken  = null;
+        for (RawBsonDocument document : documents) {
+            metricsService.recordDocumentSize(descriptor.getUriName(), MetricsService.Directions.READ, document);
+        }
+        if (documents.size() == limit) {
+            Document last = documents.get(documents.size() - 1).decode(new DocumentCodec());
+            nextToken = entityOperationService.getContinuationToken(descriptor, last);
+        }
+        return new EntityPage(documents, nextToken);
     }
 
-    public Optional<Document> get(String entityUri, List<String> id) {
-        return entityOperationService.get(getEntityDescriptor(entityUri), id);
+    private Bson combine(Bson filter, Bson keysetFilter) {
+        if (filter == null) {
+            return keysetFilter;
+        } else if (keysetFilter == null) {
+            return filter;
+        }
+        return and(filter, keysetFilter);
     }
 
-    public void create(String entityUri, Map<String, Object> data) {
-        EntityDescriptor   descriptor = getEntityDescriptor(entityUri);
-        Optional<Document> current    = entityOperationService.query(descriptor, entityOperationService.getKeysFromEntity(descriptor, data)).stream().findFirst();
-        if (current.isPresent()) {
-            throw new IllegalArgumentException("Chave de entidade já cadastrada!");
+    private boolean isDescending(String sort) {
+        if (sort == null || SORT_ASC.equalsIgnoreCase(sort)) {
+            return false;
+        } else if (SORT_DESC.equalsIgnoreCase(sort)) {
+            return true;
         }
-        entityOperationService.replaceOne(descriptor, data);
+        throw new IllegalArgumentException("Ordenação inválida! Use '" + SORT_ASC + "' ou '" + SORT_DESC + "'.");
     }
 
-    public void update(String entityUri, Map<String, Object> data, List<String> id) {
-        EntityDescriptor   descriptor = getEntityDescriptor(entityUri);
-        Optional<Document> current    = entityOperationService.query(descriptor, entityOperationService.getKeysFromEntity(descriptor, id)).stream().findFirst();
-        if (!current.isPresent()) {
-            throw new IllegalArgumentException("Item não encontrado!");
+    public Optional<RawBsonDocument> get(String entityUri, List<String> id) {
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        return metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.GET, () -> entityOperationService.get(descriptor, id));
+    }
+
+    /**
+     * Obtém o objeto já serializado em JSON. Em entidades com cache, o JSON é servido do cache quando disponível, e
+     * armazenado nele após a leitura no banco. Leituras simultâneas da mesma chave consultam o banco uma única vez.
+     *
+     * @param entityUri URI da entidade
+     * @param id        Lista de chaves do objeto
+     * @return JSON do objeto (UTF-8), se existir
+     */
+    public Optional<byte[]> getJson(String entityUri, List<String> id) {
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        return metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.GET, () -> getJson(descriptor, id));
+    }
+
+    private Optional<byte[]> getJson(EntityDescriptor descriptor, List<String> id) {
+        DocumentCache   cache = DocumentCache.of(descriptor);
+        List<BsonValue> key   = entityOperationService.getCanonicalKey(descriptor, id);
+        if (cache != null) {
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
         }
-        for (String key : descriptor.getKeys()) {
-            data.put(key, current.get().get(key));
+        return getFlights.execute(Arrays.asList(descriptor.getUriName(), key), () -> {
+            long             stamp  = cache == null ? 0 : cache.getStamp();
+            Optional<byte[]> result = entityOperationService.get(descriptor, id).map(document -> toJson(descriptor, document));
+            if (cache != null) {
+                result.ifPresent(json -> cache.put(key, json, stamp));
+            }
+            return result;
+        });
+    }
+
+    private byte[] toJson(EntityDescriptor descriptor, RawBsonDocument document) {
+        metricsService.recordDocumentSize(descriptor.getUriName(), MetricsService.Directions.READ, document);
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.SERIALIZATION, () -> jsonOutputService.toJson(document));
+    }
+
+    /**
+     * Obtém vários objetos da entidade pelas chaves, em uma única consulta ao banco
+     *
+     * @param entityUri URI da entidade
+     * @param ids       Lista de chaves de cada objeto
+     * @return Objetos na mesma ordem das chaves, com null para os não encontrados
+     */
+    public List<Document> getMany(String entityUri, List<List<String>> ids) {
+        if (ids.size() > MAX_MGET_SIZE) {
+            throw new IllegalArgumentException("A quantidade de chaves não pode ser maior que " + MAX_MGET_SIZE + "!");
         }
-        entityOperationService.replaceOne(getEntityDescriptor(entityUri), data);
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        return metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.MGET, () -> entityOperationService.getMany(descriptor, ids));
+    }
+
+    /**
+     * Inclui um objeto, lendo e validando o corpo da requisição diretamente em BSON
+     *
+     * @param entityUri URI da entidade
+     * @param body      Corpo da requisição (objeto JSON)
+     */
+    public void create(String entityUri, InputStream body) {
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.CREATE, () -> {
+            RawBsonDocument document = entityOperationService.parseDocument(descriptor, body);
+            metricsService.recordDocumentSize(descriptor.getUriName(), MetricsService.Directions.WRITE, document);
+            try {
+                entityOperationService.insertOne(descriptor, document);
+            } finally {
+                invalidateCache(descriptor, document);
+            }
+        });
+    }
+
+    /**
+     * Substitui um objeto existente, sem leitura prévia. As chaves do objeto são as informadas na URI.
+     *
+     * @param entityUri URI da entidade
+     * @param body      Corpo da requisição (objeto JSON)
+     * @param id        Lista de chaves do objeto
+     */
+    public void update(String entityUri, InputStream body, List<String> id) {
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.UPDATE, () -> {
+            RawBsonDocument document = entityOperationService.parseDocument(descriptor, body, id);
+            metricsService.recordDocumentSize(descriptor.getUriName(), MetricsService.Directions.WRITE, document);
+            boolean found;
+            try {
+                found = entityOperationService.replaceOne(descriptor, document);
+            } finally {
+                invalidateCache(descriptor, id);
+            }
+            if (!found) {
+                throw new IllegalArgumentException("Item não encontrado!");
+            }
+        });
+    }
+
+    /**
+     * Altera apenas os campos enviados do objeto, sem leitura prévia
+     *
+     * @param entityUri URI da entidade
+     * @param data      Campos a serem alterados
+     * @param id        Lista de chaves do objeto
+     * @return true se o objeto foi encontrado
+     */
+    public boolean patch(String entityUri, Map<String, Object> data, List<String> id) {
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        return metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.PATCH, () -> {
+            try {
+                return entityOperationService.updateOne(descriptor, id, data);
+            } finally {
+                invalidateCache(descriptor, id);
+            }
+        });
     }
 
     public void delete(String entityUri, List<String> id) {
-        EntityDescriptor   descriptor = getEntityDescriptor(entityUri);
-        Optional<Document> current    = entityOperationService.query(descriptor, entityOperationService.getKeysFromEntity(descriptor, id)).stream().findFirst();
-        if (!current.isPresent()) {
-            throw new IllegalArgumentException("Item não encontrado!");
+        EntityDescriptor descriptor = getEntityDescriptor(entityUri);
+        metricsService.timeOperation(descriptor.getUriName(), MetricsService.Operations.DELETE, () -> {
+            Optional<Document> current = entityOperationService.query(descriptor, entityOperationService.getKeysFromEntity(descriptor, id)).stream().findFirst();
+            if (!current.isPresent()) {
+                throw new IllegalArgumentException("Item não encontrado!");
+            }
+            try {
+                entityOperationService.deleteOne(descriptor, id);
+            } finally {
+                invalidateCache(descriptor, id);
+            }
+        });
+    }
+
+    /**
+     * Remove o objeto do cache da entidade (se houver) após uma escrita, mesmo que ela tenha falhado, pois a falha
+     * pode ter ocorrido depois da gravação no banco. As leituras em andamento do objeto e das páginas da entidade
+     * deixam de ser compartilhadas, para que as leituras seguintes vejam a escrita.
+     */
+    private void invalidateCache(EntityDescriptor descriptor, List<String> id) {
+        invalidateKey(descriptor, entityOperationService.getCanonicalKey(descriptor, id));
+    }
+
+    private void invalidateCache(EntityDescriptor descriptor, Map<String, ?> data) {
+        List<BsonValue> key;
+        try {
+            key = entityOperationService.getCanonicalKey(descriptor, data);
+        } catch (IllegalArgumentException e) {
+            key = null;
+        }
+        invalidateKey(descriptor, key);
+    }
+
+    /**
+     * Esvazia o cache de objetos da entidade (se houver) após uma escrita que pode ter alterado qualquer objeto, como
+     * a gravação de um lote da importação. As leituras em andamento de objetos e páginas da entidade deixam de ser
+     * compartilhadas, para que não repovoem o cache com dados anteriores à escrita.
+     *
+     * @param descriptor Descritor da entidade
+     */
+    public void invalidateEntity(EntityDescriptor descriptor) {
+        invalidateKey(descriptor, null);
+    }
+
+    private void invalidateKey(EntityDescriptor descriptor, List<BsonValue> key) {
+        String uriName = descriptor.getUriName();
+        pageFlights.forgetIf(flight -> Objects.equals(uriName, flight.get(0)));
+        DocumentCache cache = DocumentCache.of(descriptor);
+        if (key == null) {
+            getFlights.forgetIf(flight -> Objects.equals(uriName, flight.get(0)));
+            if (cache != null) {
+                cache.invalidateAll();
+            }
+        } else {
+            getFlights.forget(Arrays.asList(uriName, key));
+            if (cache != null) {
+                cache.invalidate(key);
+            }
         }
-        entityOperationService.deleteOne(getEntityDescriptor(entityUri), id);
     }
 }
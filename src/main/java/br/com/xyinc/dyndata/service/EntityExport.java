@@ -0,0 +1,296 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import br.com.xyinc.dyndata.util.TimestampFormat;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+
+/**
+ * Exportação de todos os objetos de uma entidade. A coleção é dividida em faixas de _id (pelo horário embutido nos
+ * ObjectIds), lidas em paralelo; as linhas são agrupadas em blocos de bytes e repassadas ao stream de saída por uma
+ * fila limitada, de forma que a memória usada não depende do tamanho da coleção.
+ * As linhas de faixas diferentes ficam intercaladas, sem ordem definida.
+ */
+public class EntityExport {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV    = "csv";
+
+    static final int CHUNK_SIZE        = 64 * 1024;
+    static final int RANGES_PER_WORKER = 4;
+    static final int CHUNKS_PER_WORKER = 4;
+
+    private static final byte[] END_OF_WORKER = new byte[0];
+    private static final String CSV_LINE_END  = "\r\n";
+
+    private final MongoService      mongoService;
+    private final JsonOutputService jsonOutputService;
+    private final ExecutorService   executor;
+    private final EntityDescriptor  descriptor;
+    private final Bson              fields;
+    private final List<String>      columns;
+    private final boolean           csv;
+    private final int               workers;
+
+    EntityExport(MongoService mongoService, JsonOutputService jsonOutputService, ExecutorService executor, EntityDescriptor descriptor, Bson fields, String format, int workers) {
+        this.mongoService = mongoService;
+        this.jsonOutputService = jsonOutputService;
+        this.executor = executor;
+        this.descriptor = descriptor;
+        this.fields = fields;
+        this.csv = FORMAT_CSV.equals(format);
+        this.workers = workers;
+        this.columns = new ArrayList<>();
+        for (FieldDescriptor field : descriptor.getFields()) {
+            columns.add(field.getFieldName());
+        }
+    }
+
+    public boolean isCsv() {
+        return csv;
+    }
+
+    /**
+     * Lê a coleção e escreve todos os objetos no stream de saída, bloqueando até o término
+     *
+     * @param out Stream de saída
+     * @throws IOException Em caso de erro na escrita ou na leitura de alguma faixa
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        Queue<Bson>                ranges    = new ConcurrentLinkedQueue<>(getRanges());
+        BlockingQueue<byte[]>      chunks    = new ArrayBlockingQueue<>(workers * CHUNKS_PER_WORKER);
+        AtomicBoolean              cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> failure   = new AtomicReference<>();
+
+        if (csv) {
+            StringBuilder header = new StringBuilder();
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    header.append(',');
+                }
+                appendCsvValue(header, columns.get(i));
+            }
+            out.write(header.append(CSV_LINE_END).toString().getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < workers; i++) {
+            executor.execute(() -> scan(ranges, chunks, cancelled, failure));
+        }
+        try {
+            int finished = 0;
+            while (finished < workers && failure.get() == null) {
+                byte[] chunk = chunks.poll(1, TimeUnit.SECONDS);
+                if (chunk == END_OF_WORKER) {
+                    finished++;
+                } else if (chunk != null) {
+                    out.write(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Exportação interrompida");
+        } finally {
+            cancelled.set(true);
+            chunks.clear();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Erro ao exportar a entidade '" + descriptor.getUriName() + "'", failure.get());
+        }
+        out.flush();
+    }
+
+    /**
+     * Divide a coleção em faixas de _id de mesmo intervalo de tempo, entre o menor e o maior ObjectId existentes.
+     * Sem ObjectIds (ou com poucos segundos de diferença), a coleção é lida como uma única faixa.
+     */
+    List<Bson> getRanges() {
+        List<Bson> ranges = new ArrayList<>();
+        Object     first  = getBoundaryId(true);
+        Object     last   = getBoundaryId(false);
+        if (!(first instanceof ObjectId) || !(last instanceof ObjectId)) {
+            ranges.add(new Document());
+            return ranges;
+        }
+        long start = ((ObjectId) first).getTimestamp();
+        long span  = ((ObjectId) last).getTimestamp() - start + 1;
+        int  count = (int) Math.min(workers * RANGES_PER_WORKER, span);
+
+        ObjectId lower = null;
+        for (int i = 1; i <= count; i++) {
+            ObjectId upper = i == count ? null : toObjectId(start + span * i / count);
+            if (lower == null && upper == null) {
+                ranges.add(new Document());
+            } else if (lower == null) {
+                ranges.add(lt("_id", upper));
+            } else if (upper == null) {
+                ranges.add(gte("_id", lower));
+            } else {
+                ranges.add(and(gte("_id", lower), lt("_id", upper)));
+            }
+            lower = upper;
+        }
+        return ranges;
+    }
+
+    private Object getBoundaryId(boolean first) {
+        Bson     sort     = first ? ascending("_id") : descending("_id");
+        Document document = mongoService.find(descriptor.getCollectionName(), null, new Document("_id", 1), sort, 1).first();
+        return document == null ? null : document.get("_id");
+    }
+
+    /**
+     * Menor ObjectId possível com o horário informado (em segundos)
+     */
+    static ObjectId toObjectId(long timestampSeconds) {
+        byte[] bytes = new byte[12];
+        bytes[0] = (byte) (timestampSeconds >>> 24);
+        bytes[1] = (byte) (timestampSeconds >>> 16);
+        bytes[2] = (byte) (timestampSeconds >>> 8);
+        bytes[3] = (byte) timestampSeconds;
+        return new ObjectId(bytes);
+    }
+
+    private void scan(Queue<Bson> ranges, BlockingQueue<byte[]> chunks, AtomicBoolean cancelled, AtomicReference<Throwable> failure) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_SIZE + CHUNK_SIZE / 4);
+        Writer                writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        StringBuilder         row    = new StringBuilder();
+        try {
+            Bson range;
+            while (!cancelled.get() && (range = ranges.poll()) != null) {
+                try (MongoCursor<? extends Bson> cursor = openCursor(range)) {
+                    while (!cancelled.get() && cursor.hasNext()) {
+                        writeRow(writer, row, cursor.next());
+                        writer.flush();
+                        if (buffer.size() >= CHUNK_SIZE) {
+                            put(chunks, buffer.toByteArray(), cancelled);
+                            buffer.reset();
+                        }
+                    }
+                }
+            }
+            if (buffer.size() > 0) {
+                put(chunks, buffer.toByteArray(), cancelled);
+            }
+            put(chunks, END_OF_WORKER, cancelled);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+            cancelled.set(true);
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * Abre o cursor da faixa. Em NDJSON, os documentos são mantidos em bytes BSON e convertidos diretamente em JSON;
+     * em CSV, são lidos como {@link Document} para a extração das colunas.
+     */
+    private MongoCursor<? extends Bson> openCursor(Bson range) {
+        if (csv) {
+            return mongoService.find(descriptor.getCollectionName(), range, fields).iterator();
+        }
+        return mongoService.findRaw(descriptor.getCollectionName(), range, fields, null, 0).iterator();
+    }
+
+    /**
+     * Entrega o bloco ao escritor, aguardando espaço na fila enquanto a exportação não for cancelada
+     */
+    private static void put(BlockingQueue<byte[]> chunks, byte[] chunk, AtomicBoolean cancelled) throws InterruptedException {
+        while (!cancelled.get()) {
+            if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private void writeRow(Writer writer, StringBuilder row, Bson document) throws IOException {
+        if (!csv) {
+            jsonOutputService.write(writer, document);
+            writer.write('\n');
+            return;
+        }
+        row.setLength(0);
+        appendCsvRow(row, (Document) document);
+        writer.append(row);
+    }
+
+    void appendCsvRow(StringBuilder row, Document document) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            appendCsvValue(row, toCsvText(document.get(columns.get(i))));
+        }
+        row.append(CSV_LINE_END);
+    }
+
+    private String toCsvText(Object value) {
+        if (value == null) {
+            return "";
+        } else if (value instanceof Decimal128) {
+            return ((Decimal128) value).bigDecimalValue().toPlainString();
+        } else if (value instanceof BsonTimestamp) {
+            return TimestampFormat.format(((BsonTimestamp) value).getValue());
+        } else if (value instanceof Date) {
+            return TimestampFormat.format(((Date) value).getTime());
+        } else if (value instanceof List || value instanceof Map) {
+            return jsonOutputService.toJsonValue(value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Escreve o valor no formato CSV (RFC 4180), entre aspas quando necessário
+     */
+    private static void appendCsvValue(StringBuilder row, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            row.append(value);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+}
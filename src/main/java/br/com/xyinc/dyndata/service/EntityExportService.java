@@ -0,0 +1,98 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serviço de exportação de entidades. As faixas de todas as exportações são lidas por um único pool de threads de
+ * tamanho limitado ({@link #setExportThreads(int)}).
+ */
+@Service
+public class EntityExportService {
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private int                      exportThreads = 8;
+    private volatile ExecutorService executor;
+
+    @Autowired
+    private EntityManagementService entityManagementService;
+    @Autowired
+    private EntityOperationService  entityOperationService;
+    @Autowired
+    private MongoService            mongoService;
+    @Autowired
+    private JsonOutputService       jsonOutputService;
+
+    /**
+     * Prepara a exportação de todos os objetos da entidade. A leitura só começa ao escrever a exportação.
+     *
+     * @param entityUri   URI da entidade
+     * @param format      Formato de saída ({@value EntityExport#FORMAT_NDJSON} ou {@value EntityExport#FORMAT_CSV})
+     * @param parallelism Quantidade de faixas lidas simultaneamente, limitada ao tamanho do pool de exportação, ou
+     *                    null para o padrão ({@value DEFAULT_PARALLELISM})
+     * @return Exportação pronta para ser escrita
+     */
+    public EntityExport createExport(String entityUri, String format, Integer parallelism) {
+        if (parallelism == null) {
+            parallelism = Math.min(DEFAULT_PARALLELISM, exportThreads);
+        }
+        if (!EntityExport.FORMAT_NDJSON.equals(format) && !EntityExport.FORMAT_CSV.equals(format)) {
+            throw new IllegalArgumentException("Formato inválido! Use '" + EntityExport.FORMAT_NDJSON + "' ou '" + EntityExport.FORMAT_CSV + "'.");
+        }
+        if (parallelism < 1 || parallelism > exportThreads) {
+            throw new IllegalArgumentException("O paralelismo deve estar entre 1 e " + exportThreads + "!");
+        }
+        EntityDescriptor descriptor = entityManagementService.findEntityDescriptor(entityUri);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("Entidade não cadastrada!");
+        }
+        return new EntityExport(mongoService, jsonOutputService, getExecutor(), descriptor, entityOperationService.getFieldsFromEntity(descriptor), format, parallelism);
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    executor = result = Executors.newFixedThreadPool(exportThreads, runnable -> {
+                        Thread thread = new Thread(runnable, "dyndata-export-" + threadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public int getExportThreads() {
+        return exportThreads;
+    }
+
+    /**
+     * Define o tamanho do pool de exportação. Deve ser chamado antes da primeira exportação.
+     *
+     * @param exportThreads Quantidade máxima de threads de leitura de todas as exportações
+     */
+    public void setExportThreads(int exportThreads) {
+        this.exportThreads = exportThreads;
+    }
+}
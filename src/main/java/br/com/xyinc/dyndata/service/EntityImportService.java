@@ -0,0 +1,185 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.BulkImportResult;
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Serviço de importação em lote de objetos de entidades, a partir de NDJSON (um objeto por linha) ou de um array JSON.
+ */
+@Service
+public class EntityImportService {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int MAX_BATCH_SIZE     = 10000;
+
+    private static final ObjectMapper                       mapper   = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>>    MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    @Autowired
+    private EntityManagementService entityManagementService;
+    @Autowired
+    private FieldTypeService        fieldTypeService;
+    @Autowired
+    private MongoService            mongoService;
+    @Autowired
+    private DynamicEntityService    dynamicEntityService;
+
+    /**
+     * Importa os objetos lidos do stream, gravando-os em lotes. Itens inválidos são reportados por linha e não
+     * interrompem a importação; no modo ordenado, a importação é interrompida no primeiro erro de gravação.
+     *
+     * @param entityUri URI da entidade
+     * @param input     Corpo da requisição, em NDJSON ou array JSON
+     * @param batchSize Quantidade de objetos por lote de gravação
+     * @param ordered   Se verdadeiro, grava os objetos na ordem recebida e interrompe no primeiro erro de gravação
+     * @param upsert    Se verdadeiro, substitui objetos com chaves já cadastradas; senão, estes são reportados como erro
+     * @return Contadores e relatório de erros da importação
+     */
+    public BulkImportResult importEntities(String entityUri, InputStream input, int batchSize, boolean ordered, boolean upsert) throws IOException {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("O tamanho do lote deve estar entre 1 e " + MAX_BATCH_SIZE + "!");
+        }
+        EntityDescriptor descriptor = entityManagementService.findEntityDescriptor(entityUri);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("Entidade não cadastrada!");
+        }
+        if (descriptor.getKeys().isEmpty()) {
+            throw new IllegalStateException("Entidades devem ter chave");
+        }
+
+        BulkImportResult result = new BulkImportResult();
+        Batch            batch  = new Batch(batchSize);
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            JsonToken token   = parser.nextToken();
+            boolean   isArray = token == JsonToken.START_ARRAY;
+            if (isArray) {
+                token = parser.nextToken();
+            }
+            while (token != null && !(isArray && token == JsonToken.END_ARRAY)) {
+                int line = parser.getTokenLocation().getLineNr();
+                result.addReceived();
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    result.addError(line, "Item deve ser um objeto JSON!");
+                } else {
+                    Map<String, Object> values = parser.readValueAs(MAP_TYPE);
+                    try {
+                        batch.add(toWriteModel(descriptor, fieldTypeService.toDocument(descriptor, values), upsert), line);
+                    } catch (IllegalArgumentException e) {
+                        result.addError(line, e.getMessage());
+                    }
+                }
+                if (batch.isFull() && !flush(descriptor, batch, ordered, result)) {
+                    return result;
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            result.addError(e.getLocation() == null ? 0 : e.getLocation().getLineNr(), "JSON inválido: " + e.getOriginalMessage());
+            result.setAborted(true);
+        }
+        flush(descriptor, batch, ordered, result);
+        return result;
+    }
+
+    private WriteModel<Document> toWriteModel(EntityDescriptor descriptor, Document document, boolean upsert) {
+        if (!upsert) {
+            return new InsertOneModel<>(document);
+        }
+        List<Bson> conditions = new ArrayList<>();
+        for (String key : descriptor.getKeys()) {
+            conditions.add(eq(key, document.get(key)));
+        }
+        Bson condition = conditions.size() == 1 ? conditions.get(0) : and(conditions);
+        return new ReplaceOneModel<>(condition, document, new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * Grava o lote pendente, registrando os erros de gravação. O cache de objetos da entidade é esvaziado e as leituras
+     * em andamento deixam de ser compartilhadas, pois o lote pode ter substituído objetos armazenados nele.
+     *
+     * @return false se a importação deve ser interrompida
+     */
+    private boolean flush(EntityDescriptor descriptor, Batch batch, boolean ordered, BulkImportResult result) {
+        if (batch.models.isEmpty()) {
+            return true;
+        }
+        try {
+            result.addWritten(getWrittenCount(mongoService.callBulkWrite(descriptor.getCollectionName(), batch.models, ordered)));
+            return true;
+        } catch (MongoBulkWriteException e) {
+            result.addWritten(getWrittenCount(e.getWriteResult()));
+            for (BulkWriteError error : e.getWriteErrors()) {
+                String message = error.getCategory() == ErrorCategory.DUPLICATE_KEY ? "Chave de entidade já cadastrada!" : error.getMessage();
+                result.addError(batch.lines.get(error.getIndex()), message);
+            }
+            if (ordered) {
+                result.setAborted(true);
+                return false;
+            }
+            return true;
+        } finally {
+            batch.clear();
+            dynamicEntityService.invalidateEntity(descriptor);
+        }
+    }
+
+    private long getWrittenCount(BulkWriteResult writeResult) {
+        if (!writeResult.wasAcknowledged()) {
+            return 0;
+        }
+        return writeResult.getInsertedCount() + writeResult.getMatchedCount() + writeResult.getUpserts().size();
+    }
+
+    private static final class Batch {
+        private final int                  size;
+        private List<WriteModel<Document>> models;
+        private List<Integer>              lines;
+
+        private Batch(int size) {
+            this.size = size;
+            clear();
+        }
+
+        private void add(WriteModel<Document> model, int line) {
+            models.add(model);
+            lines.add(line);
+        }
+
+        private boolean isFull() {
+            return models.size() >= size;
+        }
+
+        private void clear() {
+            models = new ArrayList<>(size);
+            lines = new ArrayList<>(size);
+        }
+    }
+}
@@ -1,17 +1,21 @@
 package br.com.xyinc.dyndata.service;
 
 import br.com.xyinc.dyndata.exception.EntityKeyException;
+import br.com.xyinc.dyndata.model.CacheStats;
 import br.com.xyinc.dyndata.model.EntityDescriptor;
 import br.com.xyinc.dyndata.model.FieldDescriptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.util.JSON;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
 import org.apache.commons.lang3.ArrayUtils;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import static com.mongodb.client.model.Filters.eq;
@@ -30,6 +34,9 @@ public class EntityManagementService {
     final static         String       KEYS_FIELD_NAME                  = "keys";
     final static         String       SEQ_FIELD_NAME                   = "sequenceField";
     final static         String       FIELDS_FIELD_NAME                = "fields";
+    final static         String       INDEXES_FIELD_NAME               = "indexes";
+    final static         String       CACHE_MAX_ENTRIES_FIELD_NAME     = "cacheMaxEntries";
+    final static         String       CACHE_TTL_FIELD_NAME             = "cacheTtlSeconds";
     private final static String       COLLECTION_FIELD_NAME            = "collectionName";
     final static         String       SEQ_COLLECTION_LASTID_FIELD_NAME = "lastId";
     private final static List<String> ALLOWED_SEQ_FIELD_TYPES          = Arrays.asList(FieldTypeService.DefaultFieldTypes.INTEGER, FieldTypeService.DefaultFieldTypes.LONG);
@@ -40,12 +47,31 @@ public class EntityManagementService {
             FieldTypeService.DefaultFieldTypes.BOOLEAN,
             FieldTypeService.DefaultFieldTypes.TIMESTAMP
     );
+    private static final ObjectMapper descriptorMapper = new ObjectMapper();
+    private final static List<String> INDEXABLE_FIELD_TYPES            = Arrays.asList(
+            FieldTypeService.DefaultFieldTypes.INTEGER,
+            FieldTypeService.DefaultFieldTypes.LONG,
+            FieldTypeService.DefaultFieldTypes.STRING,
+            FieldTypeService.DefaultFieldTypes.BOOLEAN,
+            FieldTypeService.DefaultFieldTypes.TIMESTAMP,
+            FieldTypeService.DefaultFieldTypes.DECIMAL,
+            FieldTypeService.DefaultFieldTypes.INTEGER_ARR,
+            FieldTypeService.DefaultFieldTypes.LONG_ARR,
+            FieldTypeService.DefaultFieldTypes.STRING_ARR,
+            FieldTypeService.DefaultFieldTypes.BOOLEAN_ARR,
+            FieldTypeService.DefaultFieldTypes.TIMESTAMP_ARR,
+            FieldTypeService.DefaultFieldTypes.DECIMAL_ARR
+    );
     private static EntityDescriptor _configurationCollection;
 
+    private final ConcurrentMap<String, EntityDescriptor> descriptorCache = new ConcurrentHashMap<>();
+
     @Autowired
     private EntityOperationService entityOperationService;
     @Autowired
     private FieldTypeService       fieldTypeService;
+    @Autowired
+    private MongoService           mongoService;
 
     /**
      * Instancia o descritor que representa a coleção dos descritores de entidades.
@@ -74,6 +100,9 @@ public class EntityManagementService {
                     new FieldDescriptor("minLength", FieldTypeService.DefaultFieldTypes.INTEGER, true),
                     new FieldDescriptor("maxLength", FieldTypeService.DefaultFieldTypes.INTEGER, true),
                     new FieldDescriptor("defaultValue", FieldTypeService.DefaultFieldTypes.STRING, true),
+                    new FieldDescriptor("indexed", FieldTypeService.DefaultFieldTypes.BOOLEAN, true),
+                    new FieldDescriptor("unique", FieldTypeService.DefaultFieldTypes.BOOLEAN, true),
+                    new FieldDescriptor("sparse", FieldTypeService.DefaultFieldTypes.BOOLEAN, true),
                     documentsFieldDescriptor
             );
 
@@ -82,12 +111,29 @@ public class EntityManagementService {
             FieldDescriptor keyFieldDescriptor = new FieldDescriptor(KEYS_FIELD_NAME, FieldTypeService.DefaultFieldTypes.STRING_ARR, false);
             keyFieldDescriptor.setMinLength(1);
 
+            FieldDescriptor indexFieldsDescriptor = new FieldDescriptor(FIELDS_FIELD_NAME, FieldTypeService.DefaultFieldTypes.STRING_ARR, false);
+            indexFieldsDescriptor.setMinLength(1);
+            FieldDescriptor indexesFieldDescriptor = new FieldDescriptor(INDEXES_FIELD_NAME, FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, true, Arrays.asList(
+                    new FieldDescriptor("name", FieldTypeService.DefaultFieldTypes.STRING, true),
+                    indexFieldsDescriptor,
+                    new FieldDescriptor("unique", FieldTypeService.DefaultFieldTypes.BOOLEAN, true),
+                    new FieldDescriptor("sparse", FieldTypeService.DefaultFieldTypes.BOOLEAN, true)
+            ));
+
+            FieldDescriptor cacheMaxEntriesDescriptor = new FieldDescriptor(CACHE_MAX_ENTRIES_FIELD_NAME, FieldTypeService.DefaultFieldTypes.INTEGER, true);
+            cacheMaxEntriesDescriptor.setMin(BigDecimal.ZERO);
+            FieldDescriptor cacheTtlDescriptor = new FieldDescriptor(CACHE_TTL_FIELD_NAME, FieldTypeService.DefaultFieldTypes.INTEGER, true);
+            cacheTtlDescriptor.setMin(BigDecimal.ZERO);
+
             _configurationCollection.setFields(Arrays.asList(
                     new FieldDescriptor(URI_FIELD_NAME, FieldTypeService.DefaultFieldTypes.STRING, false),
                     new FieldDescriptor(ENTITY_FIELD_NAME, FieldTypeService.DefaultFieldTypes.STRING, false),
                     new FieldDescriptor(SEQ_FIELD_NAME, FieldTypeService.DefaultFieldTypes.STRING, true),
                     keyFieldDescriptor,
-                    new FieldDescriptor(FIELDS_FIELD_NAME, FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, false, fieldFieldsDescriptor)
+                    new FieldDescriptor(FIELDS_FIELD_NAME, FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, false, fieldFieldsDescriptor),
+                    indexesFieldDescriptor,
+                    cacheMaxEntriesDescriptor,
+                    cacheTtlDescriptor
             ));
         }
         return _configurationCollection;
@@ -113,26 +159,70 @@ public class EntityManagementService {
     }
 
     /**
-     * Obtém o descritor da entidade com o nome de URI especificado
+     * Obtém o descritor da entidade com o nome de URI especificado, servido do cache em memória quando disponível
      *
      * @param entityUri URI da entidade a procurar
      * @return Descritor da entidade pesquisada
      */
     public EntityDescriptor findEntityDescriptor(String entityUri) {
-        Optional<Document> document = findEntity(entityUri);
-        if (!document.isPresent()) {
-            throw new IllegalArgumentException("URI de entidade inválida!");
+        EntityDescriptor descriptor = descriptorCache.get(entityUri);
+        if (descriptor != null) {
+            return descriptor;
         }
-        String       serializedDocument = JSON.serialize(document.get());
-        ObjectMapper mapper             = new ObjectMapper();
+        return descriptorCache.computeIfAbsent(entityUri, uri -> {
+            Optional<Document> document = findEntity(uri);
+            if (!document.isPresent()) {
+                throw new IllegalArgumentException("URI de entidade inválida!");
+            }
+            return toEntityDescriptor(document.get());
+        });
+    }
+
+    /**
+     * Carrega todos os descritores de entidades cadastrados no cache em memória, substituindo o conteúdo anterior
+     */
+    public void loadEntityDescriptors() {
+        Map<String, EntityDescriptor> loaded = new HashMap<>();
+        for (Document document : listEntities()) {
+            EntityDescriptor descriptor = toEntityDescriptor(document);
+            loaded.put(descriptor.getUriName(), descriptor);
+        }
+        descriptorCache.clear();
+        descriptorCache.putAll(loaded);
+    }
+
+    /**
+     * Remove o descritor da entidade do cache em memória, forçando sua releitura no próximo acesso
+     *
+     * @param uriName URI da entidade
+     */
+    public void invalidateEntityDescriptor(String uriName) {
+        descriptorCache.remove(uriName);
+    }
+
+    /**
+     * Converte o documento do descritor diretamente, sem passar por texto JSON
+     */
+    private EntityDescriptor toEntityDescriptor(Document document) {
         try {
-            return mapper.readerFor(EntityDescriptor.class).readValue(serializedDocument);
-        } catch (IOException e) {
-            e.printStackTrace();
+            return descriptorMapper.convertValue(document, EntityDescriptor.class);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace(System.err);
             throw new IllegalStateException(e);
         }
     }
 
+    /**
+     * Obtém a configuração e os contadores do cache de objetos da entidade
+     *
+     * @param uriName URI da entidade
+     * @return Estatísticas do cache
+     */
+    public CacheStats getCacheStats(String uriName) {
+        DocumentCache cache = DocumentCache.of(findEntityDescriptor(uriName));
+        return cache == null ? CacheStats.disabled() : cache.getStats();
+    }
+
     /**
      * Remove entidade baseado na URI
      *
@@ -143,6 +233,7 @@ public class EntityManagementService {
             throw new IllegalArgumentException("Entidade não encontrada!");
         }
         entityOperationService.deleteOne(getConfigurationCollection(), Collections.singletonList(uriName));
+        invalidateEntityDescriptor(uriName.trim());
     }
 
     /**
@@ -160,7 +251,7 @@ public class EntityManagementService {
             throw new IllegalArgumentException("Entidade já existe!");
         }
 
-        saveEntity(data);
+        saveEntity(data, null);
     }
 
     /**
@@ -177,21 +268,47 @@ public class EntityManagementService {
         data.put(URI_FIELD_NAME, uriName.trim());
         data.put(SEQ_FIELD_NAME, current.get().get(SEQ_FIELD_NAME));
         data.put(KEYS_FIELD_NAME, current.get().get(KEYS_FIELD_NAME));
-        saveEntity(data);
+        saveEntity(data, current.get());
     }
 
+    /**
+     * Grava o descritor e cria os índices da coleção. Se o índice de chaves não puder ser criado, o descritor anterior
+     * é restaurado (ou o cadastro é desfeito, para uma nova entidade).
+     *
+     * @param data     Dados do descritor da entidade
+     * @param previous Descritor gravado anteriormente, ou null para uma nova entidade
+     */
     @SuppressWarnings("unchecked")
-    private void saveEntity(Map<String, Object> data) {
+    private void saveEntity(Map<String, Object> data, Document previous) {
         String uriName    = uriValidation(data);
         String entityName = ensureNotNullOrEmpty(data, ENTITY_FIELD_NAME, "Nome da entidade não pode ser nulo!", "Nome da entidade não pode ser vazio!");
 
         fieldsCheck(data);
 
+        List<String>     keys    = ((List<String>) data.get(KEYS_FIELD_NAME)).stream().distinct().collect(Collectors.toList());
+        List<IndexModel> indexes = getDeclaredIndexes(data);
+
         data.put(COLLECTION_FIELD_NAME, DEFAULT_COLLECTION_PREFIX + uriName);
         data.put(URI_FIELD_NAME, uriName);
         data.put(ENTITY_FIELD_NAME, entityName);
 
         entityOperationService.replaceOne(getConfigurationCollection(), data);
+        invalidateEntityDescriptor(uriName);
+
+        // Os índices só são criados depois que o descritor foi gravado
+        try {
+            mongoService.ensureKeyIndex(DEFAULT_COLLECTION_PREFIX + uriName, keys);
+        } catch (RuntimeException e) {
+            // Sem o índice de chaves a entidade não garante chaves únicas: a gravação do descritor é desfeita
+            if (previous == null) {
+                entityOperationService.deleteOne(getConfigurationCollection(), Collections.singletonList(uriName));
+            } else {
+                entityOperationService.replaceOne(getConfigurationCollection(), previous);
+            }
+            invalidateEntityDescriptor(uriName);
+            throw e;
+        }
+        mongoService.ensureIndexesInBackground(DEFAULT_COLLECTION_PREFIX + uriName, indexes);
     }
 
     @SuppressWarnings("unchecked")
@@ -208,6 +325,131 @@ public class EntityManagementService {
         if (data.get(SEQ_FIELD_NAME) != null) {
             sequenceFieldValidation(data, fields, fieldsNames);
         }
+
+        indexesCheck(data, fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void indexesCheck(Map<String, Object> data, List<Map<String, Object>> fields) {
+        Map<String, String> fieldTypes = new HashMap<>();
+        // Nomes dos índices declarados nos campos e na lista de índices, que não podem se repetir
+        Set<String>         indexNames = new HashSet<>();
+        for (Map<String, Object> field : fields) {
+            String fieldName = "" + field.get("fieldName");
+            String fieldType = field.getOrDefault("fieldType", "").toString();
+            fieldTypes.put(fieldName, fieldType);
+            boolean indexed = parseIndexOption(field, "indexed");
+            boolean unique  = parseIndexOption(field, "unique");
+            boolean sparse  = parseIndexOption(field, "sparse");
+            if ((unique || sparse) && !indexed) {
+                throw new IllegalArgumentException(String.format("As opções 'unique' e 'sparse' do campo '%s' exigem 'indexed' verdadeiro!", fieldName));
+            }
+            if (indexed && !INDEXABLE_FIELD_TYPES.contains(fieldType)) {
+                throw new IllegalArgumentException(String.format("O campo '%s' do tipo %s não pode ser indexado!", fieldName, fieldType));
+            }
+            if (indexed && !indexNames.add(MongoService.MANAGED_INDEX_PREFIX + fieldName)) {
+                throw new IllegalArgumentException("Todos os índices devem ter nomes distintos entre si! Índice: " + MongoService.MANAGED_INDEX_PREFIX + fieldName);
+            }
+            if (field.get("documentFields") instanceof List) {
+                nestedIndexCheck((List<Map<String, Object>>) field.get("documentFields"), fieldName);
+            }
+        }
+
+        if (data.get(INDEXES_FIELD_NAME) == null) {
+            return;
+        }
+        ensureList(data, INDEXES_FIELD_NAME, null, "Lista de índices deve ser um array!");
+        for (Map<String, Object> index : (List<Map<String, Object>>) data.get(INDEXES_FIELD_NAME)) {
+            if (!(index.get(FIELDS_FIELD_NAME) instanceof List) || ((List) index.get(FIELDS_FIELD_NAME)).isEmpty()) {
+                throw new IllegalArgumentException("Todo índice deve declarar ao menos um campo em 'fields'!");
+            }
+            parseIndexOption(index, "unique");
+            parseIndexOption(index, "sparse");
+            List<String> indexFields = ((List<Object>) index.get(FIELDS_FIELD_NAME)).stream().map(x -> stripIndexDirection("" + x)).collect(Collectors.toList());
+            for (String indexField : indexFields) {
+                if (!fieldTypes.containsKey(indexField)) {
+                    throw new IllegalArgumentException(String.format("O campo '%s' do índice não está declarado na lista de campos!", indexField));
+                }
+                if (!INDEXABLE_FIELD_TYPES.contains(fieldTypes.get(indexField))) {
+                    throw new IllegalArgumentException(String.format("O campo '%s' do tipo %s não pode ser indexado!", indexField, fieldTypes.get(indexField)));
+                }
+            }
+            if (indexFields.size() != new HashSet<>(indexFields).size()) {
+                throw new IllegalArgumentException("Um índice não pode repetir campos!");
+            }
+            if (!indexNames.add(getIndexName(index))) {
+                throw new IllegalArgumentException("Todos os índices devem ter nomes distintos entre si! Índice: " + getIndexName(index));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void nestedIndexCheck(List<Map<String, Object>> documentFields, String parentName) {
+        for (Map<String, Object> field : documentFields) {
+            if (parseIndexOption(field, "indexed") || parseIndexOption(field, "unique") || parseIndexOption(field, "sparse")) {
+                throw new IllegalArgumentException(String.format("Apenas campos de primeiro nível podem ser indexados! Campo: %s.%s", parentName, field.get("fieldName")));
+            }
+            if (field.get("documentFields") instanceof List) {
+                nestedIndexCheck((List<Map<String, Object>>) field.get("documentFields"), parentName + "." + field.get("fieldName"));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<IndexModel> getDeclaredIndexes(Map<String, Object> data) {
+        List<IndexModel> result = new ArrayList<>();
+        for (Map<String, Object> field : (List<Map<String, Object>>) data.get(FIELDS_FIELD_NAME)) {
+            if (parseIndexOption(field, "indexed")) {
+                IndexOptions options = new IndexOptions()
+                        .name(MongoService.MANAGED_INDEX_PREFIX + field.get("fieldName"))
+                        .unique(parseIndexOption(field, "unique"))
+                        .sparse(parseIndexOption(field, "sparse"));
+                result.add(new IndexModel(new Document("" + field.get("fieldName"), 1), options));
+            }
+        }
+        if (data.get(INDEXES_FIELD_NAME) != null) {
+            for (Map<String, Object> index : (List<Map<String, Object>>) data.get(INDEXES_FIELD_NAME)) {
+                Document keys = new Document();
+                for (Object indexField : (List<Object>) index.get(FIELDS_FIELD_NAME)) {
+                    keys.put(stripIndexDirection("" + indexField), ("" + indexField).startsWith("-") ? -1 : 1);
+                }
+                IndexOptions options = new IndexOptions()
+                        .name(getIndexName(index))
+                        .unique(parseIndexOption(index, "unique"))
+                        .sparse(parseIndexOption(index, "sparse"));
+                result.add(new IndexModel(keys, options));
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String getIndexName(Map<String, Object> index) {
+        if (index.get("name") != null && !index.get("name").toString().trim().isEmpty()) {
+            return MongoService.MANAGED_INDEX_PREFIX + index.get("name").toString().trim();
+        }
+        return MongoService.MANAGED_INDEX_PREFIX + ((List<Object>) index.get(FIELDS_FIELD_NAME)).stream().map(Object::toString).collect(Collectors.joining("_"));
+    }
+
+    /**
+     * Lê uma opção booleana de índice ({@code indexed}, {@code unique} ou {@code sparse}), aceitando também as
+     * strings "true" e "false". O valor lido é gravado de volta como booleano.
+     */
+    private static boolean parseIndexOption(Map<String, Object> options, String option) {
+        Object value = options.get(option);
+        if (value == null || value instanceof Boolean) {
+            return Boolean.TRUE.equals(value);
+        }
+        if (value instanceof String && ("true".equalsIgnoreCase((String) value) || "false".equalsIgnoreCase((String) value))) {
+            boolean enabled = Boolean.parseBoolean((String) value);
+            options.put(option, enabled);
+            return enabled;
+        }
+        throw new IllegalArgumentException(String.format("Valor inválido para a opção '%s': %s", option, value));
+    }
+
+    private String stripIndexDirection(String indexField) {
+        return indexField.startsWith("-") ? indexField.substring(1) : indexField;
     }
 
     private void keysCheck(List<String> keys, List<Map<String, Object>> fields, List<String> fieldsNames) {
@@ -2,17 +2,28 @@ package br.com.xyinc.dyndata.service;
 
 import br.com.xyinc.dyndata.model.EntityDescriptor;
 import br.com.xyinc.dyndata.model.FieldDescriptor;
+import com.mongodb.client.MongoIterable;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
+import org.bson.json.JsonParseException;
+import org.bson.types.Decimal128;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.mongodb.client.model.Filters.and;
-import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Projections.*;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
 
 @Service
 public class EntityOperationService {
@@ -22,6 +33,8 @@ public class EntityOperationService {
     private MongoService     mongoService;
     @Autowired
     private FieldTypeService fieldTypeService;
+    @Autowired
+    private MetricsService   metricsService;
 
     /**
      * Busca documento baseado no descritor da entidade
@@ -35,6 +48,115 @@ public class EntityOperationService {
         return mongoService.callFind(descriptor.getCollectionName(), query, fields);
     }
 
+    /**
+     * Busca documentos baseado no descritor da entidade, sem materializar o resultado em memória
+     *
+     * @param descriptor Descritor de entidade
+     * @param query      Query de filtro
+     * @return Iterável dos documentos correspondentes (em bytes BSON), lidos do banco conforme a iteração
+     */
+    public MongoIterable<RawBsonDocument> find(EntityDescriptor descriptor, Bson query) {
+        return find(descriptor, query, null, 0);
+    }
+
+    /**
+     * Busca documentos ordenados e limitados, sem materializar o resultado em memória
+     *
+     * @param descriptor Descritor de entidade
+     * @param query      Query de filtro
+     * @param sort       Ordenação, ou null para a ordem natural
+     * @param limit      Quantidade máxima de documentos, ou 0 para não limitar
+     * @return Iterável dos documentos correspondentes (em bytes BSON), lidos do banco conforme a iteração
+     */
+    public MongoIterable<RawBsonDocument> find(EntityDescriptor descriptor, Bson query, Bson sort, int limit) {
+        Bson fields = getFieldsFromEntity(descriptor);
+        return mongoService.findRaw(descriptor.getCollectionName(), query, fields, sort, limit);
+    }
+
+    /**
+     * Obtém o filtro BSON a partir dos parâmetros de consulta, no formato {@code campo=valor} para igualdade ou
+     * {@code campo[operador]=valor}, com os operadores {@code gt}, {@code gte}, {@code lt}, {@code lte},
+     * {@code in} (valores separados por vírgula) e {@code prefix}. O filtro é compilado uma vez por formato de consulta.
+     *
+     * @param descriptor Descritor da entidade
+     * @param params     Parâmetros de filtro
+     * @return Filtro BSON, ou null se não houver parâmetros
+     */
+    public Bson getFilterFromParams(EntityDescriptor descriptor, Map<String, String> params) {
+        if (params == null || params.isEmpty()) {
+            return null;
+        }
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.FILTER, () -> {
+            List<String> paramNames = new ArrayList<>(params.keySet());
+            Collections.sort(paramNames);
+            QueryFilterPlan plan = QueryFilterPlan.get(descriptor, String.join("&", paramNames), shape -> QueryFilterPlan.compile(descriptor, paramNames, fieldTypeService));
+            return plan.bind(params, fieldTypeService);
+        });
+    }
+
+    /**
+     * Obtém a ordenação pelas chaves da entidade, na ordem declarada no descritor
+     *
+     * @param descriptor Descritor da entidade
+     * @param descending Se a ordenação deve ser decrescente
+     * @return Ordenação BSON pelas chaves
+     */
+    public Bson getKeySort(EntityDescriptor descriptor, boolean descending) {
+        return descending ? descending(descriptor.getKeys()) : ascending(descriptor.getKeys());
+    }
+
+    /**
+     * Obtém o filtro que seleciona os documentos posteriores, na ordenação pelas chaves, ao documento representado
+     * pelo token de continuação (paginação por chave)
+     *
+     * @param descriptor Descritor da entidade
+     * @param token      Token de continuação gerado por {@link #getContinuationToken(EntityDescriptor, Document)}
+     * @param descending Se a ordenação das chaves é decrescente
+     * @return Filtro BSON dos documentos seguintes
+     */
+    public Bson getKeysetFilter(EntityDescriptor descriptor, String token, boolean descending) {
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.FILTER, () -> buildKeysetFilter(descriptor, token, descending));
+    }
+
+    private Bson buildKeysetFilter(EntityDescriptor descriptor, String token, boolean descending) {
+        BsonDocument lastKeys;
+        try {
+            lastKeys = BsonDocument.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | JsonParseException e) {
+            throw new IllegalArgumentException("Token de continuação inválido!", e);
+        }
+        List<String> keys = descriptor.getKeys().stream().distinct().collect(Collectors.toList());
+        if (!lastKeys.keySet().equals(new HashSet<>(keys))) {
+            throw new IllegalArgumentException("Token de continuação inválido!");
+        }
+        List<Bson> alternatives = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            List<Bson> conditions = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                conditions.add(eq(keys.get(j), lastKeys.get(keys.get(j))));
+            }
+            BsonValue value = lastKeys.get(keys.get(i));
+            conditions.add(descending ? lt(keys.get(i), value) : gt(keys.get(i), value));
+            alternatives.add(conditions.size() == 1 ? conditions.get(0) : and(conditions));
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : or(alternatives);
+    }
+
+    /**
+     * Gera o token opaco de continuação a partir dos valores das chaves do documento
+     *
+     * @param descriptor Descritor da entidade
+     * @param document   Último documento da página
+     * @return Token de continuação
+     */
+    public String getContinuationToken(EntityDescriptor descriptor, Document document) {
+        BsonDocument lastKeys = new BsonDocument();
+        for (String key : descriptor.getKeys()) {
+            lastKeys.put(key, fieldTypeService.toBson(document.get(key), null, fieldTypeService.getType(descriptor.getFieldByName(key).getFieldType()), new ArrayList<>()));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastKeys.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * Obtém o filtro BSON correspondente às chaves da entidade
      *
@@ -43,6 +165,10 @@ public class EntityOperationService {
      * @return Filtro BSON correspondente às chaves
      */
     public Bson getKeysFromEntity(EntityDescriptor descriptor, List<String> id) {
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.FILTER, () -> buildKeyFilter(descriptor, id));
+    }
+
+    private Bson buildKeyFilter(EntityDescriptor descriptor, List<String> id) {
         List<String> keys         = descriptor.getKeys();
         List<Bson>   list         = new ArrayList<>();
         Set<Bson>    uniqueValues = new HashSet<>();
@@ -65,7 +191,11 @@ public class EntityOperationService {
      * @param params     Valores da entidade de onde os valores da chave serão extraídos
      * @return Filtro BSON correspondente às chaves
      */
-    public Bson getKeysFromEntity(EntityDescriptor descriptor, Map<String, Object> params) {
+    public Bson getKeysFromEntity(EntityDescriptor descriptor, Map<String, ?> params) {
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.FILTER, () -> buildKeyFilter(descriptor, params));
+    }
+
+    private Bson buildKeyFilter(EntityDescriptor descriptor, Map<String, ?> params) {
         List<Bson> list         = new ArrayList<>();
         Set<Bson>  uniqueValues = new HashSet<>();
         for (String key : descriptor.getKeys()) {
@@ -84,14 +214,100 @@ public class EntityOperationService {
      * @param id         Lista de chaves, na ordem declarada no descritor
      * @return Documento BSON correspondente, se exitir (encapsulado em Optional)
      */
-    public Optional<Document> get(EntityDescriptor descriptor, List<String> id) {
+    public Optional<RawBsonDocument> get(EntityDescriptor descriptor, List<String> id) {
         if (descriptor.getKeys().isEmpty()) {
             throw new IllegalStateException("Entidades devem ter chave");
         } else {
             Bson condition = getKeysFromEntity(descriptor, id);
-            Bson fields    = getFieldsFromEntity(descriptor);
-            return mongoService.callFind(descriptor.getCollectionName(), condition, fields).stream().findFirst();
+            return Optional.ofNullable(find(descriptor, condition, null, 1).first());
+        }
+    }
+
+    /**
+     * Obtém os itens da entidade correspondentes às chaves informadas, em uma única consulta ao banco
+     * ({@code $in} para entidades de chave simples, {@code $or} para chaves compostas)
+     *
+     * @param descriptor Descritor da entidade
+     * @param ids        Lista de chaves de cada item, na ordem declarada no descritor
+     * @return Documentos na mesma ordem das chaves informadas, com null para as chaves não encontradas
+     */
+    public List<Document> getMany(EntityDescriptor descriptor, List<List<String>> ids) {
+        List<String> keys = descriptor.getKeys().stream().distinct().collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("Entidades devem ter chave");
+        }
+        List<List<BsonValue>> requested = new ArrayList<>(ids.size());
+        Set<List<BsonValue>>  unique    = new LinkedHashSet<>();
+        for (List<String> id : ids) {
+            List<BsonValue> values = getCanonicalKey(descriptor, id);
+            requested.add(values);
+            unique.add(values);
+        }
+        if (unique.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Bson condition;
+        if (keys.size() == 1) {
+            condition = in(keys.get(0), unique.stream().map(values -> values.get(0)).collect(Collectors.toList()));
+        } else {
+            List<Bson> alternatives = new ArrayList<>(unique.size());
+            for (List<BsonValue> values : unique) {
+                List<Bson> conditions = new ArrayList<>(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    conditions.add(eq(keys.get(i), values.get(i)));
+                }
+                alternatives.add(and(conditions));
+            }
+            condition = or(alternatives);
+        }
+
+        Map<List<BsonValue>, Document> found = new HashMap<>();
+        for (Document document : mongoService.callFind(descriptor.getCollectionName(), condition, getFieldsFromEntity(descriptor))) {
+            found.put(getKeyValues(descriptor, keys, document::get), document);
+        }
+        return requested.stream().map(found::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Obtém a chave canônica do item (ver {@link #getMany(EntityDescriptor, List)}), usada para comparar chaves
+     *
+     * @param descriptor Descritor da entidade
+     * @param id         Lista de chaves, na ordem declarada no descritor
+     * @return Valores BSON das chaves distintas, na ordem declarada no descritor
+     */
+    public List<BsonValue> getCanonicalKey(EntityDescriptor descriptor, List<String> id) {
+        if (descriptor.getKeys().size() != id.size()) {
+            throw new IllegalArgumentException("Tamanho da chave não corresponde a quantidade de valores enviados!");
         }
+        return getKeyValues(descriptor, descriptor.getKeys().stream().distinct().collect(Collectors.toList()), key -> id.get(descriptor.getKeys().indexOf(key)));
+    }
+
+    /**
+     * Obtém a chave canônica do item a partir dos seus valores
+     *
+     * @param descriptor Descritor da entidade
+     * @param params     Valores da entidade de onde os valores da chave serão extraídos
+     * @return Valores BSON das chaves distintas, na ordem declarada no descritor
+     */
+    public List<BsonValue> getCanonicalKey(EntityDescriptor descriptor, Map<String, ?> params) {
+        return getKeyValues(descriptor, descriptor.getKeys().stream().distinct().collect(Collectors.toList()), params::get);
+    }
+
+    /**
+     * Converte os valores das chaves para BSON em uma forma canônica, de modo que a chave informada na requisição e a
+     * lida do banco sejam iguais (decimais são normalizados, pois "1.50" e "1.5" correspondem ao mesmo documento)
+     */
+    private List<BsonValue> getKeyValues(EntityDescriptor descriptor, List<String> keys, Function<String, Object> valueOf) {
+        List<BsonValue> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            BsonValue value = fieldTypeService.toBson(valueOf.apply(key), null, fieldTypeService.getType(descriptor.getFieldByName(key).getFieldType()), new ArrayList<>());
+            if (value.isDecimal128()) {
+                value = new BsonDecimal128(new Decimal128(value.asDecimal128().getValue().bigDecimalValue().stripTrailingZeros()));
+            }
+            values.add(value);
+        }
+        return values;
     }
 
     Bson getFieldsFromEntity(EntityDescriptor descriptor) {
@@ -103,6 +319,69 @@ public class EntityOperationService {
         return fields(include(fieldListInclude), exclude(fieldListExclude));
     }
 
+    /**
+     * Lê e valida o corpo JSON de um novo objeto da entidade diretamente em BSON
+     *
+     * @param descriptor Descritor da entidade
+     * @param body       Corpo da requisição
+     * @return Documento BSON pronto para inserção
+     */
+    public RawBsonDocument parseDocument(EntityDescriptor descriptor, InputStream body) {
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.CONVERSION,
+                () -> fieldTypeService.parseDocument(descriptor, body, Collections.emptyMap()));
+    }
+
+    /**
+     * Lê e valida o corpo JSON de um objeto existente diretamente em BSON. Os valores das chaves são os informados
+     * na URI; os enviados no corpo são ignorados.
+     *
+     * @param descriptor Descritor da entidade
+     * @param body       Corpo da requisição
+     * @param id         Lista de chaves, na ordem declarada no descritor
+     * @return Documento BSON pronto para substituição
+     */
+    public RawBsonDocument parseDocument(EntityDescriptor descriptor, InputStream body, List<String> id) {
+        List<String> keys = descriptor.getKeys();
+        if (keys.size() != id.size()) {
+            throw new IllegalArgumentException("Tamanho da chave não corresponde a quantidade de valores enviados!");
+        }
+        Map<String, BsonValue> keyValues = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            keyValues.putIfAbsent(key, fieldTypeService.toBson(id.get(i), null, fieldTypeService.getType(descriptor.getFieldByName(key).getFieldType()), new ArrayList<>()));
+        }
+        return metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.CONVERSION, () -> fieldTypeService.parseDocument(descriptor, body, keyValues));
+    }
+
+    /**
+     * Insere um novo documento BSON baseado no descritor de entidade. Chaves já cadastradas são rejeitadas pelo índice
+     * único das chaves, em uma única operação no banco.
+     *
+     * @param descriptor Descritor da entidade
+     * @param document   Documento lido por {@link #parseDocument(EntityDescriptor, InputStream)}
+     */
+    public void insertOne(EntityDescriptor descriptor, RawBsonDocument document) {
+        if (descriptor.getKeys().isEmpty()) {
+            throw new IllegalStateException("Entidades devem ter chave");
+        }
+        mongoService.callInsertOne(descriptor.getCollectionName(), document);
+    }
+
+    /**
+     * Substitui um documento BSON existente, usando os valores das suas chaves como referência, em uma única operação
+     * no banco
+     *
+     * @param descriptor Descritor da entidade
+     * @param document   Documento lido por {@link #parseDocument(EntityDescriptor, InputStream, List)}
+     * @return true se o documento foi encontrado
+     */
+    public boolean replaceOne(EntityDescriptor descriptor, RawBsonDocument document) {
+        if (descriptor.getKeys().isEmpty()) {
+            throw new IllegalStateException("Entidades devem ter chave");
+        }
+        return mongoService.callReplaceOne(descriptor.getCollectionName(), document, getKeysFromEntity(descriptor, document)) > 0;
+    }
+
     /**
      * Inclui ou substitui um documento BSON baseado no descritor de entidade, usando suas chaves como referência
      *
@@ -123,6 +402,24 @@ public class EntityOperationService {
     }
 
 
+    /**
+     * Altera parcialmente um documento BSON baseado nas chaves descritas no descritor da entidade, gravando apenas os
+     * campos enviados em uma única operação no banco
+     *
+     * @param descriptor Descritor da entidade
+     * @param id         Lista de chaves, na ordem declarada no descritor
+     * @param params     Campos a serem alterados
+     * @return true se o documento foi encontrado
+     */
+    public boolean updateOne(EntityDescriptor descriptor, List<String> id, Map<String, Object> params) {
+        if (descriptor.getKeys().isEmpty()) {
+            throw new IllegalStateException("Entidades devem ter chave");
+        }
+        Bson condition = getKeysFromEntity(descriptor, id);
+        Bson update    = metricsService.timeStage(descriptor.getUriName(), MetricsService.Stages.CONVERSION, () -> fieldTypeService.toPartialUpdate(descriptor, params));
+        return mongoService.callUpdateOne(descriptor.getCollectionName(), condition, update) > 0;
+    }
+
     /**
      * Apaga um documento BSON baseado nas chaves descritas no descritor da entidade
      *
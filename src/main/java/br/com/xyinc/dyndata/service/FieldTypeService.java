@@ -4,17 +4,25 @@ import br.com.xyinc.dyndata.exception.*;
 import br.com.xyinc.dyndata.model.EntityDescriptor;
 import br.com.xyinc.dyndata.model.FieldDescriptor;
 import br.com.xyinc.dyndata.model.FieldType;
+import br.com.xyinc.dyndata.util.TimestampFormat;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import org.apache.commons.lang3.ArrayUtils;
 import org.bson.*;
+import org.bson.codecs.DocumentCodec;
+import org.bson.io.BasicOutputBuffer;
 import org.bson.types.Decimal128;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -22,8 +30,9 @@ import java.util.*;
  */
 @Service
 public class FieldTypeService {
-    private static final SimpleDateFormat       defaultDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-    private static final Map<String, FieldType> registeredTypes       = new HashMap<>();
+    private static final Map<String, FieldType> registeredTypes = new HashMap<>();
+    private static final JsonFactory            jsonFactory     = new JsonFactory();
+    private static final DocumentCodec          documentCodec   = new DocumentCodec();
 
     static {
         registeredTypes.put(DefaultFieldTypes.STRING, new FieldType(String.class));
@@ -73,116 +82,130 @@ public class FieldTypeService {
      * @return Documento BSON com os dados enviados
      */
     public Document toDocument(EntityDescriptor descriptor, Map<String, Object> values) {
-        List<String> tracker = new ArrayList<>();
+        DocumentConversionEvent event   = new DocumentConversionEvent();
+        List<String>            tracker = new ArrayList<>();
+        Document                document;
+        event.begin();
         try {
-            return toDocument(descriptor, values, tracker);
-        } catch (IllegalArgumentException | NullPointerException e) {
+            document = toDocument(descriptor, values, tracker);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
             throw new DocumentParseException("[" + String.join("=>", ArrayUtils.toStringArray(tracker.toArray())) + "] " + e.getMessage(), e);
         }
-    }
-
-    private Document toDocument(EntityDescriptor descriptor, Map<String, Object> values, List<String> tracking) {
-        List<FieldDescriptor> fields = descriptor.getFields();
-        Document              result = new Document();
-        if (fields != null && !fields.isEmpty()) {
-            iterateFields(fields, values, tracking, result, descriptor);
+        if (event.shouldCommit()) {
+            // O tamanho em BSON só é calculado durante uma gravação do Flight Recorder
+            commit(event, descriptor, document.size(), new RawBsonDocument(document, documentCodec).getByteBuffer().remaining());
         }
-        return result;
+        return document;
     }
 
-    private BsonDocument toBsonDocument(List<FieldDescriptor> fields, Map<String, Object> values, List<String> tracking) {
-        BsonDocument result = new BsonDocument();
-        if (fields != null && !fields.isEmpty()) {
-            iterateFields(fields, values, tracking, result);
+    /**
+     * Lê o objeto JSON do corpo da requisição em uma única passada, validando cada campo conforme é lido e escrevendo
+     * diretamente o documento BSON a ser enviado ao banco, sem montar mapas intermediários. Falha no primeiro campo
+     * inválido.
+     *
+     * @param descriptor  Descritor da entidade
+     * @param input       Corpo da requisição (JSON, UTF-8)
+     * @param fixedValues Valores que substituem os enviados, já convertidos (ex.: chave informada na URI)
+     * @return Documento BSON com os dados enviados
+     */
+    public RawBsonDocument parseDocument(EntityDescriptor descriptor, InputStream input, Map<String, BsonValue> fixedValues) {
+        DocumentConversionEvent event   = new DocumentConversionEvent();
+        List<String>            tracker = new ArrayList<>();
+        BasicOutputBuffer       buffer  = new BasicOutputBuffer();
+        event.begin();
+        try (JsonParser parser = jsonFactory.createParser(input); BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new DocumentParseException("O corpo da requisição deve ser um objeto JSON!", null);
+            }
+            try {
+                getConversionPlan(descriptor).parse(parser, writer, tracker, fixedValues, () -> mongoService.getNextSequence(descriptor));
+            } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
+                throw new DocumentParseException("[" + String.join("=>", ArrayUtils.toStringArray(tracker.toArray())) + "] " + e.getMessage(), e);
+            }
+            if (parser.nextToken() != null) {
+                throw new DocumentParseException("Conteúdo inesperado após o objeto JSON!", null);
+            }
+        } catch (JsonProcessingException e) {
+            throw new DocumentParseException("JSON inválido: " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return result;
+        RawBsonDocument document = new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+        if (event.shouldCommit()) {
+            commit(event, descriptor, document.size(), buffer.getPosition());
+        }
+        return document;
     }
 
-    void iterateFields(List<FieldDescriptor> fields, Map<String, Object> values, List<String> tracking, final Map result) {
-        iterateFields(fields, values, tracking, result, null);
+    private static void commit(DocumentConversionEvent event, EntityDescriptor descriptor, int fields, long bytes) {
+        event.entity = descriptor.getUriName();
+        event.fields = fields;
+        event.bytes = bytes;
+        event.commit();
     }
 
-    @SuppressWarnings("unchecked")
-    void iterateFields(List<FieldDescriptor> fields, Map<String, Object> values, List<String> tracking, final Map result, EntityDescriptor descriptor) {
-        String       seqField  = null;
-        List<String> keyFields = new ArrayList<>();
-        if (descriptor != null) {
-            seqField = descriptor.getSequenceField();
-            keyFields = descriptor.getKeys();
+    /**
+     * Transforma os dados enviados em uma alteração parcial ($set/$unset), validando apenas os campos enviados.
+     * Chaves da entidade e campos não declarados são ignorados.
+     *
+     * @param descriptor Descritor da entidade
+     * @param values     Map com os valores a serem alterados
+     * @return Documento de alteração com os operadores $set e/ou $unset
+     */
+    public Document toPartialUpdate(EntityDescriptor descriptor, Map<String, Object> values) {
+        List<String>        tracker = new ArrayList<>();
+        Map<String, Object> set     = new LinkedHashMap<>();
+        Map<String, Object> unset   = new LinkedHashMap<>();
+        try {
+            getConversionPlan(descriptor).applyPartial(values, tracker, set, unset);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
+            throw new DocumentParseException("[" + String.join("=>", ArrayUtils.toStringArray(tracker.toArray())) + "] " + e.getMessage(), e);
         }
+        Document update = new Document();
+        if (!set.isEmpty()) {
+            update.put("$set", new Document(set));
+        }
+        if (!unset.isEmpty()) {
+            update.put("$unset", new Document(unset));
+        }
+        if (update.isEmpty()) {
+            throw new DocumentParseException("Nenhum campo alterável foi enviado!", null);
+        }
+        return update;
+    }
 
-        for (FieldDescriptor fieldDescriptor : fields) {
-            tracking.add(fieldDescriptor.getFieldName());
-            Object targetValue = values.get(fieldDescriptor.getFieldName());
-            if (!registeredTypes.containsKey(fieldDescriptor.getFieldType())) {
-                throw new EntityDescriptorException("Tipo de campo não registrado! (" + fieldDescriptor.getFieldType() + ")");
-            }
-            FieldType type = registeredTypes.get(fieldDescriptor.getFieldType());
-
-            BsonValue bsonValue = toBson(targetValue, fieldDescriptor.getDocumentFields(), type, tracking);
-
-            if (bsonValue.getClass() == BsonNull.class) {
-                bsonValue = doNullValidation(tracking, descriptor, seqField, keyFields, fieldDescriptor, type, bsonValue);
-            } else if (type.isNumeric()) {
-                doNumericValidation(fieldDescriptor, bsonValue);
-            } else if (type.isString() || type.isArray()) {
-                doStringAndArrayValidation(fieldDescriptor, type, bsonValue);
-            }
+    private DocumentConversionPlan getConversionPlan(EntityDescriptor descriptor) {
+        return descriptor.computeAttachmentIfAbsent(DocumentConversionPlan.ATTACHMENT_NAME, d -> DocumentConversionPlan.compile(d.getFields(), d, this));
+    }
 
-            result.put(fieldDescriptor.getFieldName(), bsonValue);
-            tracking.remove(fieldDescriptor.getFieldName());
-        }
+    private Document toDocument(EntityDescriptor descriptor, Map<String, Object> values, List<String> tracking) {
+        Document result = new Document();
+        iterateFields(descriptor.getFields(), values, tracking, result, descriptor);
+        return result;
     }
 
-    private void doStringAndArrayValidation(FieldDescriptor fieldDescriptor, FieldType type, BsonValue bsonValue) {
-        if (type.isString() && fieldDescriptor.getAllowedValues() != null && fieldDescriptor.getAllowedValues().size() > 0) {
-            if (!fieldDescriptor.getAllowedValues().contains(bsonValue.asString().getValue())) {
-                throw new FieldValidationException(String.format("Valor inválido para o campo '%s'. Deve ser um dos seguintes valores: ['%s']", fieldDescriptor.getFieldName(), String.join("','", fieldDescriptor.getAllowedValues())));
-            }
-        } else {
-            if (fieldDescriptor.getMinLength() != null) {
-                if (type.isString() && bsonValue.asString().getValue().length() < fieldDescriptor.getMinLength()) {
-                    throw new FieldValidationException(String.format("Campo '%s' deve conter no mínimo %s caracteres!", fieldDescriptor.getFieldName(), fieldDescriptor.getMinLength()));
-                }
-                if (type.isArray() && bsonValue.asArray().size() < fieldDescriptor.getMinLength()) {
-                    throw new FieldValidationException(String.format("A lista do campo '%s' deve conter no mínimo %s itens!", fieldDescriptor.getFieldName(), fieldDescriptor.getMinLength()));
-                }
-            }
-            if (fieldDescriptor.getMaxLength() != null) {
-                if (type.isString() && bsonValue.asString().getValue().length() > fieldDescriptor.getMaxLength()) {
-                    throw new FieldValidationException(String.format("Campo '%s' deve conter no máximo %s caracteres!", fieldDescriptor.getFieldName(), fieldDescriptor.getMaxLength()));
-                }
-                if (type.isArray() && bsonValue.asArray().size() > fieldDescriptor.getMaxLength()) {
-                    throw new FieldValidationException(String.format("A lista do campo '%s' deve conter no máximo %s itens!", fieldDescriptor.getFieldName(), fieldDescriptor.getMaxLength()));
-                }
-            }
-        }
+    private BsonDocument toBsonDocument(List<FieldDescriptor> fields, Map<String, Object> values, List<String> tracking) {
+        BsonDocument result = new BsonDocument();
+        iterateFields(fields, values, tracking, result);
+        return result;
     }
 
-    private void doNumericValidation(FieldDescriptor fieldDescriptor, BsonValue bsonValue) {
-        if (fieldDescriptor.getMin() != null) {
-            if (bsonValue.asNumber().doubleValue() < fieldDescriptor.getMin().doubleValue()) {
-                throw new FieldValidationException(String.format("Valor do campo '%s' deve ser maior ou igual a %s !", fieldDescriptor.getFieldName(), fieldDescriptor.getMin()));
-            }
-        }
-        if (fieldDescriptor.getMax() != null) {
-            if (bsonValue.asNumber().doubleValue() > fieldDescriptor.getMax().doubleValue()) {
-                throw new FieldValidationException(String.format("Valor do campo '%s' deve ser menor ou igual a %s !", fieldDescriptor.getFieldName(), fieldDescriptor.getMin()));
-            }
-        }
+    void iterateFields(List<FieldDescriptor> fields, Map<String, Object> values, List<String> tracking, final Map result) {
+        iterateFields(fields, values, tracking, result, null);
     }
 
-    private BsonValue doNullValidation(List<String> tracking, EntityDescriptor descriptor, String seqField, List<String> keyFields, FieldDescriptor fieldDescriptor, FieldType type, BsonValue bsonValue) {
-        if (fieldDescriptor.getFieldName().equals(seqField)) {
-            bsonValue = toBson(mongoService.getNextSequence(descriptor), fieldDescriptor.getDocumentFields(), type, tracking);
-        } else if (fieldDescriptor.getDefaultValue() != null) {
-            bsonValue = toBson(fieldDescriptor.getDefaultValue(), fieldDescriptor.getDocumentFields(), type, tracking);
-        } else if (keyFields.contains(fieldDescriptor.getFieldName())) {
-            throw new EntityKeyException(String.format("Campo '%s' é chave da entidade e não pode ser nulo!", fieldDescriptor.getFieldName()));
-        } else if (!fieldDescriptor.getNullable()) {
-            throw new FieldValidationException(String.format("Valor do campo '%s' não pode ser nulo!", fieldDescriptor.getFieldName()));
+    /**
+     * Converte e valida os campos informados. Quando os campos são os da própria entidade, o plano de conversão
+     * compilado fica armazenado no descritor e é reaproveitado nas próximas conversões.
+     */
+    void iterateFields(List<FieldDescriptor> fields, Map<String, Object> values, List<String> tracking, final Map result, EntityDescriptor descriptor) {
+        DocumentConversionPlan plan;
+        if (descriptor != null && fields == descriptor.getFields()) {
+            plan = getConversionPlan(descriptor);
+        } else {
+            plan = DocumentConversionPlan.compile(fields, descriptor, this);
         }
-        return bsonValue;
+        plan.apply(values, tracking, result, () -> mongoService.getNextSequence(descriptor));
     }
 
     @SuppressWarnings("unchecked")
@@ -224,36 +247,27 @@ public class FieldTypeService {
         } else if (Boolean.class.isAssignableFrom(targetClass)) {
             return parseBsonBoolean(val);
         } else if (Timestamp.class.isAssignableFrom(targetClass)) {
-            return parseBsonTimestamp(val, targetClass);
+            return parseBsonTimestamp(val);
         } else {
             throw new NotImplementedException();
         }
     }
 
-    private BsonValue parseBsonTimestamp(Object val, Class<?> targetClass) {
-        boolean   isAssignable = targetClass.isAssignableFrom(val.getClass());
-        Timestamp result;
-        if (isAssignable) {
-            result = (Timestamp) val;
-        } else if (String.class.isAssignableFrom(val.getClass())) {
-            try {
-                result = new Timestamp(defaultDateTimeFormat.parse(val.toString()).getTime());
-            } catch (ParseException e) {
-                throw new TimestampFormatException("Campos tipo Timestamp devem ser enviados no formato ISO");
-            }
+    static BsonValue parseBsonTimestamp(Object val) {
+        long timestampMillis;
+        if (val instanceof Date) {
+            timestampMillis = ((Date) val).getTime();
+        } else if (val instanceof String) {
+            timestampMillis = TimestampFormat.parse((String) val);
+        } else if (val instanceof Number) {
+            timestampMillis = ((Number) val).longValue();
         } else {
-            Long timestampMillis;
-            if (Number.class.isAssignableFrom(val.getClass())) {
-                timestampMillis = ((Number) val).longValue();
-            } else {
-                throw new TimestampFormatException("Valor inválido para o campo Timestamp: " + val);
-            }
-            result = new Timestamp(timestampMillis);
+            throw new TimestampFormatException("Valor inválido para o campo Timestamp: " + val);
         }
-        return new BsonTimestamp(result.getTime());
+        return new BsonDateTime(timestampMillis);
     }
 
-    private BsonValue parseBsonBoolean(Object val) {
+    static BsonValue parseBsonBoolean(Object val) {
         if (String.class.isAssignableFrom(val.getClass())) {
             return new BsonBoolean(val.equals("true"));
         } else {
@@ -261,7 +275,7 @@ public class FieldTypeService {
         }
     }
 
-    private BsonValue parseBsonDecimal(Object val, Class<?> targetClass) {
+    static BsonValue parseBsonDecimal(Object val, Class<?> targetClass) {
         boolean    isAssignable = targetClass.isAssignableFrom(val.getClass());
         BigDecimal targetValue;
         if (isAssignable) {
@@ -272,7 +286,7 @@ public class FieldTypeService {
         return new BsonDecimal128(new Decimal128(targetValue));
     }
 
-    private BsonValue parseBsonInt(Object val, Class<?> targetClass) {
+    static BsonValue parseBsonInt(Object val, Class<?> targetClass) {
         boolean isAssignable = targetClass.isAssignableFrom(val.getClass());
         Integer targetValue;
         if (isAssignable) {
@@ -283,7 +297,7 @@ public class FieldTypeService {
         return new BsonInt32(targetValue);
     }
 
-    private BsonValue parseBsonLong(Object val, Class<?> targetClass) {
+    static BsonValue parseBsonLong(Object val, Class<?> targetClass) {
         boolean isAssignable = targetClass.isAssignableFrom(val.getClass());
         Long    targetValue;
         if (isAssignable) {
@@ -0,0 +1,89 @@
+package br.com.xyinc.dyndata.service;
+
+import com.mongodb.MongoClient;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import java.util.Map;
+
+/**
+ * Formato de um filtro do MongoDB sem os valores: campos e operadores são mantidos e cada valor é substituído por
+ * {@code ?} (ex.: {@code {"empresa": ?, "codigo": {"$gt": ?}}}), de modo que consultas iguais com valores diferentes
+ * tenham o mesmo formato.
+ */
+final class FilterShape {
+
+    static final String NONE = "{}";
+
+    private FilterShape() {
+    }
+
+    /**
+     * @param filter Filtro, ou null para todos os documentos
+     * @return Formato do filtro
+     */
+    static String of(Bson filter) {
+        return filter == null ? NONE : of(filter.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()));
+    }
+
+    /**
+     * @param filter Filtro já em BSON, ou null para todos os documentos
+     * @return Formato do filtro
+     */
+    static String of(BsonDocument filter) {
+        if (filter == null) {
+            return NONE;
+        }
+        StringBuilder shape = new StringBuilder();
+        appendDocument(shape, filter);
+        return shape.toString();
+    }
+
+    private static void appendDocument(StringBuilder shape, BsonDocument document) {
+        shape.append('{');
+        boolean first = true;
+        for (Map.Entry<String, BsonValue> entry : document.entrySet()) {
+            if (!first) {
+                shape.append(", ");
+            }
+            first = false;
+            shape.append('"').append(entry.getKey()).append("\": ");
+            appendValue(shape, entry.getValue());
+        }
+        shape.append('}');
+    }
+
+    private static void appendValue(StringBuilder shape, BsonValue value) {
+        if (value.isDocument()) {
+            appendDocument(shape, value.asDocument());
+        } else if (value.isArray() && isDocumentArray(value.asArray())) {
+            // Operadores lógicos ($and, $or, $nor): mantém o formato de cada condição
+            shape.append('[');
+            boolean first = true;
+            for (BsonValue item : value.asArray()) {
+                if (!first) {
+                    shape.append(", ");
+                }
+                first = false;
+                appendDocument(shape, item.asDocument());
+            }
+            shape.append(']');
+        } else {
+            shape.append('?');
+        }
+    }
+
+    private static boolean isDocumentArray(BsonArray array) {
+        if (array.isEmpty()) {
+            return false;
+        }
+        for (BsonValue item : array) {
+            if (!item.isDocument()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
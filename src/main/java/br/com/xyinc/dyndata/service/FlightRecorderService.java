@@ -0,0 +1,154 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.RecordingStatus;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Collectors;
+
+/**
+ * Controle de uma gravação do JDK Flight Recorder, para analisar a aplicação em produção sem anexar um profiler.
+ * Além dos eventos da JVM, a gravação inclui os eventos da aplicação: {@link MongoCommandEvent} e
+ * {@link DocumentConversionEvent}. Há no máximo uma gravação por vez; a última gravação fica disponível para
+ * download mesmo após ser encerrada.
+ */
+@Service
+public class FlightRecorderService {
+
+    public static final String DEFAULT_CONFIGURATION   = "default";
+    public static final long   DEFAULT_MAX_AGE_SECONDS = 15 * 60;
+    public static final long   DEFAULT_MAX_SIZE        = 256L * 1024 * 1024;
+
+    private static final String RECORDING_NAME = "dyndata";
+
+    private Recording recording;
+    private String    configuration;
+
+    /**
+     * Inicia uma nova gravação, descartando a anterior
+     *
+     * @param configurationName Configuração de eventos da JVM ({@code default} ou {@code profile})
+     * @param maxAgeSeconds     Tempo máximo mantido na gravação, em segundos (os dados mais antigos são descartados)
+     * @param maxSize           Tamanho máximo da gravação em bytes, ou 0 para não limitar
+     * @return Situação da gravação iniciada
+     */
+    public synchronized RecordingStatus start(String configurationName, long maxAgeSeconds, long maxSize) {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("Flight Recorder não disponível nesta JVM!");
+        }
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalArgumentException("Já existe uma gravação em andamento!");
+        }
+        if (maxAgeSeconds < 1) {
+            throw new IllegalArgumentException("O tempo máximo da gravação deve ser maior que zero!");
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("O tamanho máximo da gravação não pode ser negativo!");
+        }
+        Recording newRecording = new Recording(getConfiguration(configurationName));
+        newRecording.setName(RECORDING_NAME);
+        newRecording.setToDisk(true);
+        newRecording.setMaxAge(Duration.ofSeconds(maxAgeSeconds));
+        newRecording.setMaxSize(maxSize);
+        newRecording.enable(MongoCommandEvent.class);
+        newRecording.enable(DocumentConversionEvent.class);
+        newRecording.start();
+        if (recording != null) {
+            recording.close();
+        }
+        recording = newRecording;
+        configuration = configurationName;
+        return getStatus();
+    }
+
+    private Configuration getConfiguration(String configurationName) {
+        try {
+            return Configuration.getConfiguration(configurationName);
+        } catch (IOException | ParseException | RuntimeException e) {
+            String names = Configuration.getConfigurations().stream().map(Configuration::getName).collect(Collectors.joining(", "));
+            throw new IllegalArgumentException("Configuração do Flight Recorder inválida: " + configurationName + ". Use: " + names, e);
+        }
+    }
+
+    /**
+     * Encerra a gravação em andamento, mantendo-a disponível para download
+     *
+     * @return Situação da gravação encerrada
+     */
+    public synchronized RecordingStatus stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new IllegalArgumentException("Nenhuma gravação em andamento!");
+        }
+        recording.stop();
+        return getStatus();
+    }
+
+    /**
+     * @return Situação da última gravação, ou null se nenhuma foi iniciada
+     */
+    public synchronized RecordingStatus getStatus() {
+        if (recording == null) {
+            return null;
+        }
+        return new RecordingStatus(recording.getState().name(), configuration, toString(recording.getStartTime()), toString(recording.getStopTime()),
+                recording.getMaxAge().getSeconds(), recording.getMaxSize(), recording.getSize());
+    }
+
+    private static String toString(Instant instant) {
+        return instant == null ? null : instant.toString();
+    }
+
+    /**
+     * Grava o conteúdo atual da gravação (em andamento ou encerrada) em um arquivo temporário, a ser removido após
+     * o uso
+     *
+     * @return Arquivo .jfr com a gravação
+     */
+    public synchronized Path dump() {
+        if (recording == null || recording.getState() == RecordingState.NEW) {
+            throw new IllegalArgumentException("Nenhuma gravação disponível!");
+        }
+        Path file = null;
+        try {
+            file = Files.createTempFile(RECORDING_NAME, ".jfr");
+            recording.dump(file);
+            return file;
+        } catch (IOException e) {
+            delete(file);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Remove um arquivo gerado por {@link #dump()}
+     */
+    public void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace(System.err);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package br.com.xyinc.dyndata.service;
+
+import com.mongodb.MongoClient;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Serialização dos documentos em JSON (Extended JSON do MongoDB, no modo configurado em {@link #setJsonMode(JsonMode)}),
+ * escrita diretamente no stream de saída. Documentos lidos como {@link org.bson.RawBsonDocument} são convertidos a
+ * partir dos bytes BSON, sem montar os mapas de {@link org.bson.Document} nem o texto completo em memória.
+ */
+@Service
+public class JsonOutputService {
+
+    public static final JsonMode DEFAULT_JSON_MODE = JsonMode.RELAXED;
+
+    private static final CodecRegistry  CODEC_REGISTRY  = MongoClient.getDefaultCodecRegistry();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    private volatile JsonWriterSettings settings = JsonWriterSettings.builder().outputMode(DEFAULT_JSON_MODE).build();
+
+    public JsonMode getJsonMode() {
+        return settings.getOutputMode();
+    }
+
+    /**
+     * Define o modo do JSON gerado. Deve ser chamado antes das leituras, pois o JSON dos objetos em cache não é refeito.
+     *
+     * @param jsonMode Modo do Extended JSON ({@code RELAXED}, {@code EXTENDED}, {@code SHELL} ou {@code STRICT})
+     */
+    public void setJsonMode(JsonMode jsonMode) {
+        this.settings = JsonWriterSettings.builder().outputMode(jsonMode).build();
+    }
+
+    /**
+     * Escreve o documento em JSON
+     *
+     * @param writer   Destino do JSON
+     * @param document Documento ({@link org.bson.RawBsonDocument}, {@link org.bson.BsonDocument} ou
+     *                 {@link org.bson.Document}), ou null para escrever {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public void write(Writer writer, Bson document) throws IOException {
+        if (document == null) {
+            writer.write("null");
+            return;
+        }
+        Codec<Bson> codec = (Codec<Bson>) CODEC_REGISTRY.get(document.getClass());
+        codec.encode(new JsonWriter(writer, settings), document, ENCODER_CONTEXT);
+    }
+
+    /**
+     * @param document Documento a ser serializado
+     * @return JSON do documento (UTF-8)
+     */
+    public byte[] toJson(Bson document) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8)) {
+            write(writer, document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Serializa um valor avulso (lista, mapa ou valor simples) no mesmo modo dos documentos. Como o {@link JsonWriter}
+     * só escreve documentos no nível raiz, o valor é escrito dentro de um documento auxiliar e extraído dele.
+     *
+     * @param value Valor a ser serializado
+     * @return JSON do valor
+     */
+    public String toJsonValue(Object value) {
+        StringWriter writer = new StringWriter();
+        try {
+            write(writer, new Document("v", value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String json = writer.toString();
+        return json.substring(json.indexOf(':') + 1, json.lastIndexOf('}')).trim();
+    }
+
+    /**
+     * Escreve os documentos diretamente no stream de saída conforme são lidos do cursor, como array JSON ou como
+     * um documento JSON por linha (NDJSON). Documentos nulos são escritos como {@code null}.
+     */
+    public void writeDocuments(Iterable<? extends Bson> documents, OutputStream out, boolean ndjson) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (!ndjson) {
+            writer.write('[');
+        }
+        Iterator<? extends Bson> cursor = documents.iterator();
+        try {
+            boolean first = true;
+            while (cursor.hasNext()) {
+                Bson document = cursor.next();
+                if (!ndjson && !first) {
+                    writer.write(',');
+                }
+                write(writer, document);
+                if (ndjson) {
+                    writer.write('\n');
+                }
+                first = false;
+            }
+        } finally {
+            if (cursor instanceof Closeable) {
+                ((Closeable) cursor).close();
+            }
+        }
+        if (!ndjson) {
+            writer.write(']');
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,256 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.exception.DocumentParseException;
+import br.com.xyinc.dyndata.exception.EntityKeyException;
+import br.com.xyinc.dyndata.exception.FieldValidationException;
+import br.com.xyinc.dyndata.exception.TimestampFormatException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Métricas (Micrometer) das etapas de processamento das entidades dinâmicas, identificadas pela URI da entidade.
+ * São publicadas no endpoint {@code /actuator/prometheus}:
+ * <ul>
+ * <li>{@value #OPERATION_TIMER}: duração das operações ({@code entity}, {@code operation}, {@code outcome});</li>
+ * <li>{@value #STAGE_TIMER}: duração das etapas de cada operação ({@code entity}, {@code stage});</li>
+ * <li>{@value #DOCUMENT_SIZE}: tamanho em bytes dos documentos BSON lidos e gravados ({@code entity}, {@code direction});</li>
+ * <li>{@value #VALIDATION_FAILURES}: dados recusados na validação ({@code entity}, {@code exception});</li>
+ * <li>{@value #MONGO_COMMAND_TIMER}: duração dos comandos enviados ao MongoDB ({@code command}, {@code collection},
+ * {@code outcome}).</li>
+ * </ul>
+ */
+@Service
+public class MetricsService {
+
+    public static final String OPERATION_TIMER     = "dyndata.entity.operations";
+    public static final String STAGE_TIMER         = "dyndata.entity.stages";
+    public static final String DOCUMENT_SIZE       = "dyndata.entity.document.size";
+    public static final String VALIDATION_FAILURES = "dyndata.entity.validation.failures";
+    public static final String MONGO_COMMAND_TIMER = "dyndata.mongo.commands";
+
+    public static final String OUTCOME_SUCCESS      = "success";
+    public static final String OUTCOME_CLIENT_ERROR = "client_error";
+    public static final String OUTCOME_SERVER_ERROR = "server_error";
+
+    private static final String   NO_ENTITY = "none";
+    private static final String[] OUTCOMES  = {OUTCOME_SUCCESS, OUTCOME_CLIENT_ERROR, OUTCOME_SERVER_ERROR};
+
+    public interface Operations {
+        String LIST   = "list";
+        String PAGE   = "page";
+        String GET    = "get";
+        String MGET   = "mget";
+        String CREATE = "create";
+        String UPDATE = "update";
+        String PATCH  = "patch";
+        String DELETE = "delete";
+    }
+
+    public interface Stages {
+        String DESCRIPTOR    = "descriptor";
+        String CONVERSION    = "conversion";
+        String FILTER        = "filter";
+        String SERIALIZATION = "serialization";
+    }
+
+    public interface Directions {
+        String READ  = "read";
+        String WRITE = "write";
+    }
+
+    @Autowired(required = false)
+    private MeterRegistry registry = new SimpleMeterRegistry();
+
+    // Medidores por entidade, para não montar o identificador e consultar o registro a cada medição
+    private final ConcurrentMap<String, EntityMeters> entityMeters = new ConcurrentHashMap<>();
+    // Medidores dos comandos do MongoDB por coleção e comando, indexados pelo resultado (ver OUTCOMES)
+    private final ConcurrentMap<String, ConcurrentMap<String, Timer[]>> mongoCommandTimers = new ConcurrentHashMap<>();
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return Instante de início de uma medição, para {@link #recordStage(String, String, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra a duração de uma etapa iniciada em {@link #start()}, somando-a também ao {@link ServerTiming} da requisição
+     *
+     * @param uriName URI da entidade
+     * @param stage   Etapa (ver {@link Stages})
+     * @param start   Instante de início
+     */
+    public void recordStage(String uriName, String stage, long start) {
+        long elapsed = System.nanoTime() - start;
+        getEntityMeters(uriName).stageTimer(stage).record(elapsed, TimeUnit.NANOSECONDS);
+        ServerTiming.record(stage, elapsed);
+    }
+
+    /**
+     * Executa e mede uma etapa, com ou sem sucesso
+     *
+     * @param uriName URI da entidade
+     * @param stage   Etapa (ver {@link Stages})
+     * @param body    Etapa a ser executada
+     * @return Resultado da etapa
+     */
+    public <T> T timeStage(String uriName, String stage, Supplier<T> body) {
+        long start = start();
+        try {
+            return body.get();
+        } finally {
+            recordStage(uriName, stage, start);
+        }
+    }
+
+    /**
+     * Executa e mede uma operação, identificando o resultado: sucesso, erro nos dados enviados
+     * ({@link IllegalArgumentException}) ou erro interno. Falhas de validação também são contadas por tipo.
+     *
+     * @param uriName   URI da entidade
+     * @param operation Operação (ver {@link Operations})
+     * @param body      Operação a ser executada
+     * @return Resultado da operação
+     */
+    public <T> T timeOperation(String uriName, String operation, Supplier<T> body) {
+        long start   = start();
+        int  outcome = 2;
+        try {
+            T result = body.get();
+            outcome = 0;
+            return result;
+        } catch (IllegalArgumentException e) {
+            outcome = 1;
+            countValidationFailure(uriName, e);
+            throw e;
+        } finally {
+            getEntityMeters(uriName).operationTimer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Executa e mede uma operação sem retorno (ver {@link #timeOperation(String, String, Supplier)})
+     */
+    public void timeOperation(String uriName, String operation, Runnable body) {
+        timeOperation(uriName, operation, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Registra o tamanho do documento BSON lido ou gravado
+     *
+     * @param uriName   URI da entidade
+     * @param direction Leitura ou gravação (ver {@link Directions})
+     * @param document  Documento
+     */
+    public void recordDocumentSize(String uriName, String direction, RawBsonDocument document) {
+        getEntityMeters(uriName).documentSize(direction).record(document.getByteBuffer().remaining());
+    }
+
+    /**
+     * Registra a duração de um comando enviado ao MongoDB
+     *
+     * @param command      Nome do comando (find, insert, getMore...)
+     * @param collection   Coleção do comando, ou null para comandos sem coleção
+     * @param elapsedNanos Duração em nanossegundos
+     * @param success      Se o comando foi executado com sucesso
+     */
+    public void recordMongoCommand(String command, String collection, long elapsedNanos, boolean success) {
+        mongoCommandTimer(command, collection == null ? NO_ENTITY : collection, success ? 0 : 2).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer mongoCommandTimer(String command, String collection, int outcome) {
+        Timer[] timers = get(get(mongoCommandTimers, collection, name -> new ConcurrentHashMap<>()), command, name -> new Timer[OUTCOMES.length]);
+        Timer   timer  = timers[outcome];
+        if (timer == null) {
+            timer = timers[outcome] = Timer.builder(MONGO_COMMAND_TIMER)
+                    .tags("command", command, "collection", collection, "outcome", OUTCOMES[outcome])
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        return timer;
+    }
+
+    private void countValidationFailure(String uriName, IllegalArgumentException e) {
+        // A conversão encapsula o erro do campo em DocumentParseException, com o caminho do campo na mensagem
+        Throwable cause = e instanceof DocumentParseException && e.getCause() instanceof IllegalArgumentException ? e.getCause() : e;
+        if (cause instanceof DocumentParseException || cause instanceof FieldValidationException
+                || cause instanceof EntityKeyException || cause instanceof TimestampFormatException || cause instanceof NumberFormatException) {
+            registry.counter(VALIDATION_FAILURES, "entity", entityTag(uriName), "exception", cause.getClass().getSimpleName()).increment();
+        }
+    }
+
+    private EntityMeters getEntityMeters(String uriName) {
+        return get(entityMeters, entityTag(uriName), EntityMeters::new);
+    }
+
+    private static String entityTag(String uriName) {
+        return uriName == null ? NO_ENTITY : uriName;
+    }
+
+    /**
+     * Consulta o mapa sem bloqueio quando o valor já existe (o computeIfAbsent do Java 8 bloqueia mesmo nesse caso)
+     */
+    private static <K, V> V get(ConcurrentMap<K, V> map, K key, Function<K, V> factory) {
+        V value = map.get(key);
+        return value != null ? value : map.computeIfAbsent(key, factory);
+    }
+
+    private final class EntityMeters {
+        private final String                                     entity;
+        private final ConcurrentMap<String, Timer[]>             operations = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, Timer>               stages     = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, DistributionSummary> sizes      = new ConcurrentHashMap<>();
+
+        private EntityMeters(String entity) {
+            this.entity = entity;
+        }
+
+        private Timer operationTimer(String operation, int outcome) {
+            Timer[] timers = get(operations, operation, op -> new Timer[OUTCOMES.length]);
+            Timer   timer  = timers[outcome];
+            if (timer == null) {
+                // O registro devolve o mesmo medidor para os mesmos tags, mesmo que duas threads o criem juntas
+                timer = timers[outcome] = Timer.builder(OPERATION_TIMER)
+                        .tags("entity", entity, "operation", operation, "outcome", OUTCOMES[outcome])
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+            return timer;
+        }
+
+        private Timer stageTimer(String stage) {
+            return get(stages, stage, name -> Timer.builder(STAGE_TIMER)
+                    .tags("entity", entity, "stage", name)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+
+        private DistributionSummary documentSize(String direction) {
+            return get(sizes, direction, name -> DistributionSummary.builder(DOCUMENT_SIZE)
+                    .baseUnit("bytes")
+                    .tags("entity", entity, "direction", name)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(16L)
+                    .maximumExpectedValue(16L * 1024 * 1024)
+                    .register(registry));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package br.com.xyinc.dyndata.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento do JDK Flight Recorder para cada comando enviado ao MongoDB, da ida até a resposta
+ * (ver {@link MongoCommandMetrics})
+ */
+@Name("br.com.xyinc.dyndata.MongoCommand")
+@Label("Comando MongoDB")
+@Category({"dyndata", "MongoDB"})
+@Description("Comando enviado ao MongoDB, com a coleção, o formato do filtro e a quantidade de documentos")
+@StackTrace(false)
+class MongoCommandEvent extends Event {
+
+    static final EventType TYPE = EventType.getEventType(MongoCommandEvent.class);
+
+    @Label("Comando")
+    String  command;
+    @Label("Coleção")
+    String  collection;
+    @Label("Filtro")
+    @Description("Formato do filtro, sem os valores")
+    String  filter;
+    @Label("Documentos")
+    @Description("Documentos retornados (consultas) ou afetados (escritas)")
+    long    documents;
+    @Label("Sucesso")
+    boolean success;
+}
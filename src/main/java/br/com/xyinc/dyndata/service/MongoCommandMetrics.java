@@ -0,0 +1,129 @@
+package br.com.xyinc.dyndata.service;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener de comandos do driver que mede cada ida e volta ao MongoDB (inclusive os {@code getMore} dos cursores lidos
+ * sob demanda), registrando-as em {@link MetricsService#recordMongoCommand(String, String, long, boolean)} e no
+ * {@link ServerTiming} da requisição (o driver síncrono notifica o listener na thread que executou o comando).
+ * Durante uma gravação do Flight Recorder, cada comando também gera um {@link MongoCommandEvent}.
+ */
+class MongoCommandMetrics implements CommandListener {
+
+    private final MetricsService                  metricsService;
+    private final Map<Integer, String>            collections = new ConcurrentHashMap<>();
+    private final Map<Integer, MongoCommandEvent> events      = new ConcurrentHashMap<>();
+
+    MongoCommandMetrics(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String collection = getCollection(event.getCommandName(), event.getCommand());
+        if (collection != null) {
+            collections.put(event.getRequestId(), collection);
+        }
+        if (MongoCommandEvent.TYPE.isEnabled()) {
+            // O comando só pode ser lido durante a notificação, então o formato do filtro é obtido aqui
+            MongoCommandEvent commandEvent = new MongoCommandEvent();
+            commandEvent.command = event.getCommandName();
+            commandEvent.collection = collection;
+            commandEvent.filter = FilterShape.of(getFilter(event.getCommandName(), event.getCommand()));
+            commandEvent.begin();
+            events.put(event.getRequestId(), commandEvent);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        long elapsed = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        metricsService.recordMongoCommand(event.getCommandName(), collections.remove(event.getRequestId()), elapsed, true);
+        ServerTiming.record(ServerTiming.MONGO, elapsed);
+        MongoCommandEvent commandEvent = events.remove(event.getRequestId());
+        if (commandEvent != null) {
+            commandEvent.documents = getDocumentCount(event.getCommandName(), event.getResponse());
+            commandEvent.success = true;
+            commandEvent.commit();
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        long elapsed = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        metricsService.recordMongoCommand(event.getCommandName(), collections.remove(event.getRequestId()), elapsed, false);
+        ServerTiming.record(ServerTiming.MONGO, elapsed);
+        MongoCommandEvent commandEvent = events.remove(event.getRequestId());
+        if (commandEvent != null) {
+            commandEvent.commit();
+        }
+    }
+
+    /**
+     * Obtém a coleção do comando: o valor do próprio comando (ex.: {@code {find: "colecao"}}) ou, no {@code getMore},
+     * o campo {@code collection}
+     */
+    static String getCollection(String commandName, BsonDocument command) {
+        BsonValue value = "getMore".equals(commandName) ? command.get("collection") : command.get(commandName);
+        return value != null && value.isString() ? value.asString().getValue() : null;
+    }
+
+    /**
+     * Obtém o filtro do comando: {@code filter} do find, {@code query} do findAndModify e do count, ou a condição
+     * ({@code q}) da primeira operação de um update/delete
+     *
+     * @return Filtro, ou null para comandos sem filtro
+     */
+    static BsonDocument getFilter(String commandName, BsonDocument command) {
+        BsonValue value;
+        switch (commandName) {
+            case "find":
+                value = command.get("filter");
+                break;
+            case "findAndModify":
+            case "count":
+                value = command.get("query");
+                break;
+            case "update":
+            case "delete":
+                BsonValue statements = command.get(commandName + "s");
+                value = statements != null && statements.isArray() && !statements.asArray().isEmpty() && statements.asArray().get(0).isDocument()
+                        ? statements.asArray().get(0).asDocument().get("q") : null;
+                break;
+            default:
+                value = null;
+        }
+        return value != null && value.isDocument() ? value.asDocument() : null;
+    }
+
+    /**
+     * Obtém a quantidade de documentos retornados pelas consultas (lote do cursor) ou afetados pelas escritas
+     */
+    static long getDocumentCount(String commandName, BsonDocument response) {
+        switch (commandName) {
+            case "find":
+            case "getMore":
+                BsonValue cursor = response.get("cursor");
+                if (cursor == null || !cursor.isDocument()) {
+                    return 0;
+                }
+                BsonValue batch = cursor.asDocument().get("find".equals(commandName) ? "firstBatch" : "nextBatch");
+                return batch != null && batch.isArray() ? batch.asArray().size() : 0;
+            case "findAndModify":
+                BsonValue value = response.get("value");
+                return value != null && value.isDocument() ? 1 : 0;
+            default:
+                BsonValue n = response.get("n");
+                return n != null && n.isNumber() ? n.asNumber().longValue() : 0;
+        }
+    }
+}
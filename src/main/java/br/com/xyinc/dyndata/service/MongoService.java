@@ -1,36 +1,91 @@
 package br.com.xyinc.dyndata.service;
 
+import br.com.xyinc.dyndata.exception.EntityKeyException;
 import br.com.xyinc.dyndata.model.EntityDescriptor;
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.MongoClientOptions;
 import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexModel;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.management.JMXConnectionPoolListener;
+import org.bson.BsonDocument;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static br.com.xyinc.dyndata.service.EntityManagementService.SEQ_COLLECTION_LASTID_FIELD_NAME;
 import static br.com.xyinc.dyndata.service.EntityManagementService.SEQ_COLLECTION_NAME;
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Projections.fields;
 import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.inc;
 
 @Service
 public class MongoService {
 
+    static final String KEY_INDEX_NAME       = "dyn_keys";
+    // Nome alternativo do índice de chaves, usado para criar o novo índice antes de remover o anterior
+    static final String KEY_INDEX_ALT_NAME   = "dyn_keys_alt";
+    static final String MANAGED_INDEX_PREFIX = "dyn_idx_";
+
     private String dbUrl  = "localhost";
     private int    dbPort = 27017;
     private String dbName = "dyndata";
 
+    private int poolMaxSize           = 100;
+    private int poolMinSize           = 0;
+    private int poolWaitQueueMultiple = 5;
+    private int poolMaxWaitTime       = 120000;
+    private int poolMaxIdleTime       = 0;
+    private int socketTimeout         = 0;
+    private int connectTimeout        = 10000;
+    private int sequenceBlockSize     = 1;
+    private int cursorBatchSize       = 0;
+
+    private volatile int slowOperationThreshold = 0;
+
+    private volatile MongoClient client;
+
+    private final ConcurrentMap<String, SequenceBlockAllocator> sequenceAllocators = new ConcurrentHashMap<>();
+    private final SlowOperationLog                              slowOperationLog   = new SlowOperationLog(this);
+    private final ExecutorService                               indexExecutor      = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dyndata-index-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Autowired
     private EntityManagementService entityManagementService;
+    @Autowired
+    private MetricsService          metricsService;
 
     public String getDbUrl() {
         return dbUrl;
@@ -56,85 +111,481 @@ public class MongoService {
         dbName = newName;
     }
 
+    public int getPoolMaxSize() {
+        return poolMaxSize;
+    }
+
+    public void setPoolMaxSize(int poolMaxSize) {
+        this.poolMaxSize = poolMaxSize;
+    }
+
+    public int getPoolMinSize() {
+        return poolMinSize;
+    }
+
+    public void setPoolMinSize(int poolMinSize) {
+        this.poolMinSize = poolMinSize;
+    }
+
+    public int getPoolWaitQueueMultiple() {
+        return poolWaitQueueMultiple;
+    }
+
+    public void setPoolWaitQueueMultiple(int poolWaitQueueMultiple) {
+        this.poolWaitQueueMultiple = poolWaitQueueMultiple;
+    }
+
+    public int getPoolMaxWaitTime() {
+        return poolMaxWaitTime;
+    }
+
+    public void setPoolMaxWaitTime(int poolMaxWaitTime) {
+        this.poolMaxWaitTime = poolMaxWaitTime;
+    }
+
+    public int getPoolMaxIdleTime() {
+        return poolMaxIdleTime;
+    }
+
+    public void setPoolMaxIdleTime(int poolMaxIdleTime) {
+        this.poolMaxIdleTime = poolMaxIdleTime;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getSequenceBlockSize() {
+        return sequenceBlockSize;
+    }
+
+    public void setSequenceBlockSize(int sequenceBlockSize) {
+        this.sequenceBlockSize = sequenceBlockSize;
+        sequenceAllocators.clear();
+    }
+
+    public int getCursorBatchSize() {
+        return cursorBatchSize;
+    }
+
+    public void setCursorBatchSize(int cursorBatchSize) {
+        this.cursorBatchSize = cursorBatchSize;
+    }
+
     /**
-     * Testa a conexão e certifica a criação dos índices necessários para o sistema
+     * @return Duração em milissegundos a partir da qual as operações nas coleções das entidades são registradas no
+     * log (ver {@link SlowOperationLog}), ou 0 se desativado
      */
-    public void testConnection() {
-        try (MongoClient client = new MongoClient(new ServerAddress(dbUrl, dbPort))) {
-            client.getAddress();
-            MongoDatabase   db           = client.getDatabase(dbName);
-            MongoCollection confCol      = db.getCollection(entityManagementService.getConfigurationCollection().getCollectionName());
-            IndexOptions    indexOptions = new IndexOptions();
-            indexOptions.unique(true);
-            confCol.createIndex(fields(include(EntityManagementService.URI_FIELD_NAME)), indexOptions);
+    public int getSlowOperationThreshold() {
+        return slowOperationThreshold;
+    }
+
+    public void setSlowOperationThreshold(int slowOperationThreshold) {
+        this.slowOperationThreshold = slowOperationThreshold;
+    }
 
-            MongoCollection seqCol = db.getCollection(SEQ_COLLECTION_NAME);
-            seqCol.createIndex(fields(include(EntityManagementService.URI_FIELD_NAME)), indexOptions);
+    /**
+     * Obtém o cliente compartilhado do MongoDB, criando-o na primeira chamada com as configurações atuais.
+     * O cliente mantém um pool de conexões e deve ser reutilizado por todas as operações.
+     *
+     * @return Cliente do MongoDB
+     */
+    MongoClient getClient() {
+        MongoClient result = client;
+        if (result == null) {
+            synchronized (this) {
+                result = client;
+                if (result == null) {
+                    MongoClientOptions options = MongoClientOptions.builder()
+                            .connectionsPerHost(poolMaxSize)
+                            .minConnectionsPerHost(poolMinSize)
+                            .threadsAllowedToBlockForConnectionMultiplier(poolWaitQueueMultiple)
+                            .maxWaitTime(poolMaxWaitTime)
+                            .maxConnectionIdleTime(poolMaxIdleTime)
+                            .socketTimeout(socketTimeout)
+                            .connectTimeout(connectTimeout)
+                            .addConnectionPoolListener(new JMXConnectionPoolListener())
+                            .addCommandListener(new MongoCommandMetrics(metricsService))
+                            .addCommandListener(slowOperationLog)
+                            .build();
+                    client = result = new MongoClient(new ServerAddress(dbUrl, dbPort), options);
+                }
+            }
         }
+        return result;
     }
 
+    private MongoDatabase getDatabase() {
+        return getClient().getDatabase(dbName);
+    }
 
-    public List<Document> callFind(String collectionName, Bson query, Bson fields) {
-        try (MongoClient client = new MongoClient(new ServerAddress(dbUrl, dbPort))) {
-            MongoDatabase             db         = client.getDatabase(dbName);
-            MongoCollection<Document> collection = db.getCollection(collectionName);
-            FindIterable<Document>    it;
-            if (query == null) {
-                it = collection.find();
+    /**
+     * Encerra o cliente compartilhado e as conexões do pool
+     */
+    @PreDestroy
+    public synchronized void close() {
+        indexExecutor.shutdownNow();
+        slowOperationLog.close();
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    /**
+     * Testa a conexão e certifica a criação dos índices necessários para o sistema, incluindo os índices de chaves
+     * das entidades cadastradas
+     */
+    @SuppressWarnings("unchecked")
+    public void testConnection() {
+        MongoClient client = getClient();
+        client.getAddress();
+        MongoDatabase   db           = client.getDatabase(dbName);
+        MongoCollection confCol      = db.getCollection(entityManagementService.getConfigurationCollection().getCollectionName());
+        IndexOptions    indexOptions = new IndexOptions();
+        indexOptions.unique(true);
+        confCol.createIndex(fields(include(EntityManagementService.URI_FIELD_NAME)), indexOptions);
+
+        MongoCollection seqCol = db.getCollection(SEQ_COLLECTION_NAME);
+        seqCol.createIndex(fields(include(EntityManagementService.URI_FIELD_NAME)), indexOptions);
+
+        for (Document entity : entityManagementService.listEntities()) {
+            String       uriName = entity.getString(EntityManagementService.URI_FIELD_NAME);
+            List<String> keys    = (List<String>) entity.get(EntityManagementService.KEYS_FIELD_NAME);
+            if (keys == null || keys.isEmpty()) {
+                continue;
+            }
+            try {
+                ensureKeyIndex(EntityManagementService.DEFAULT_COLLECTION_PREFIX + uriName, keys);
+            } catch (IllegalArgumentException | MongoException e) {
+                System.err.println("Não foi possível criar o índice de chaves da entidade '" + uriName + "': " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Certifica que a coleção possui um índice único composto pelas chaves informadas, na ordem declarada.
+     * Quando o índice de chaves existente tem outra composição, o novo índice é criado com o nome alternativo
+     * ({@value KEY_INDEX_NAME} ou {@value KEY_INDEX_ALT_NAME}) e o anterior só é removido após a criação, de forma que
+     * a coleção nunca fica sem índice único, nem mesmo quando a criação falha por chaves duplicadas.
+     *
+     * @param collectionName Nome da coleção
+     * @param keys           Campos chave, na ordem declarada no descritor
+     */
+    public void ensureKeyIndex(String collectionName, List<String> keys) {
+        MongoCollection<Document> collection = getDatabase().getCollection(collectionName);
+        Document                  keySpec    = new Document();
+        for (String key : keys) {
+            keySpec.put(key, 1);
+        }
+        String       current  = null;
+        List<String> previous = new ArrayList<>();
+        for (Document index : collection.listIndexes()) {
+            String name = index.getString("name");
+            if (!KEY_INDEX_NAME.equals(name) && !KEY_INDEX_ALT_NAME.equals(name)) {
+                continue;
+            }
+            if (isSameIndexKey(keySpec, (Document) index.get("key"))) {
+                if (current == null && Boolean.TRUE.equals(index.getBoolean("unique"))) {
+                    current = name;
+                } else {
+                    // Mesma composição sem unicidade (ou repetida): o MongoDB não aceita outro índice com as mesmas chaves
+                    collection.dropIndex(name);
+                }
             } else {
-                it = collection.find(query);
+                previous.add(name);
             }
-            if (fields != null) {
-                it = it.projection(fields);
+        }
+        if (current == null) {
+            if (previous.size() > 1) {
+                collection.dropIndex(previous.remove(1));
             }
-            List<Document> result = new ArrayList<>();
-            for (Document doc : it) {
-                result.add(doc);
+            String name = previous.contains(KEY_INDEX_NAME) ? KEY_INDEX_ALT_NAME : KEY_INDEX_NAME;
+            try {
+                collection.createIndex(keySpec, new IndexOptions().unique(true).name(name));
+            } catch (MongoCommandException e) {
+                if (ErrorCategory.fromErrorCode(e.getErrorCode()) == ErrorCategory.DUPLICATE_KEY) {
+                    throw new EntityKeyException("Existem documentos com chaves duplicadas na coleção '" + collectionName + "'!");
+                }
+                throw e;
             }
-            return result;
+        }
+        for (String name : previous) {
+            collection.dropIndex(name);
         }
     }
 
-    public void callDeleteOne(String collectionName, Bson condition) {
-        try (MongoClient client = new MongoClient(new ServerAddress(dbUrl, dbPort))) {
-            MongoDatabase   db         = client.getDatabase(dbName);
-            MongoCollection collection = db.getCollection(collectionName);
-            collection.deleteOne(condition);
+    /**
+     * Agenda a sincronização dos índices declarados nos descritores (com prefixo {@value MANAGED_INDEX_PREFIX}):
+     * índices ausentes são criados em background, e índices gerenciados que não estão mais declarados ou foram
+     * alterados são removidos ou recriados. A chamada retorna imediatamente.
+     *
+     * @param collectionName Nome da coleção
+     * @param indexes        Índices declarados, com nomes iniciados por {@value MANAGED_INDEX_PREFIX}
+     * @return Tarefa da sincronização dos índices
+     */
+    public Future<?> ensureIndexesInBackground(String collectionName, List<IndexModel> indexes) {
+        return indexExecutor.submit(() -> {
+            try {
+                ensureIndexes(collectionName, indexes);
+            } catch (RuntimeException e) {
+                System.err.println("Falha ao criar os índices da coleção '" + collectionName + "': " + e.getMessage());
+            }
+        });
+    }
+
+    private void ensureIndexes(String collectionName, List<IndexModel> indexes) {
+        MongoCollection<Document> collection = getDatabase().getCollection(collectionName);
+        Map<String, IndexModel>   declared   = new HashMap<>();
+        for (IndexModel index : indexes) {
+            declared.put(index.getOptions().getName(), index);
+        }
+        for (Document existing : collection.listIndexes()) {
+            String name = existing.getString("name");
+            if (name == null || !name.startsWith(MANAGED_INDEX_PREFIX)) {
+                continue;
+            }
+            IndexModel index = declared.get(name);
+            if (index != null && isSameIndex(index, existing)) {
+                declared.remove(name);
+            } else {
+                collection.dropIndex(name);
+            }
+        }
+        for (IndexModel index : declared.values()) {
+            index.getOptions().background(true);
+            collection.createIndexes(Collections.singletonList(index));
         }
     }
 
-    @SuppressWarnings("unchecked")
+    private boolean isSameIndex(IndexModel expected, Document actual) {
+        return expected.getOptions().isUnique() == Boolean.TRUE.equals(actual.getBoolean("unique"))
+                && expected.getOptions().isSparse() == Boolean.TRUE.equals(actual.getBoolean("sparse"))
+                && isSameIndexKey((Document) expected.getKeys(), (Document) actual.get("key"));
+    }
+
+    private boolean isSameIndexKey(Document expected, Document actual) {
+        if (actual == null || !new ArrayList<>(expected.keySet()).equals(new ArrayList<>(actual.keySet()))) {
+            return false;
+        }
+        for (Map.Entry<String, Object> entry : actual.entrySet()) {
+            Object expectedDirection = expected.get(entry.getKey());
+            if (!(entry.getValue() instanceof Number) || ((Number) entry.getValue()).intValue() != ((Number) expectedDirection).intValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    public List<Document> callFind(String collectionName, Bson query, Bson fields) {
+        return find(collectionName, query, fields).into(new ArrayList<>());
+    }
+
+    /**
+     * Prepara uma busca sem materializar os resultados: os documentos são lidos do cursor em lotes conforme
+     * o resultado é iterado. A busca só é executada no banco ao iterar o resultado.
+     *
+     * @param collectionName Nome da coleção
+     * @param query          Query de filtro, ou null para todos os documentos
+     * @param fields         Projeção dos campos, ou null para todos os campos
+     * @return Iterável dos documentos encontrados
+     */
+    public MongoIterable<Document> find(String collectionName, Bson query, Bson fields) {
+        return find(collectionName, query, fields, null, 0);
+    }
+
+    /**
+     * Prepara uma busca ordenada e limitada sem materializar os resultados
+     *
+     * @param collectionName Nome da coleção
+     * @param query          Query de filtro, ou null para todos os documentos
+     * @param fields         Projeção dos campos, ou null para todos os campos
+     * @param sort           Ordenação, ou null para a ordem natural
+     * @param limit          Quantidade máxima de documentos, ou 0 para não limitar
+     * @return Iterável dos documentos encontrados
+     */
+    public MongoIterable<Document> find(String collectionName, Bson query, Bson fields, Bson sort, int limit) {
+        return find(collectionName, query, fields, sort, limit, Document.class);
+    }
+
+    /**
+     * Prepara uma busca ordenada e limitada cujos documentos são mantidos nos bytes BSON recebidos do banco, sem
+     * conversão para {@link Document} (para serem repassados diretamente na resposta)
+     *
+     * @param collectionName Nome da coleção
+     * @param query          Query de filtro, ou null para todos os documentos
+     * @param fields         Projeção dos campos, ou null para todos os campos
+     * @param sort           Ordenação, ou null para a ordem natural
+     * @param limit          Quantidade máxima de documentos, ou 0 para não limitar
+     * @return Iterável dos documentos encontrados
+     */
+    public MongoIterable<RawBsonDocument> findRaw(String collectionName, Bson query, Bson fields, Bson sort, int limit) {
+        return find(collectionName, query, fields, sort, limit, RawBsonDocument.class);
+    }
+
+    private <T> MongoIterable<T> find(String collectionName, Bson query, Bson fields, Bson sort, int limit, Class<T> documentClass) {
+        MongoCollection<Document> collection = getDatabase().getCollection(collectionName);
+        FindIterable<T>           it;
+        if (query == null) {
+            it = collection.find(documentClass);
+        } else {
+            it = collection.find(query, documentClass);
+        }
+        if (fields != null) {
+            it = it.projection(fields);
+        }
+        if (sort != null) {
+            it = it.sort(sort);
+        }
+        if (limit > 0) {
+            it = it.limit(limit);
+        }
+        if (cursorBatchSize > 0) {
+            it = it.batchSize(cursorBatchSize);
+        }
+        return it;
+    }
+
+    /**
+     * Obtém o plano de execução escolhido pelo banco para uma busca, sem executá-la
+     *
+     * @param collectionName Nome da coleção
+     * @param filter         Filtro da busca, ou null para todos os documentos
+     * @param sort           Ordenação, ou null para a ordem natural
+     * @return Resultado do comando {@code explain} (verbosidade {@code queryPlanner})
+     */
+    public Document explainFind(String collectionName, BsonDocument filter, BsonDocument sort) {
+        Document find = new Document("find", collectionName);
+        if (filter != null) {
+            find.append("filter", filter);
+        }
+        if (sort != null) {
+            find.append("sort", sort);
+        }
+        return getDatabase().runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+    }
+
+    public void callDeleteOne(String collectionName, Bson condition) {
+        MongoCollection collection = getDatabase().getCollection(collectionName);
+        collection.deleteOne(condition);
+    }
+
+    /**
+     * Obtém o próximo número da sequência da entidade. Com blocos de tamanho 1, cada chamada incrementa atomicamente
+     * o contador no banco; com blocos maiores, os números são distribuídos localmente a partir de faixas reservadas.
+     *
+     * @param descriptor Descritor da entidade
+     * @return Próximo número da sequência
+     */
     public long getNextSequence(EntityDescriptor descriptor) {
-        long nextNumber;
-        try (MongoClient client = new MongoClient(new ServerAddress(dbUrl, dbPort))) {
-            MongoDatabase   db         = client.getDatabase(dbName);
-            MongoCollection collection = db.getCollection(SEQ_COLLECTION_NAME);
-            Bson            condition  = eq(EntityManagementService.URI_FIELD_NAME, descriptor.getUriName());
-            FindIterable    x          = collection.find(condition);
-            Document        lastIdLine = (Document) x.first();
-            if (lastIdLine == null) {
-                nextNumber = 1L;
-                lastIdLine = new Document();
-                lastIdLine.put(EntityManagementService.URI_FIELD_NAME, descriptor.getUriName());
-            } else {
-                nextNumber = ((Number) lastIdLine.get(SEQ_COLLECTION_LASTID_FIELD_NAME)).longValue() + 1;
+        String uriName = descriptor.getUriName();
+        if (sequenceBlockSize <= 1) {
+            return reserveSequence(uriName, 1);
+        }
+        return sequenceAllocators.computeIfAbsent(uriName, uri -> new SequenceBlockAllocator(sequenceBlockSize, count -> reserveSequence(uri, count))).next();
+    }
+
+    /**
+     * Reserva atomicamente uma faixa de números na sequência da entidade
+     *
+     * @param uriName URI da entidade
+     * @param count   Quantidade de números a reservar
+     * @return Último número da faixa reservada
+     */
+    long reserveSequence(String uriName, long count) {
+        MongoCollection<Document> collection = getDatabase().getCollection(SEQ_COLLECTION_NAME);
+        Bson                      condition  = eq(EntityManagementService.URI_FIELD_NAME, uriName);
+        FindOneAndUpdateOptions   options    = new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER);
+        Document                  lastIdLine;
+        try {
+            lastIdLine = collection.findOneAndUpdate(condition, inc(SEQ_COLLECTION_LASTID_FIELD_NAME, count), options);
+        } catch (MongoCommandException e) {
+            if (ErrorCategory.fromErrorCode(e.getErrorCode()) != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
             }
-            lastIdLine.put(SEQ_COLLECTION_LASTID_FIELD_NAME, nextNumber);
-            UpdateOptions uo = new UpdateOptions();
-            uo.upsert(true);
-            collection.replaceOne(condition, lastIdLine, uo);
+            // Outra requisição criou o contador ao mesmo tempo; o documento já existe e o incremento pode ser refeito
+            lastIdLine = collection.findOneAndUpdate(condition, inc(SEQ_COLLECTION_LASTID_FIELD_NAME, count), options);
         }
-        return nextNumber;
+        return ((Number) lastIdLine.get(SEQ_COLLECTION_LASTID_FIELD_NAME)).longValue();
+    }
+
+    /**
+     * Insere um documento na coleção. A unicidade das chaves é garantida pelo índice {@value KEY_INDEX_NAME} (ou
+     * {@value KEY_INDEX_ALT_NAME}), sem consulta prévia.
+     *
+     * @param collectionName Nome da coleção
+     * @param document       Documento a ser inserido, já em bytes BSON (enviado ao banco sem nova codificação)
+     */
+    public void callInsertOne(String collectionName, RawBsonDocument document) {
+        MongoCollection<RawBsonDocument> collection = getDatabase().getCollection(collectionName, RawBsonDocument.class);
+        try {
+            collection.insertOne(document);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                throw new EntityKeyException("Chave de entidade já cadastrada!");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Executa um lote de escritas em uma única requisição ao banco. Falhas de itens individuais são lançadas como
+     * {@link com.mongodb.MongoBulkWriteException}, que contém o resultado dos itens gravados e os erros por índice.
+     *
+     * @param collectionName Nome da coleção
+     * @param models         Operações de escrita
+     * @param ordered        Se verdadeiro, interrompe o lote no primeiro erro
+     * @return Resultado do lote
+     */
+    public BulkWriteResult callBulkWrite(String collectionName, List<WriteModel<Document>> models, boolean ordered) {
+        MongoCollection<Document> collection = getDatabase().getCollection(collectionName);
+        return collection.bulkWrite(models, new BulkWriteOptions().ordered(ordered));
+    }
+
+    /**
+     * Altera o documento que atende à condição
+     *
+     * @param collectionName Nome da coleção
+     * @param condition      Condição de busca do documento
+     * @param update         Operadores de alteração
+     * @return Quantidade de documentos que atenderam à condição
+     */
+    public long callUpdateOne(String collectionName, Bson condition, Bson update) {
+        MongoCollection<Document> collection = getDatabase().getCollection(collectionName);
+        return collection.updateOne(condition, update).getMatchedCount();
+    }
+
+    /**
+     * Substitui o documento que atende à condição, sem incluí-lo caso não exista
+     *
+     * @param collectionName Nome da coleção
+     * @param document       Novo documento, já em bytes BSON
+     * @param condition      Condição de busca do documento
+     * @return Quantidade de documentos que atenderam à condição
+     */
+    public long callReplaceOne(String collectionName, RawBsonDocument document, Bson condition) {
+        MongoCollection<RawBsonDocument> collection = getDatabase().getCollection(collectionName, RawBsonDocument.class);
+        return collection.replaceOne(condition, document).getMatchedCount();
     }
 
     @SuppressWarnings("unchecked")
     public void callReplaceOne(String collectionName, Document document, Bson condition) {
-        try (MongoClient client = new MongoClient(new ServerAddress(dbUrl, dbPort))) {
-            MongoDatabase   db         = client.getDatabase(dbName);
-            MongoCollection collection = db.getCollection(collectionName);
-            UpdateOptions   uo         = new UpdateOptions();
-            uo.upsert(true);
-            collection.replaceOne(condition, document, uo);
-        }
+        MongoCollection collection = getDatabase().getCollection(collectionName);
+        UpdateOptions   uo         = new UpdateOptions();
+        uo.upsert(true);
+        collection.replaceOne(condition, document, uo);
     }
 }
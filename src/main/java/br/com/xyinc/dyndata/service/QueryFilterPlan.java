@@ -0,0 +1,174 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import br.com.xyinc.dyndata.model.FieldType;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.mongodb.client.model.Filters.*;
+
+/**
+ * Filtro de consulta compilado para um formato de requisição (conjunto de parâmetros de filtro) de uma entidade.
+ * Os campos, operadores e tipos são resolvidos uma única vez; a cada requisição apenas os valores são convertidos.
+ */
+public class QueryFilterPlan {
+
+    private static final Pattern PARAM_PATTERN    = Pattern.compile("^(.+)\\[(gt|gte|lt|lte|in|prefix)]$");
+    private static final String  ATTACHMENT_NAME  = "filterPlans";
+    private static final int     MAX_FILTER_PLANS = 256;
+
+    private final Condition[] conditions;
+
+    private QueryFilterPlan(Condition[] conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Obtém o filtro compilado para o formato de consulta informado, compilando-o na primeira vez.
+     * Os filtros compilados ficam atrelados à instância do descritor e são descartados junto com ela.
+     *
+     * @param descriptor Descritor da entidade
+     * @param shape      Formato da consulta (parâmetros de filtro utilizados)
+     * @param compiler   Função que compila o filtro
+     * @return Filtro compilado
+     */
+    static QueryFilterPlan get(EntityDescriptor descriptor, String shape, Function<String, QueryFilterPlan> compiler) {
+        ConcurrentMap<String, QueryFilterPlan> plans = descriptor.computeAttachmentIfAbsent(ATTACHMENT_NAME, d -> new ConcurrentHashMap<>());
+        QueryFilterPlan                        plan  = plans.get(shape);
+        if (plan == null) {
+            plan = compiler.apply(shape);
+            if (plans.size() < MAX_FILTER_PLANS) {
+                plans.putIfAbsent(shape, plan);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Compila os parâmetros de filtro, validando-os contra os campos declarados na entidade
+     *
+     * @param descriptor       Descritor da entidade
+     * @param paramNames       Nomes dos parâmetros de filtro, no formato {@code campo} ou {@code campo[operador]}
+     * @param fieldTypeService Serviço de tipos de campo
+     * @return Filtro compilado
+     */
+    static QueryFilterPlan compile(EntityDescriptor descriptor, List<String> paramNames, FieldTypeService fieldTypeService) {
+        Condition[] conditions = new Condition[paramNames.size()];
+        for (int i = 0; i < conditions.length; i++) {
+            String   paramName = paramNames.get(i);
+            Matcher  matcher   = PARAM_PATTERN.matcher(paramName);
+            String   fieldName = paramName;
+            Operator operator  = Operator.eq;
+            if (matcher.matches()) {
+                fieldName = matcher.group(1);
+                operator = Operator.valueOf(matcher.group(2));
+            }
+            FieldDescriptor field = descriptor.getFieldByName(fieldName);
+            if (field == null) {
+                throw new IllegalArgumentException(String.format("Campo de filtro '%s' não declarado na entidade!", fieldName));
+            }
+            FieldType type = fieldTypeService.getType(field.getFieldType());
+            if (type == null) {
+                throw new IllegalArgumentException(String.format("Tipo do campo de filtro '%s' não registrado!", fieldName));
+            }
+            Class<?> valueClass = type.isArray() ? type.getTargetClass().getComponentType() : type.getTargetClass();
+            if (Map.class.isAssignableFrom(valueClass)) {
+                throw new IllegalArgumentException(String.format("Campo '%s' do tipo %s não pode ser usado como filtro!", fieldName, field.getFieldType()));
+            }
+            if (operator == Operator.prefix && !String.class.isAssignableFrom(valueClass)) {
+                throw new IllegalArgumentException(String.format("Filtro por prefixo é permitido apenas em campos String! Campo: %s", fieldName));
+            }
+            conditions[i] = new Condition(paramName, fieldName, operator, new FieldType(valueClass));
+        }
+        return new QueryFilterPlan(conditions);
+    }
+
+    /**
+     * Gera o filtro BSON com os valores da requisição, convertidos conforme o tipo de cada campo
+     *
+     * @param params           Valores dos parâmetros de filtro
+     * @param fieldTypeService Serviço de tipos de campo
+     * @return Filtro BSON
+     */
+    Bson bind(Map<String, String> params, FieldTypeService fieldTypeService) {
+        List<Bson>   filters  = new ArrayList<>(conditions.length);
+        List<String> tracking = new ArrayList<>();
+        for (Condition condition : conditions) {
+            String value = params.get(condition.paramName);
+            switch (condition.operator) {
+                case gt:
+                    filters.add(gt(condition.fieldName, condition.convert(value, fieldTypeService, tracking)));
+                    break;
+                case gte:
+                    filters.add(gte(condition.fieldName, condition.convert(value, fieldTypeService, tracking)));
+                    break;
+                case lt:
+                    filters.add(lt(condition.fieldName, condition.convert(value, fieldTypeService, tracking)));
+                    break;
+                case lte:
+                    filters.add(lte(condition.fieldName, condition.convert(value, fieldTypeService, tracking)));
+                    break;
+                case in:
+                    List<BsonValue> values = new ArrayList<>();
+                    for (String item : value.split(",")) {
+                        values.add(condition.convert(item, fieldTypeService, tracking));
+                    }
+                    filters.add(in(condition.fieldName, values));
+                    break;
+                case prefix:
+                    filters.add(regex(condition.fieldName, "^" + escapeRegex(value)));
+                    break;
+                default:
+                    filters.add(eq(condition.fieldName, condition.convert(value, fieldTypeService, tracking)));
+            }
+        }
+        return filters.size() == 1 ? filters.get(0) : and(filters);
+    }
+
+    private static String escapeRegex(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 8);
+        for (char c : value.toCharArray()) {
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    private enum Operator {
+        eq, gt, gte, lt, lte, in, prefix
+    }
+
+    private static class Condition {
+        private final String    paramName;
+        private final String    fieldName;
+        private final Operator  operator;
+        private final FieldType valueType;
+
+        private Condition(String paramName, String fieldName, Operator operator, FieldType valueType) {
+            this.paramName = paramName;
+            this.fieldName = fieldName;
+            this.operator = operator;
+            this.valueType = valueType;
+        }
+
+        private BsonValue convert(String value, FieldTypeService fieldTypeService, List<String> tracking) {
+            try {
+                return fieldTypeService.toBson(value, null, valueType, tracking);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Valor inválido para o filtro '%s': %s", paramName, e.getMessage()), e);
+            }
+        }
+    }
+}
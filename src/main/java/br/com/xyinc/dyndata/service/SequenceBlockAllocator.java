@@ -0,0 +1,54 @@
+package br.com.xyinc.dyndata.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Distribuidor de números sequenciais no modo hi/lo: reserva um bloco de números no banco de dados e os entrega a
+ * partir de um contador local, sem bloqueio, até que o bloco se esgote.
+ */
+class SequenceBlockAllocator {
+
+    private final int                            blockSize;
+    private final LongUnaryOperator              reserve;
+    private final AtomicReference<SequenceBlock> current = new AtomicReference<>(new SequenceBlock(1, 0));
+
+    /**
+     * @param blockSize Quantidade de números reservados por vez
+     * @param reserve   Função que reserva a quantidade de números recebida e retorna o último número reservado
+     */
+    SequenceBlockAllocator(int blockSize, LongUnaryOperator reserve) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Tamanho do bloco de sequência deve ser maior que zero!");
+        }
+        this.blockSize = blockSize;
+        this.reserve = reserve;
+    }
+
+    long next() {
+        while (true) {
+            SequenceBlock block = current.get();
+            long          value = block.next.getAndIncrement();
+            if (value <= block.last) {
+                return value;
+            }
+            synchronized (this) {
+                if (current.get() == block) {
+                    long last = reserve.applyAsLong(blockSize);
+                    current.set(new SequenceBlock(last - blockSize + 1, last));
+                }
+            }
+        }
+    }
+
+    private static class SequenceBlock {
+        private final AtomicLong next;
+        private final long       last;
+
+        private SequenceBlock(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+}
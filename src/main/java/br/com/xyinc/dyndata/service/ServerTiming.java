@@ -0,0 +1,93 @@
+package br.com.xyinc.dyndata.service;
+
+import java.util.Locale;
+
+/**
+ * Acumula, por requisição, o tempo gasto em cada etapa do processamento, para o cabeçalho {@code Server-Timing} da
+ * resposta. A medição fica na thread da requisição: as etapas registradas em {@link MetricsService} e os comandos do
+ * MongoDB (executados pelo driver na thread que os chama) são somados à requisição iniciada em {@link #begin()}.
+ * Sem medição iniciada na thread, o registro de uma etapa apenas consulta o {@link ThreadLocal}, sem alocar nada.
+ */
+public final class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+    public static final String MONGO  = "mongo";
+    public static final String TOTAL  = "total";
+
+    // Ordem das etapas no cabeçalho
+    private static final String[] STAGES = {MetricsService.Stages.DESCRIPTOR, MetricsService.Stages.CONVERSION,
+            MetricsService.Stages.FILTER, MONGO, MetricsService.Stages.SERIALIZATION};
+
+    private static final ThreadLocal<ServerTiming> current = new ThreadLocal<>();
+
+    private final long   start     = System.nanoTime();
+    private final long[] durations = new long[STAGES.length];
+    private       int    recorded  = 0;
+
+    private ServerTiming() {
+    }
+
+    /**
+     * Inicia a medição da requisição na thread atual
+     *
+     * @return Medição iniciada
+     */
+    public static ServerTiming begin() {
+        ServerTiming timing = new ServerTiming();
+        current.set(timing);
+        return timing;
+    }
+
+    /**
+     * Encerra a medição da requisição na thread atual
+     */
+    public static void end() {
+        current.remove();
+    }
+
+    /**
+     * Soma a duração de uma etapa à requisição da thread atual, se houver
+     *
+     * @param stage        Etapa (ver {@link MetricsService.Stages} e {@link #MONGO})
+     * @param elapsedNanos Duração em nanossegundos
+     */
+    public static void record(String stage, long elapsedNanos) {
+        ServerTiming timing = current.get();
+        if (timing == null) {
+            return;
+        }
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(stage)) {
+                timing.durations[i] += elapsedNanos;
+                timing.recorded++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Se alguma etapa foi registrada (requisições que não passam pelas entidades não recebem o cabeçalho)
+     */
+    public boolean hasStages() {
+        return recorded > 0;
+    }
+
+    /**
+     * Monta o valor do cabeçalho, em milissegundos, com as etapas registradas e o tempo total até o momento.
+     * Ex.: {@code descriptor;dur=0.012, mongo;dur=1.503, serialization;dur=0.087, total;dur=1.950}
+     */
+    public String toHeader() {
+        long          total  = System.nanoTime() - start;
+        StringBuilder header = new StringBuilder(128);
+        for (int i = 0; i < STAGES.length; i++) {
+            if (durations[i] > 0) {
+                appendMetric(header, STAGES[i], durations[i]).append(", ");
+            }
+        }
+        return appendMetric(header, TOTAL, total).toString();
+    }
+
+    private static StringBuilder appendMetric(StringBuilder header, String name, long nanos) {
+        return header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0));
+    }
+}
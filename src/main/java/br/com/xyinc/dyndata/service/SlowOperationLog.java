@@ -0,0 +1,165 @@
+package br.com.xyinc.dyndata.service;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener de comandos do driver que registra no log as operações nas coleções das entidades
+ * ({@value EntityManagementService#DEFAULT_COLLECTION_PREFIX}*) que demoram mais que
+ * {@link MongoService#getSlowOperationThreshold()}: comando, entidade, formato do filtro (sem os valores) e duração.
+ * Para as buscas, o plano de execução ({@code explain}) é obtido uma vez por formato de filtro, indicando se a busca
+ * percorre a coleção inteira (COLLSCAN) por falta de índice.
+ * O log e o explain são feitos em uma thread separada; com a fila cheia, os registros excedentes são descartados
+ * para não atrasar as requisições.
+ */
+class SlowOperationLog implements CommandListener {
+
+    static final String COLLSCAN = "COLLSCAN";
+
+    private static final int QUEUE_SIZE = 1000;
+
+    private final MongoService                         mongoService;
+    private final Map<Integer, SlowOperationCandidate> started   = new ConcurrentHashMap<>();
+    // Formatos de filtro já analisados (coleção + formato), indicando se a busca percorre a coleção inteira
+    private final ConcurrentMap<String, Boolean>       explained = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor                   executor  = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "dyndata-slow-operations");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    SlowOperationLog(MongoService mongoService) {
+        this.mongoService = mongoService;
+    }
+
+    private static class SlowOperationCandidate {
+        private final String       collection;
+        private final BsonDocument filter;
+        private final BsonDocument sort;
+
+        private SlowOperationCandidate(String collection, BsonDocument filter, BsonDocument sort) {
+            this.collection = collection;
+            this.filter = filter;
+            this.sort = sort;
+        }
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (mongoService.getSlowOperationThreshold() <= 0) {
+            return;
+        }
+        String collection = MongoCommandMetrics.getCollection(event.getCommandName(), event.getCommand());
+        if (collection == null || !collection.startsWith(EntityManagementService.DEFAULT_COLLECTION_PREFIX)) {
+            return;
+        }
+        // O comando só pode ser lido durante a notificação: o filtro é copiado para o caso de a operação ser lenta
+        BsonDocument filter = MongoCommandMetrics.getFilter(event.getCommandName(), event.getCommand());
+        BsonValue    sort   = "find".equals(event.getCommandName()) ? event.getCommand().get("sort") : null;
+        started.put(event.getRequestId(), new SlowOperationCandidate(collection, filter == null ? null : filter.clone(),
+                sort != null && sort.isDocument() ? sort.asDocument().clone() : null));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        finish(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        finish(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+
+    private void finish(int requestId, String commandName, long elapsedNanos, boolean success) {
+        SlowOperationCandidate candidate = started.remove(requestId);
+        if (candidate == null) {
+            return;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMillis >= mongoService.getSlowOperationThreshold()) {
+            executor.execute(() -> log(candidate, commandName, elapsedMillis, success));
+        }
+    }
+
+    private void log(SlowOperationCandidate candidate, String commandName, long elapsedMillis, boolean success) {
+        String  shape    = FilterShape.of(candidate.filter);
+        String  key      = candidate.collection + " " + shape;
+        Boolean collScan = explained.get(key);
+        if (collScan == null && "find".equals(commandName)) {
+            collScan = explain(candidate, key);
+        }
+        String uriName = candidate.collection.substring(EntityManagementService.DEFAULT_COLLECTION_PREFIX.length());
+        System.err.println("Operação lenta no MongoDB (" + elapsedMillis + " ms): " + commandName + " na entidade '" + uriName + "'"
+                + (success ? "" : " (falhou)") + ", filtro " + shape + (collScan == null ? "" : collScan ? ", " + COLLSCAN + " (sem índice)" : ", usa índice"));
+    }
+
+    private Boolean explain(SlowOperationCandidate candidate, String key) {
+        try {
+            boolean collScan = isCollectionScan(mongoService.explainFind(candidate.collection, candidate.filter, candidate.sort));
+            explained.put(key, collScan);
+            return collScan;
+        } catch (RuntimeException e) {
+            System.err.println("Falha ao obter o plano de execução da busca em '" + candidate.collection + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Verifica se o plano escolhido percorre a coleção inteira, procurando a etapa {@value COLLSCAN} no
+     * {@code winningPlan} (inclusive em etapas aninhadas e nos planos de cada shard)
+     *
+     * @param explain Resultado do comando {@code explain}
+     * @return true se o plano contém uma etapa {@value COLLSCAN}
+     */
+    static boolean isCollectionScan(Document explain) {
+        Object queryPlanner = explain.get("queryPlanner");
+        return queryPlanner instanceof Map && containsCollectionScan(((Map) queryPlanner).get("winningPlan"));
+    }
+
+    private static boolean containsCollectionScan(Object stage) {
+        if (stage instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) stage;
+            if (COLLSCAN.equals(map.get("stage"))) {
+                return true;
+            }
+            for (Object value : map.values()) {
+                if (containsCollectionScan(value)) {
+                    return true;
+                }
+            }
+        } else if (stage instanceof List) {
+            for (Object item : (List) stage) {
+                if (containsCollectionScan(item)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Formatos de filtro já analisados (coleção + formato) e se a busca percorre a coleção inteira
+     */
+    Map<String, Boolean> getExplainedShapes() {
+        return Collections.unmodifiableMap(explained);
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,244 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonTimestamp;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.type;
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * Migração dos campos Timestamp gravados como BSON Timestamp (tipo interno de replicação do MongoDB, usado em versões
+ * anteriores) para BSON DateTime. Os objetos são convertidos em lotes, com uma pausa entre os lotes para limitar a
+ * carga no banco, em uma thread em segundo plano. Até o fim da migração, buscas por chave, filtros e o índice único
+ * das chaves não encontram os valores ainda gravados como BSON Timestamp.
+ */
+@Service
+public class TimestampMigrationService {
+
+    public static final int  DEFAULT_BATCH_SIZE   = 500;
+    public static final long DEFAULT_DELAY_MILLIS = 100;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dyndata-timestamp-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int  batchSize   = DEFAULT_BATCH_SIZE;
+    private long delayMillis = DEFAULT_DELAY_MILLIS;
+
+    @Autowired
+    private MongoService            mongoService;
+    @Autowired
+    private EntityManagementService entityManagementService;
+    @Autowired
+    private DynamicEntityService    dynamicEntityService;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Inicia a migração de todas as entidades cadastradas em segundo plano
+     *
+     * @return Future da migração
+     */
+    public Future<?> migrateInBackground() {
+        return executor.submit(() -> {
+            boolean failed = false;
+            for (Document entity : entityManagementService.listEntities()) {
+                String uriName = entity.getString(EntityManagementService.URI_FIELD_NAME);
+                try {
+                    long migrated = migrate(entityManagementService.findEntityDescriptor(uriName));
+                    if (migrated > 0) {
+                        System.err.println("Campos Timestamp convertidos para data na entidade '" + uriName + "': " + migrated + " objetos");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    failed = true;
+                    System.err.println("Falha ao converter os campos Timestamp da entidade '" + uriName + "': " + e.getMessage());
+                }
+            }
+            System.err.println(failed ? "Migração dos campos Timestamp concluída com falhas" : "Migração dos campos Timestamp concluída");
+        });
+    }
+
+    /**
+     * Converte os campos Timestamp dos objetos da entidade, percorrendo a coleção em lotes pela ordem do {@code _id}.
+     * Objetos alterados durante a conversão não correspondem à condição da alteração e são relidos em uma nova
+     * passada; objetos cuja conversão viola o índice de chaves (gravados com a mesma chave de um objeto ainda não
+     * convertido) são registrados no log e ignorados. A cada lote gravado, o cache dos objetos da entidade e as leituras
+     * em andamento são descartados, pois trazem o JSON anterior.
+     *
+     * @param descriptor Descritor da entidade
+     * @return Quantidade de objetos convertidos
+     * @throws InterruptedException Se a thread for interrompida durante a pausa entre lotes
+     */
+    long migrate(EntityDescriptor descriptor) throws InterruptedException {
+        List<String> paths = new ArrayList<>();
+        collectTimestampPaths(descriptor.getFields(), "", Collections.newSetFromMap(new IdentityHashMap<>()), paths);
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        Bson filter   = or(paths.stream().map(path -> type(path, BsonType.TIMESTAMP)).collect(Collectors.toList()));
+        long migrated = 0;
+        while (true) {
+            long[] pass = migratePass(descriptor, filter);
+            migrated += pass[0];
+            // Nova passada apenas se houve objetos alterados durante a conversão e a passada converteu algum objeto
+            if (pass[1] == 0 || pass[0] == 0) {
+                return migrated;
+            }
+        }
+    }
+
+    /**
+     * Percorre a coleção uma vez, do menor ao maior {@code _id}
+     *
+     * @return Quantidade de objetos convertidos e quantidade de objetos alterados durante a conversão
+     */
+    private long[] migratePass(EntityDescriptor descriptor, Bson filter) throws InterruptedException {
+        String name     = descriptor.getCollectionName();
+        Object lastId   = null;
+        long   migrated = 0;
+        long   changed  = 0;
+        while (true) {
+            Bson           page      = lastId == null ? filter : and(gt("_id", lastId), filter);
+            List<Document> documents = mongoService.find(name, page, null, ascending("_id"), batchSize).into(new ArrayList<>());
+            if (documents.isEmpty()) {
+                return new long[]{migrated, changed};
+            }
+            lastId = documents.get(documents.size() - 1).get("_id");
+            List<WriteModel<Document>> updates = new ArrayList<>();
+            for (Document document : documents) {
+                Document condition = new Document("_id", document.get("_id"));
+                Document changes   = new Document();
+                for (Map.Entry<String, Object> entry : document.entrySet()) {
+                    Object converted = convertTimestamps(entry.getValue());
+                    if (converted != entry.getValue()) {
+                        condition.put(entry.getKey(), entry.getValue());
+                        changes.put(entry.getKey(), converted);
+                    }
+                }
+                if (!changes.isEmpty()) {
+                    updates.add(new UpdateOneModel<>(condition, new Document("$set", changes)));
+                }
+            }
+            if (!updates.isEmpty()) {
+                BulkWriteResult result;
+                int             failed = 0;
+                try {
+                    result = mongoService.callBulkWrite(name, updates, false);
+                } catch (MongoBulkWriteException e) {
+                    result = e.getWriteResult();
+                    failed = e.getWriteErrors().size();
+                    for (BulkWriteError error : e.getWriteErrors()) {
+                        Document condition = (Document) ((UpdateOneModel<Document>) updates.get(error.getIndex())).getFilter();
+                        System.err.println("Não foi possível converter os campos Timestamp do objeto " + condition.get("_id")
+                                + " da entidade '" + descriptor.getUriName() + "': " + error.getMessage());
+                    }
+                } finally {
+                    dynamicEntityService.invalidateEntity(descriptor);
+                }
+                migrated += result.getModifiedCount();
+                changed += Math.max(0, updates.size() - failed - result.getMatchedCount());
+            }
+            if (documents.size() < batchSize) {
+                return new long[]{migrated, changed};
+            }
+            Thread.sleep(delayMillis);
+        }
+    }
+
+    private void collectTimestampPaths(List<FieldDescriptor> fields, String prefix, Set<List<FieldDescriptor>> visited, List<String> paths) {
+        if (fields == null || !visited.add(fields)) {
+            return;
+        }
+        for (FieldDescriptor field : fields) {
+            String type = field.getFieldType();
+            if (FieldTypeService.DefaultFieldTypes.TIMESTAMP.equals(type) || FieldTypeService.DefaultFieldTypes.TIMESTAMP_ARR.equals(type)) {
+                paths.add(prefix + field.getFieldName());
+            } else if (FieldTypeService.DefaultFieldTypes.DOCUMENT.equals(type) || FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR.equals(type)) {
+                collectTimestampPaths(field.getDocumentFields(), prefix + field.getFieldName() + ".", visited, paths);
+            }
+        }
+    }
+
+    /**
+     * Substitui os BSON Timestamp do valor (inclusive em documentos e arrays) por datas
+     *
+     * @return O próprio valor, se não houver nada a converter, ou uma cópia convertida
+     */
+    @SuppressWarnings("unchecked")
+    static Object convertTimestamps(Object value) {
+        if (value instanceof BsonTimestamp) {
+            return new Date(((BsonTimestamp) value).getValue());
+        } else if (value instanceof Map) {
+            Document converted = null;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                Object item = convertTimestamps(entry.getValue());
+                if (item != entry.getValue() && converted == null) {
+                    converted = new Document((Map<String, Object>) value);
+                }
+                if (converted != null) {
+                    converted.put(entry.getKey(), item);
+                }
+            }
+            return converted == null ? value : converted;
+        } else if (value instanceof List) {
+            List<Object> converted = null;
+            List<Object> items     = (List<Object>) value;
+            for (int i = 0; i < items.size(); i++) {
+                Object item = convertTimestamps(items.get(i));
+                if (item != items.get(i) && converted == null) {
+                    converted = new ArrayList<>(items);
+                }
+                if (converted != null) {
+                    converted.set(i, item);
+                }
+            }
+            return converted == null ? value : converted;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,81 @@
+package br.com.xyinc.dyndata.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Agrupa execuções idênticas e simultâneas de uma mesma leitura: enquanto a leitura de uma chave está em andamento,
+ * as demais chamadas com a mesma chave aguardam e recebem o mesmo resultado (ou a mesma exceção), em vez de
+ * executá-la novamente. Nada é guardado após o término da leitura.
+ *
+ * @param <K> Tipo da chave que identifica a leitura (deve implementar equals e hashCode)
+ * @param <V> Tipo do resultado, compartilhado entre as chamadas e portanto não deve ser alterado por elas
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Executa a leitura, ou aguarda a leitura em andamento com a mesma chave
+     *
+     * @param key    Chave da leitura
+     * @param loader Leitura a ser executada
+     * @return Resultado da leitura
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight   = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            V result = loader.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Desvincula a leitura em andamento da chave, de forma que as próximas chamadas executem uma nova leitura.
+     * Usado após escritas, para que leituras iniciadas depois delas não recebam um resultado anterior.
+     *
+     * @param key Chave da leitura
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * Desvincula as leituras em andamento cujas chaves atendem à condição
+     *
+     * @param condition Condição sobre as chaves
+     */
+    public void forgetIf(Predicate<K> condition) {
+        inFlight.keySet().removeIf(condition);
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Leitura interrompida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
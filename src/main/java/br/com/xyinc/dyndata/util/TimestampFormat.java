@@ -0,0 +1,207 @@
+package br.com.xyinc.dyndata.util;
+
+import br.com.xyinc.dyndata.exception.TimestampFormatException;
+
+import java.time.OffsetDateTime;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+
+/**
+ * Leitura e escrita dos campos Timestamp no formato ISO-8601 com fuso horário, sem estado compartilhado mutável
+ * (pode ser usado por várias threads simultaneamente).
+ * <p>
+ * O formato canônico {@code yyyy-MM-dd'T'HH:mm:ss.SSSZ} (ex.: {@code 2018-04-01T17:38:55.000-0300}), com ou sem
+ * milissegundos e com fuso {@code Z}, {@code ±HHmm} ou {@code ±HH:mm}, é lido diretamente dos caracteres, sem
+ * alocações. Os demais formatos ISO com fuso (frações de segundo de 1 a 9 dígitos, fuso {@code ±HH}, segundos
+ * omitidos) são lidos com {@link DateTimeFormatter}. Datas sem fuso horário são recusadas, pois seriam ambíguas.
+ */
+public final class TimestampFormat {
+
+    private static final String INVALID_FORMAT_MESSAGE = "Campos tipo Timestamp devem ser enviados no formato ISO";
+
+    private static final DateTimeFormatter FALLBACK_FORMAT = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .appendLiteral('T')
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart().appendOffset("+HH:MM", "Z").optionalEnd()
+            .optionalStart().appendOffset("+HHMM", "Z").optionalEnd()
+            .optionalStart().appendOffset("+HH", "Z").optionalEnd()
+            .toFormatter()
+            .withChronology(IsoChronology.INSTANCE)
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private TimestampFormat() {
+    }
+
+    /**
+     * Lê o texto ISO-8601 com fuso horário
+     *
+     * @param text Data e hora em texto
+     * @return Milissegundos desde 1970-01-01T00:00:00Z
+     * @throws TimestampFormatException Se o texto não estiver em um formato aceito
+     */
+    public static long parse(String text) {
+        long millis = parseCanonical(text);
+        if (millis != Long.MIN_VALUE) {
+            return millis;
+        }
+        try {
+            return FALLBACK_FORMAT.parse(text, OffsetDateTime::from).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new TimestampFormatException(INVALID_FORMAT_MESSAGE);
+        }
+    }
+
+    /**
+     * Escreve a data no formato canônico, em UTC (ex.: {@code 2018-04-01T20:38:55.000+0000})
+     *
+     * @param epochMillis Milissegundos desde 1970-01-01T00:00:00Z
+     * @return Data e hora em texto
+     */
+    public static String format(long epochMillis) {
+        long epochDay    = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int  millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+        // Conversão de dias para data civil (algoritmo de Howard Hinnant, "civil_from_days")
+        long z   = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp  = (5 * doy + 2) / 153;
+        int  day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int  mon = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long yr  = yoe + era * 400 + (mon <= 2 ? 1 : 0);
+
+        StringBuilder result = new StringBuilder(28);
+        if (yr < 0 || yr > 9999) {
+            result.append(yr);
+        } else {
+            appendPadded(result, (int) yr, 4);
+        }
+        result.append('-');
+        appendPadded(result, mon, 2);
+        result.append('-');
+        appendPadded(result, day, 2);
+        result.append('T');
+        appendPadded(result, millisOfDay / 3_600_000, 2);
+        result.append(':');
+        appendPadded(result, millisOfDay / 60_000 % 60, 2);
+        result.append(':');
+        appendPadded(result, millisOfDay / 1000 % 60, 2);
+        result.append('.');
+        appendPadded(result, millisOfDay % 1000, 3);
+        return result.append("+0000").toString();
+    }
+
+    private static void appendPadded(StringBuilder result, int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit) {
+                result.append('0');
+            }
+        }
+        result.append(value);
+    }
+
+    /**
+     * Lê o formato canônico diretamente dos caracteres
+     *
+     * @return Milissegundos desde a época, ou {@link Long#MIN_VALUE} se o texto não estiver no formato canônico
+     */
+    static long parseCanonical(String text) {
+        int length = text.length();
+        if (length < 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year   = digits(text, 0, 4);
+        int month  = digits(text, 5, 2);
+        int day    = digits(text, 8, 2);
+        int hour   = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        int millis = 0;
+        int pos    = 19;
+        if (pos < length && text.charAt(pos) == '.') {
+            millis = digits(text, pos + 1, 3);
+            pos += 4;
+            if (pos < length && Character.isDigit(text.charAt(pos))) {
+                return Long.MIN_VALUE;
+            }
+        }
+        if ((year | month | day | hour | minute | second | millis) < 0
+                || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        int offsetSeconds;
+        if (pos == length - 1 && text.charAt(pos) == 'Z') {
+            offsetSeconds = 0;
+        } else if (pos < length && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+            int offsetHours;
+            int offsetMinutes;
+            if (pos + 5 == length) {
+                offsetHours = digits(text, pos + 1, 2);
+                offsetMinutes = digits(text, pos + 3, 2);
+            } else if (pos + 6 == length && text.charAt(pos + 3) == ':') {
+                offsetHours = digits(text, pos + 1, 2);
+                offsetMinutes = digits(text, pos + 4, 2);
+            } else {
+                return Long.MIN_VALUE;
+            }
+            if ((offsetHours | offsetMinutes) < 0 || offsetHours > 18 || offsetMinutes > 59) {
+                return Long.MIN_VALUE;
+            }
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (text.charAt(pos) == '-' ? -1 : 1);
+        } else {
+            return Long.MIN_VALUE;
+        }
+
+        long epochSecond = daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offsetSeconds;
+        return epochSecond * 1000 + millis;
+    }
+
+    /**
+     * @return Valor dos dígitos decimais, ou -1 se algum caractere não for dígito
+     */
+    private static int digits(String text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Conversão de data civil para dias desde a época (algoritmo de Howard Hinnant, "days_from_civil")
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y   = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+}
@@ -1,6 +1,12 @@
 package br.com.xyinc.dyndata;
 
+import br.com.xyinc.dyndata.controller.ServerTimingFilter;
+import br.com.xyinc.dyndata.service.EntityExportService;
+import br.com.xyinc.dyndata.service.EntityManagementService;
+import br.com.xyinc.dyndata.service.JsonOutputService;
 import br.com.xyinc.dyndata.service.MongoService;
+import br.com.xyinc.dyndata.service.TimestampMigrationService;
+import org.bson.json.JsonMode;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -14,7 +20,17 @@ import static org.mockito.Mockito.*;
 public class CommandLineProcessorTest {
 
     @Mock
-    private MongoService mongoService;
+    private MongoService              mongoService;
+    @Mock
+    private EntityManagementService   entityManagementService;
+    @Mock
+    private EntityExportService       entityExportService;
+    @Mock
+    private TimestampMigrationService timestampMigrationService;
+    @Mock
+    private JsonOutputService         jsonOutputService;
+    @Mock
+    private ServerTimingFilter        serverTimingFilter;
 
     @InjectMocks
     @Resource
@@ -30,11 +46,31 @@ public class CommandLineProcessorTest {
         when(mongoService.getDbName()).thenCallRealMethod();
         when(mongoService.getDbUrl()).thenCallRealMethod();
         when(mongoService.getDbPort()).thenCallRealMethod();
+        doCallRealMethod().when(mongoService).setPoolMaxSize(anyInt());
+        doCallRealMethod().when(mongoService).setPoolMaxIdleTime(anyInt());
+        doCallRealMethod().when(mongoService).setSocketTimeout(anyInt());
+        when(mongoService.getPoolMaxSize()).thenCallRealMethod();
+        when(mongoService.getPoolMaxIdleTime()).thenCallRealMethod();
+        when(mongoService.getSocketTimeout()).thenCallRealMethod();
     }
 
     @Test
     public void run_noArgs() {
         commandLineProcessor.run();
+        verify(entityManagementService).loadEntityDescriptors();
+        verify(timestampMigrationService).migrateInBackground();
+    }
+
+    @Test
+    public void run_migrateTimestamps() {
+        commandLineProcessor.run("--migratetimestamps=true", "--migrationbatchsize=100", "--migrationdelay=0");
+        verify(timestampMigrationService).setBatchSize(100);
+        verify(timestampMigrationService).setDelayMillis(0);
+        verify(timestampMigrationService).migrateInBackground();
+
+        reset(timestampMigrationService);
+        commandLineProcessor.run("--migratetimestamps=false");
+        verify(timestampMigrationService, never()).migrateInBackground();
     }
 
     @Test
@@ -49,6 +85,52 @@ public class CommandLineProcessorTest {
     }
 
 
+    @Test
+    public void run_validPoolArgs() {
+        commandLineProcessor.run("--dbpoolsize=50", "--dbidletime=60000", "--dbsockettimeout=30000");
+        assert mongoService.getPoolMaxSize() == 50;
+        assert mongoService.getPoolMaxIdleTime() == 60000;
+        assert mongoService.getSocketTimeout() == 30000;
+    }
+
+    @Test
+    public void run_jsonMode() {
+        commandLineProcessor.run("--jsonmode=extended");
+        verify(jsonOutputService).setJsonMode(JsonMode.EXTENDED);
+    }
+
+    @Test
+    public void run_slowOperationThreshold() {
+        commandLineProcessor.run("--slowopthreshold=250");
+        verify(mongoService).setSlowOperationThreshold(250);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void run_invalidSlowOperationThreshold() {
+        commandLineProcessor.run("--slowopthreshold=-1");
+    }
+
+    @Test
+    public void run_serverTiming() {
+        commandLineProcessor.run("--servertiming=true");
+        verify(serverTimingFilter).setEnabled(true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void run_invalidJsonMode() {
+        commandLineProcessor.run("--jsonmode=pretty");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void run_invalidPoolSize() {
+        commandLineProcessor.run("--dbpoolsize=0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void run_invalidPoolArgString() {
+        commandLineProcessor.run("--dbwaittime=abc");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void run_invalidPortString() {
         commandLineProcessor.run("--dbport=AHSghagdhasdha");
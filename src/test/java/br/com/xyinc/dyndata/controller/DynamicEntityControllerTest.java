@@ -1,25 +1,65 @@
 package br.com.xyinc.dyndata.controller;
 
+import br.com.xyinc.dyndata.model.BulkImportResult;
+import br.com.xyinc.dyndata.model.EntityPage;
 import br.com.xyinc.dyndata.service.DynamicEntityService;
+import br.com.xyinc.dyndata.service.EntityExport;
+import br.com.xyinc.dyndata.service.EntityExportService;
+import br.com.xyinc.dyndata.service.EntityImportService;
+import br.com.xyinc.dyndata.service.JsonOutputService;
+import br.com.xyinc.dyndata.service.MetricsService;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.mockito.Matchers.*;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 public class DynamicEntityControllerTest {
 
     @Mock
     private DynamicEntityService dynamicEntityService;
+    @Mock
+    private EntityImportService  entityImportService;
+    @Mock
+    private EntityExportService  entityExportService;
+    @Spy
+    private JsonOutputService    jsonOutputService = new JsonOutputService();
+    @Spy
+    private MetricsService       metricsService    = new MetricsService();
 
     @InjectMocks
     @Resource
@@ -28,45 +68,246 @@ public class DynamicEntityControllerTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        when(dynamicEntityService.get(anyString(), any())).thenReturn(Optional.empty());
+        when(dynamicEntityService.getJson(anyString(), any())).thenReturn(Optional.empty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoIterable<RawBsonDocument> mockIterable(RawBsonDocument... documents) {
+        MongoIterable<RawBsonDocument> iterable = mock(MongoIterable.class);
+        MongoCursor<RawBsonDocument>   cursor   = mock(MongoCursor.class);
+        Iterator<RawBsonDocument>      it       = Arrays.asList(documents).iterator();
+        when(iterable.iterator()).thenReturn(cursor);
+        when(cursor.hasNext()).thenAnswer(invocation -> it.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> it.next());
+        return iterable;
+    }
+
+    private String writeBody(ResponseEntity response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void listEntities() throws IOException {
+        MongoIterable<RawBsonDocument> empty = mockIterable();
+        when(dynamicEntityService.list(anyString(), any(), any(), any())).thenReturn(empty);
+        assert "[]".equals(writeBody(dynamicEntityController.list("XX", null, null, null, null, new HashMap<>())));
+
+        MongoIterable<RawBsonDocument> documents = mockIterable(RawBsonDocument.parse("{\"A\": 1}"), RawBsonDocument.parse("{\"A\": 2}"));
+        when(dynamicEntityService.list(anyString(), any(), any(), any())).thenReturn(documents);
+        assert "[{ \"A\" : 1 },{ \"A\" : 2 }]".equals(writeBody(dynamicEntityController.list("XX", null, null, null, null, new HashMap<>())));
+    }
+
+    @Test
+    public void listEntities_Ndjson() throws IOException {
+        MongoIterable<RawBsonDocument> documents = mockIterable(RawBsonDocument.parse("{\"A\": 1}"), RawBsonDocument.parse("{\"A\": 2}"));
+        when(dynamicEntityService.list(anyString(), any(), any(), any())).thenReturn(documents);
+        ResponseEntity response = dynamicEntityController.list("XX", "ndjson", null, null, null, new HashMap<>());
+        assert "x-ndjson".equals(response.getHeaders().getContentType().getSubtype());
+        assert "{ \"A\" : 1 }\n{ \"A\" : 2 }\n".equals(writeBody(response));
     }
 
     @Test
-    public void listEntities() {
-        assert "[ ]".equals(dynamicEntityController.list("XX"));
+    @SuppressWarnings("unchecked")
+    public void listEntities_Filters() throws IOException {
+        MongoIterable<RawBsonDocument> empty = mockIterable();
+        when(dynamicEntityService.list(anyString(), any(), any(), any())).thenReturn(empty);
+        Map<String, String> params = new HashMap<>();
+        params.put("format", "ndjson");
+        params.put("name[prefix]", "Jo");
+        dynamicEntityController.list("XX", "ndjson", null, null, null, params);
+        verify(dynamicEntityService).list(eq("XX"), eq(Collections.singletonMap("name[prefix]", "Jo")), any(), any());
     }
 
+    @Test
+    public void listEntities_Page() throws IOException {
+        when(dynamicEntityService.listPage(anyString(), any(), anyInt(), any(), any())).thenReturn(new EntityPage(Arrays.asList(RawBsonDocument.parse("{\"A\": 1}"), RawBsonDocument.parse("{\"A\": 2}")), "token"));
+        ResponseEntity response = dynamicEntityController.list("XX", null, 2, null, null, new HashMap<>());
+        assert "token".equals(response.getHeaders().getFirst("X-Continuation-Token"));
+        assert "[{ \"A\" : 1 },{ \"A\" : 2 }]".equals(writeBody(response));
+
+        when(dynamicEntityService.listPage(anyString(), any(), anyInt(), any(), any())).thenReturn(new EntityPage(Collections.singletonList(RawBsonDocument.parse("{\"A\": 3}")), null));
+        response = dynamicEntityController.list("XX", null, 2, null, "token", new HashMap<>());
+        assert !response.getHeaders().containsKey("X-Continuation-Token");
+
+        when(dynamicEntityService.listPage(anyString(), any(), anyInt(), any(), any())).thenThrow(new IllegalArgumentException("Limite inválido"));
+        response = dynamicEntityController.list("XX", null, 0, null, null, new HashMap<>());
+        assert response.getStatusCodeValue() == 400;
+        Assert.assertEquals("{ \"message\" : \"Limite inválido\" }", writeBody(response));
+    }
+
+    @Test
+    public void listEntities_Mvc() throws Exception {
+        // Passa pela negociação de conteúdo do Spring MVC: o corpo em stream só é aceito com o tipo de retorno declarado
+        MongoIterable<RawBsonDocument> documents = mockIterable(RawBsonDocument.parse("{\"A\": 1}"), RawBsonDocument.parse("{\"A\": 2}"));
+        when(dynamicEntityService.list(anyString(), any(), any(), any())).thenReturn(documents);
+        MockMvc   mockMvc = MockMvcBuilders.standaloneSetup(dynamicEntityController).build();
+        MvcResult result  = mockMvc.perform(get("/XX").accept(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().string("[{ \"A\" : 1 },{ \"A\" : 2 }]"));
+
+        when(dynamicEntityService.listPage(anyString(), any(), anyInt(), any(), any())).thenThrow(new IllegalArgumentException("Limite inválido"));
+        result = mockMvc.perform(get("/XX").param("limit", "0").accept(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("{ \"message\" : \"Limite inválido\" }"));
+    }
 
     @Test
     public void getEntityByName() {
         assert dynamicEntityController.getById("XXX", "id").getStatusCodeValue() == 404;
 
-        when(dynamicEntityService.get(any(), any())).thenReturn(Optional.of(new Document()));
+        when(dynamicEntityService.getJson(any(), any())).thenReturn(Optional.of("{ }".getBytes(StandardCharsets.UTF_8)));
         assert dynamicEntityController.getById("XXX", "id").getStatusCodeValue() == 200;
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void addEntity() {
-        assert dynamicEntityController.create("XXX", new HashMap<>()).getStatusCodeValue() == 201;
+        InputStream body = new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8));
+        assert dynamicEntityController.create("XXX", body).getStatusCodeValue() == 201;
+        verify(dynamicEntityService).create("XXX", body);
 
-        doThrow(IllegalArgumentException.class).when(dynamicEntityService).create(anyString(), anyMap());
-        assert dynamicEntityController.create("XXX", new HashMap<>()).getStatusCodeValue() == 400;
+        doThrow(IllegalArgumentException.class).when(dynamicEntityService).create(anyString(), any(InputStream.class));
+        assert dynamicEntityController.create("XXX", body).getStatusCodeValue() == 400;
 
-        doThrow(IllegalStateException.class).when(dynamicEntityService).create(anyString(), anyMap());
-        assert dynamicEntityController.create("XXX", new HashMap<>()).getStatusCodeValue() == 500;
+        doThrow(IllegalStateException.class).when(dynamicEntityService).create(anyString(), any(InputStream.class));
+        assert dynamicEntityController.create("XXX", body).getStatusCodeValue() == 500;
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void editEntity() {
-        assert dynamicEntityController.update("XXX", new HashMap<>(), "id").getStatusCodeValue() == 204;
+        InputStream body = new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8));
+        assert dynamicEntityController.update("XXX", body, "id").getStatusCodeValue() == 204;
+        verify(dynamicEntityService).update("XXX", body, Collections.singletonList("id"));
+
+        doThrow(IllegalArgumentException.class).when(dynamicEntityService).update(anyString(), any(InputStream.class), anyList());
+        assert dynamicEntityController.update("XXX", body, "id").getStatusCodeValue() == 400;
+
+        doThrow(IllegalStateException.class).when(dynamicEntityService).update(anyString(), any(InputStream.class), anyList());
+        assert dynamicEntityController.update("XXX", body, "id").getStatusCodeValue() == 500;
+    }
 
-        doThrow(IllegalArgumentException.class).when(dynamicEntityService).update(anyString(), anyMap(), anyList());
-        assert dynamicEntityController.update("XXX", new HashMap<>(), "id").getStatusCodeValue() == 400;
+    @Test
+    public void patchEntity() {
+        when(dynamicEntityService.patch(anyString(), anyMap(), anyList())).thenReturn(true);
+        assert dynamicEntityController.patch("XXX", new HashMap<>(), "id").getStatusCodeValue() == 204;
+
+        when(dynamicEntityService.patch(anyString(), anyMap(), anyList())).thenReturn(false);
+        assert dynamicEntityController.patch("XXX", new HashMap<>(), "id").getStatusCodeValue() == 404;
+
+        doThrow(IllegalArgumentException.class).when(dynamicEntityService).patch(anyString(), anyMap(), anyList());
+        assert dynamicEntityController.patch("XXX", new HashMap<>(), "id").getStatusCodeValue() == 400;
+
+        doThrow(IllegalStateException.class).when(dynamicEntityService).patch(anyString(), anyMap(), anyList());
+        assert dynamicEntityController.patch("XXX", new HashMap<>(), "id").getStatusCodeValue() == 500;
+    }
+
+    @Test
+    public void getMany() throws IOException {
+        Map<String, Object> request = new HashMap<>();
+        request.put("ids", Arrays.asList("a/1", Arrays.asList("b", 2), 3));
+        when(dynamicEntityService.getMany("XXX", Arrays.asList(Arrays.asList("a", "1"), Arrays.asList("b", "2"), Collections.singletonList("3"))))
+                .thenReturn(Arrays.asList(new Document("A", "a"), null, new Document("A", "c")));
+
+        ResponseEntity response = dynamicEntityController.getMany("XXX", request);
+        assert response.getStatusCodeValue() == 200;
+        Assert.assertEquals("[{ \"A\" : \"a\" },null,{ \"A\" : \"c\" }]", writeBody(response));
+
+        request.put("ids", "a/1");
+        assert dynamicEntityController.getMany("XXX", request).getStatusCodeValue() == 400;
+        request.put("ids", Collections.singletonList(new HashMap<>()));
+        response = dynamicEntityController.getMany("XXX", request);
+        assert response.getStatusCodeValue() == 400;
+        Assert.assertEquals("{ \"message\" : \"Id inválido: { }\" }", writeBody(response));
+        request.put("ids", Collections.singletonList(Arrays.asList("a", null)));
+        Assert.assertEquals("{ \"message\" : \"Id inválido: [\\\"a\\\", null]\" }", writeBody(dynamicEntityController.getMany("XXX", request)));
+    }
+
+    @Test
+    public void getMany_Mvc() throws Exception {
+        when(dynamicEntityService.getMany("XXX", Arrays.asList(Arrays.asList("a", "1"), Collections.singletonList("2"))))
+                .thenReturn(Arrays.asList(new Document("A", "a"), null));
+        MockMvc   mockMvc = MockMvcBuilders.standaloneSetup(dynamicEntityController).build();
+        MvcResult result  = mockMvc.perform(post("/XXX/_mget").contentType(MediaType.APPLICATION_JSON).content("{\"ids\": [\"a/1\", 2]}")
+                .accept(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().string("[{ \"A\" : \"a\" },null]"));
+
+        result = mockMvc.perform(post("/XXX/_mget").contentType(MediaType.APPLICATION_JSON).content("{\"ids\": \"a/1\"}"))
+                .andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void bulkImport() throws IOException {
+        BulkImportResult result = new BulkImportResult();
+        InputStream      body   = new ByteArrayInputStream(new byte[0]);
+        when(entityImportService.importEntities("XXX", body, 10, true, false)).thenReturn(result);
+        ResponseEntity response = dynamicEntityController.bulkImport("XXX", 10, true, false, body);
+        assert response.getStatusCodeValue() == 200;
+        assert response.getBody() == result;
+
+        doThrow(IllegalArgumentException.class).when(entityImportService).importEntities(anyString(), any(), anyInt(), anyBoolean(), anyBoolean());
+        assert dynamicEntityController.bulkImport("XXX", 10, true, false, body).getStatusCodeValue() == 400;
+
+        doThrow(IllegalStateException.class).when(entityImportService).importEntities(anyString(), any(), anyInt(), anyBoolean(), anyBoolean());
+        assert dynamicEntityController.bulkImport("XXX", 10, true, false, body).getStatusCodeValue() == 500;
+    }
+
+    @Test
+    public void exportEntity() throws IOException {
+        EntityExport export = mock(EntityExport.class);
+        when(export.isCsv()).thenReturn(true);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArguments()[0]).write("A\r\n1\r\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(export).writeTo(any());
+        when(entityExportService.createExport("XXX", "csv", null)).thenReturn(export);
+
+        ResponseEntity response = dynamicEntityController.export("XXX", "csv", false, null);
+        assert response.getStatusCodeValue() == 200;
+        assert "csv".equals(response.getHeaders().getContentType().getSubtype());
+        assert response.getHeaders().getFirst("Content-Disposition").contains("XXX.csv");
+        assert "A\r\n1\r\n".equals(writeBody(response));
+
+        response = dynamicEntityController.export("XXX", "csv", true, null);
+        assert "gzip".equals(response.getHeaders().getFirst("Content-Encoding"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) response.getBody()).writeTo(out);
+        byte[] buffer = new byte[64];
+        int    read   = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).read(buffer);
+        assert "A\r\n1\r\n".equals(new String(buffer, 0, read, StandardCharsets.UTF_8));
+
+        when(entityExportService.createExport(anyString(), anyString(), any())).thenThrow(IllegalArgumentException.class);
+        assert dynamicEntityController.export("XXX", "xml", false, null).getStatusCodeValue() == 400;
+    }
+
+    @Test
+    public void exportEntity_Mvc() throws Exception {
+        EntityExport export = mock(EntityExport.class);
+        when(export.isCsv()).thenReturn(true);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArguments()[0]).write("A\r\n1\r\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(export).writeTo(any());
+        when(entityExportService.createExport("XXX", "csv", null)).thenReturn(export);
+        MockMvc   mockMvc = MockMvcBuilders.standaloneSetup(dynamicEntityController).build();
+        MvcResult result  = mockMvc.perform(get("/XXX/_export").param("format", "csv").accept("text/csv")).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string("A\r\n1\r\n"));
 
-        doThrow(IllegalStateException.class).when(dynamicEntityService).update(anyString(), anyMap(), anyList());
-        assert dynamicEntityController.update("XXX", new HashMap<>(), "id").getStatusCodeValue() == 500;
+        when(entityExportService.createExport("XXX", "xml", null)).thenThrow(new IllegalArgumentException("Formato inválido"));
+        result = mockMvc.perform(get("/XXX/_export").param("format", "xml")).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("{ \"message\" : \"Formato inválido\" }"));
     }
 
     @Test
@@ -1,14 +1,21 @@
 package br.com.xyinc.dyndata.controller;
 
+import br.com.xyinc.dyndata.model.CacheStats;
 import br.com.xyinc.dyndata.service.EntityManagementService;
+import br.com.xyinc.dyndata.service.JsonOutputService;
 import org.bson.Document;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Optional;
 
@@ -21,6 +28,8 @@ public class EntityManagementControllerTest {
 
     @Mock
     private EntityManagementService entityManagementService;
+    @Spy
+    private JsonOutputService       jsonOutputService = new JsonOutputService();
 
     @InjectMocks
     @Resource
@@ -33,8 +42,15 @@ public class EntityManagementControllerTest {
     }
 
     @Test
-    public void listEntities() {
-        assert "[ ]".equals(entityManagementController.listEntities());
+    public void listEntities() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entityManagementController.listEntities().getBody().writeTo(out);
+        assert "[]".equals(new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        when(entityManagementService.listEntities()).thenReturn(Collections.singletonList(new Document("uriName", "aaa")));
+        out.reset();
+        entityManagementController.listEntities().getBody().writeTo(out);
+        assert "[{ \"uriName\" : \"aaa\" }]".equals(new String(out.toByteArray(), StandardCharsets.UTF_8));
     }
 
 
@@ -46,6 +62,15 @@ public class EntityManagementControllerTest {
         assert entityManagementController.getEntityByName("aaa").getStatusCodeValue() == 200;
     }
 
+    @Test
+    public void getCacheStats() {
+        when(entityManagementService.getCacheStats("aaa")).thenReturn(CacheStats.disabled());
+        assert entityManagementController.getCacheStats("aaa").getStatusCodeValue() == 200;
+
+        when(entityManagementService.getCacheStats("bbb")).thenThrow(IllegalArgumentException.class);
+        assert entityManagementController.getCacheStats("bbb").getStatusCodeValue() == 400;
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void addEntity() {
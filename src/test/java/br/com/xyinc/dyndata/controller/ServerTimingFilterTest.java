@@ -0,0 +1,85 @@
+package br.com.xyinc.dyndata.controller;
+
+import br.com.xyinc.dyndata.service.MetricsService;
+import br.com.xyinc.dyndata.service.ServerTiming;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class ServerTimingFilterTest {
+
+    private final ServerTimingFilter serverTimingFilter = new ServerTimingFilter();
+    private final MetricsService     metricsService     = new MetricsService();
+
+    @Before
+    public void setUp() {
+        serverTimingFilter.setEnabled(true);
+    }
+
+    private HttpServletResponse execute(FilterChain chain) throws Exception {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
+        serverTimingFilter.doFilter(mock(HttpServletRequest.class), response, chain);
+        return response;
+    }
+
+    private String getHeader(HttpServletResponse response) {
+        ArgumentCaptor<String> header = ArgumentCaptor.forClass(String.class);
+        verify(response).setHeader(eq(ServerTiming.HEADER), header.capture());
+        return header.getValue();
+    }
+
+    @Test
+    public void header_BeforeBody() throws Exception {
+        HttpServletResponse response = execute((req, resp) -> {
+            metricsService.recordStage("produto", MetricsService.Stages.DESCRIPTOR, metricsService.start() - 2_000_000);
+            ServerTiming.record(ServerTiming.MONGO, 1_500_000);
+            ServerTiming.record(ServerTiming.MONGO, 500_000);
+            resp.getOutputStream().write('{');
+            // Depois do início do corpo, as etapas não entram mais no cabeçalho
+            ServerTiming.record(MetricsService.Stages.SERIALIZATION, 1_000_000);
+            resp.getOutputStream().write('}');
+        });
+        String header = getHeader(response);
+        assert header.matches("descriptor;dur=2\\.\\d{3}, mongo;dur=2\\.000, total;dur=\\d+\\.\\d{3}") : header;
+    }
+
+    @Test
+    public void header_NoBody() throws Exception {
+        HttpServletResponse response = execute((req, resp) -> ServerTiming.record(MetricsService.Stages.CONVERSION, 1_000_000));
+        assert getHeader(response).startsWith("conversion;dur=1.000, total;dur=");
+    }
+
+    @Test
+    public void header_NoStages() throws Exception {
+        verify(execute((req, resp) -> resp.getOutputStream().write('1')), never()).setHeader(anyString(), anyString());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        serverTimingFilter.setEnabled(false);
+        HttpServletResponse response = execute((req, resp) -> {
+            ServerTiming.record(ServerTiming.MONGO, 1_000_000);
+            resp.getOutputStream().write('1');
+        });
+        verify(response, never()).setHeader(anyString(), anyString());
+    }
+
+    @Test
+    public void outsideRequest() {
+        // Etapas executadas fora de uma requisição (ex.: exportação em outra thread) são ignoradas
+        ServerTiming.record(ServerTiming.MONGO, 1_000_000);
+        ServerTiming timing = ServerTiming.begin();
+        ServerTiming.end();
+        ServerTiming.record(ServerTiming.MONGO, 1_000_000);
+        assert !timing.hasStages();
+    }
+}
@@ -0,0 +1,113 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.CacheStats;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class DocumentCacheTest {
+
+    private static List<BsonValue> key(int value) {
+        return Collections.singletonList(new BsonInt32(value));
+    }
+
+    @Test
+    public void getAndPut() {
+        DocumentCache cache = new DocumentCache(10, 0);
+        assert cache.get(key(1)) == null;
+        cache.put(key(1), new byte[]{1}, cache.getStamp());
+        assert cache.get(key(1))[0] == 1;
+
+        CacheStats stats = cache.getStats();
+        assert stats.isEnabled();
+        assert stats.getSize() == 1;
+        assert stats.getHits() == 1;
+        assert stats.getMisses() == 1;
+    }
+
+    @Test
+    public void leastRecentlyUsedEviction() {
+        DocumentCache cache = new DocumentCache(2, 0);
+        cache.put(key(1), new byte[]{1}, cache.getStamp());
+        cache.put(key(2), new byte[]{2}, cache.getStamp());
+        cache.get(key(1));
+        cache.put(key(3), new byte[]{3}, cache.getStamp());
+
+        assert cache.get(key(1)) != null;
+        assert cache.get(key(2)) == null;
+        assert cache.get(key(3)) != null;
+        assert cache.getStats().getEvictions() == 1;
+    }
+
+    @Test
+    public void expiration() throws InterruptedException {
+        DocumentCache cache = new DocumentCache(10, 1);
+        cache.put(key(1), new byte[]{1}, cache.getStamp());
+        Thread.sleep(1100);
+        assert cache.get(key(1)) == null;
+        assert cache.size() == 0;
+        assert cache.getStats().getEvictions() == 1;
+    }
+
+    @Test
+    public void invalidate() {
+        DocumentCache cache = new DocumentCache(10, 0);
+        cache.put(key(1), new byte[]{1}, cache.getStamp());
+        cache.put(key(2), new byte[]{2}, cache.getStamp());
+        cache.invalidate(key(1));
+        assert cache.get(key(1)) == null;
+        assert cache.get(key(2)) != null;
+
+        cache.invalidateAll();
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void putAfterInvalidationIgnored() {
+        DocumentCache cache = new DocumentCache(10, 0);
+        long          stamp = cache.getStamp();
+        cache.invalidate(key(1));
+        cache.put(key(1), new byte[]{1}, stamp);
+        assert cache.get(key(1)) == null;
+    }
+
+    @Test
+    public void putAfterOtherKeyInvalidation() {
+        DocumentCache cache = new DocumentCache(2, 0);
+        long          stamp = cache.getStamp();
+        cache.invalidate(key(2));
+        cache.put(key(1), new byte[]{1}, stamp);
+        assert cache.get(key(1)) != null;
+
+        stamp = cache.getStamp();
+        cache.invalidate(key(1));
+        cache.put(key(1), new byte[]{1}, stamp);
+        cache.put(key(2), new byte[]{2}, stamp);
+        assert cache.get(key(1)) == null;
+        assert cache.get(key(2)) != null;
+
+        stamp = cache.getStamp();
+        cache.invalidateAll();
+        cache.put(key(2), new byte[]{2}, stamp);
+        assert cache.get(key(2)) == null;
+    }
+
+    @Test
+    public void putAfterForgottenInvalidationIgnored() {
+        DocumentCache cache = new DocumentCache(2, 0);
+        long          stamp = cache.getStamp();
+        cache.invalidate(key(1));
+        cache.invalidate(key(2));
+        cache.invalidate(key(3));
+        cache.put(key(1), new byte[]{1}, stamp);
+        cache.put(key(4), new byte[]{4}, stamp);
+        assert cache.get(key(1)) == null;
+        assert cache.get(key(4)) == null;
+
+        cache.put(key(4), new byte[]{4}, cache.getStamp());
+        assert cache.get(key(4)) != null;
+    }
+}
@@ -1,21 +1,45 @@
 package br.com.xyinc.dyndata.service;
 
+import br.com.xyinc.dyndata.exception.EntityKeyException;
 import br.com.xyinc.dyndata.model.EntityDescriptor;
+import com.mongodb.client.MongoIterable;
+import org.bson.BsonInt32;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DynamicEntityServiceTest {
@@ -24,6 +48,10 @@ public class DynamicEntityServiceTest {
     private EntityManagementService entityManagementService;
     @Mock
     private EntityOperationService  entityOperationService;
+    @Spy
+    private JsonOutputService       jsonOutputService = new JsonOutputService();
+    @Spy
+    private MetricsService          metricsService    = new MetricsService();
 
     @InjectMocks
     @Resource
@@ -44,12 +72,46 @@ public class DynamicEntityServiceTest {
     @Test(expected = IllegalArgumentException.class)
     public void listEntities_InvalidEntity() {
         when(entityManagementService.findEntityDescriptor(any())).thenReturn(null);
-        dynamicEntityService.list("XXX");
+        dynamicEntityService.list("XXX", null, null, null);
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void listEntities() {
-        assert dynamicEntityService.list("XXX").isEmpty();
+        MongoIterable<RawBsonDocument> documents = mock(MongoIterable.class);
+        when(entityOperationService.find(any(), any())).thenReturn(documents);
+        assert dynamicEntityService.list("XXX", null, null, null) == documents;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listEntities_Sorted() {
+        MongoIterable<RawBsonDocument> documents = mock(MongoIterable.class);
+        when(entityOperationService.find(any(), any(), any(), anyInt())).thenReturn(documents);
+        assert dynamicEntityService.list("XXX", null, "desc", null) == documents;
+        verify(entityOperationService).getKeySort(any(), eq(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void listEntities_InvalidSort() {
+        dynamicEntityService.list("XXX", null, "sideways", null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void listPage() {
+        MongoIterable<RawBsonDocument> documents = mock(MongoIterable.class);
+        when(documents.into(any())).thenReturn(new ArrayList<>(Arrays.asList(RawBsonDocument.parse("{\"A\": 1}"), RawBsonDocument.parse("{\"A\": 2}"))));
+        when(entityOperationService.find(any(), any(), any(), anyInt())).thenReturn(documents);
+        when(entityOperationService.getContinuationToken(any(), any())).thenReturn("token");
+
+        assert "token".equals(dynamicEntityService.listPage("XXX", null, 2, null, null).getContinuationToken());
+        assert dynamicEntityService.listPage("XXX", null, 3, null, null).getContinuationToken() == null;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void listPage_InvalidLimit() {
+        dynamicEntityService.listPage("XXX", null, DynamicEntityService.MAX_PAGE_SIZE + 1, null, null);
     }
 
     @Test
@@ -58,29 +120,133 @@ public class DynamicEntityServiceTest {
     }
 
     @Test
-    public void create_OK() {
-        dynamicEntityService.create("XXX", new HashMap<>());
+    public void getMany() {
+        List<List<String>> ids = Collections.singletonList(Collections.singletonList("1"));
+        dynamicEntityService.getMany("XXX", ids);
+        verify(entityOperationService).getMany(any(EntityDescriptor.class), eq(ids));
     }
 
     @Test(expected = IllegalArgumentException.class)
+    public void getMany_TooManyIds() {
+        dynamicEntityService.getMany("XXX", Collections.nCopies(DynamicEntityService.MAX_MGET_SIZE + 1, Collections.singletonList("1")));
+    }
+
+    @Test
+    public void getJson_WithoutCache() {
+        when(entityOperationService.get(any(), any())).thenReturn(Optional.of(RawBsonDocument.parse("{\"A\": 1}")));
+        assert "{ \"A\" : 1 }".equals(new String(dynamicEntityService.getJson("XXX", Collections.singletonList("1")).get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void getJson_Cached() {
+        EntityDescriptor ed = new EntityDescriptor();
+        ed.setKeys(Collections.singletonList("A"));
+        ed.setCacheMaxEntries(10);
+        when(entityManagementService.findEntityDescriptor(any())).thenReturn(ed);
+        when(entityOperationService.getCanonicalKey(any(), anyList())).thenReturn(Collections.singletonList(new BsonInt32(1)));
+        when(entityOperationService.get(any(), any())).thenReturn(Optional.of(RawBsonDocument.parse("{\"A\": 1}")));
+
+        assert dynamicEntityService.getJson("XXX", Collections.singletonList("1")).isPresent();
+        assert dynamicEntityService.getJson("XXX", Collections.singletonList("1")).isPresent();
+        verify(entityOperationService, times(1)).get(any(), any());
+
+        dynamicEntityService.patch("XXX", new HashMap<>(), Collections.singletonList("1"));
+        assert dynamicEntityService.getJson("XXX", Collections.singletonList("1")).isPresent();
+        verify(entityOperationService, times(2)).get(any(), any());
+        assert DocumentCache.of(ed).getStats().getHits() == 1;
+        assert DocumentCache.of(ed).getStats().getMisses() == 2;
+    }
+
+    @Test
+    public void getJson_InvalidateEntity() throws Exception {
+        EntityDescriptor ed = new EntityDescriptor();
+        ed.setKeys(Collections.singletonList("A"));
+        ed.setCacheMaxEntries(10);
+        when(entityManagementService.findEntityDescriptor(any())).thenReturn(ed);
+        when(entityOperationService.getCanonicalKey(any(), anyList())).thenReturn(Collections.singletonList(new BsonInt32(1)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger  reads   = new AtomicInteger();
+        when(entityOperationService.get(any(), any())).thenAnswer(invocation -> {
+            if (reads.incrementAndGet() == 1) {
+                // Primeira leitura fica em andamento até a entidade ser invalidada
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return Optional.of(RawBsonDocument.parse("{\"A\": " + reads.get() + "}"));
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Optional<byte[]>> first = executor.submit(() -> dynamicEntityService.getJson("XXX", Collections.singletonList("1")));
+            assert started.await(5, TimeUnit.SECONDS);
+            dynamicEntityService.invalidateEntity(ed);
+            // A leitura seguinte não se junta à leitura em andamento, anterior à invalidação
+            assert "{ \"A\" : 2 }".equals(new String(dynamicEntityService.getJson("XXX", Collections.singletonList("1")).get(), StandardCharsets.UTF_8));
+            release.countDown();
+            assert first.get(5, TimeUnit.SECONDS).isPresent();
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(entityOperationService, times(2)).get(any(), any());
+        // A leitura anterior à invalidação não repovoa o cache
+        assert "{ \"A\" : 2 }".equals(new String(dynamicEntityService.getJson("XXX", Collections.singletonList("1")).get(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void getJson_NotFoundNotCached() {
+        EntityDescriptor ed = new EntityDescriptor();
+        ed.setKeys(Collections.singletonList("A"));
+        ed.setCacheMaxEntries(10);
+        when(entityManagementService.findEntityDescriptor(any())).thenReturn(ed);
+        when(entityOperationService.getCanonicalKey(any(), anyList())).thenReturn(Collections.singletonList(new BsonInt32(1)));
+
+        assert !dynamicEntityService.getJson("XXX", Collections.singletonList("1")).isPresent();
+        assert DocumentCache.of(ed).size() == 0;
+    }
+
+    @Test
+    public void create_OK() {
+        InputStream     body     = toStream("{}");
+        RawBsonDocument document = RawBsonDocument.parse("{\"A\": 1}");
+        when(entityOperationService.parseDocument(any(), eq(body))).thenReturn(document);
+        dynamicEntityService.create("XXX", body);
+        verify(entityOperationService).insertOne(any(EntityDescriptor.class), eq(document));
+        verify(metricsService).recordDocumentSize(any(), eq(MetricsService.Directions.WRITE), eq(document));
+        verify(entityOperationService, never()).query(any(), any());
+    }
+
+    @Test(expected = EntityKeyException.class)
     public void create_NOK() {
-        when(entityOperationService.query(any(), any())).thenReturn(Collections.singletonList(new Document()));
-        dynamicEntityService.create("XXX", new HashMap<>());
+        when(entityOperationService.parseDocument(any(), any())).thenReturn(RawBsonDocument.parse("{\"A\": 1}"));
+        doThrow(new EntityKeyException("Chave de entidade já cadastrada!")).when(entityOperationService).insertOne(any(), any());
+        dynamicEntityService.create("XXX", toStream("{}"));
     }
 
     @Test
     public void update_OK() {
-        Document current = new Document();
-        current.put("A", 15);
-        when(entityOperationService.query(any(), any())).thenReturn(Collections.singletonList(current));
-        HashMap<String, Object> map = new HashMap<>();
-        dynamicEntityService.update("XXX", map, new ArrayList<>());
-        assert map.get("A").equals(current.get("A"));
+        InputStream     body     = toStream("{}");
+        RawBsonDocument document = RawBsonDocument.parse("{\"A\": 15}");
+        when(entityOperationService.parseDocument(any(), eq(body), anyList())).thenReturn(document);
+        when(entityOperationService.replaceOne(any(), eq(document))).thenReturn(true);
+        dynamicEntityService.update("XXX", body, Collections.singletonList("15"));
+        verify(entityOperationService).replaceOne(any(EntityDescriptor.class), eq(document));
+        verify(entityOperationService, never()).query(any(), any());
+    }
+
+    @Test
+    public void patch() {
+        HashMap<String, Object> data = new HashMap<>();
+        when(entityOperationService.updateOne(any(), any(), any())).thenReturn(true);
+        assert dynamicEntityService.patch("XXX", data, Collections.singletonList("1"));
+        verify(entityOperationService).updateOne(any(EntityDescriptor.class), eq(Collections.singletonList("1")), eq(data));
+        verify(entityOperationService, never()).query(any(), any());
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void update_NOK() {
-        dynamicEntityService.update("XXX", new HashMap<>(), new ArrayList<>());
+        when(entityOperationService.parseDocument(any(), any(), anyList())).thenReturn(RawBsonDocument.parse("{\"A\": 1}"));
+        dynamicEntityService.update("XXX", toStream("{}"), new ArrayList<>());
     }
 
     @Test
@@ -94,4 +260,7 @@ public class DynamicEntityServiceTest {
         dynamicEntityService.delete("XXX", new ArrayList<>());
     }
 
-}
\ No newline at end of file
+    private InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
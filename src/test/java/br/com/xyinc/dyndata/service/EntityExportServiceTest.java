@@ -0,0 +1,60 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.annotation.Resource;
+
+import static org.mockito.Mockito.when;
+
+public class EntityExportServiceTest {
+
+    @Mock
+    private EntityManagementService entityManagementService;
+    @Mock
+    private EntityOperationService  entityOperationService;
+    @Mock
+    private MongoService            mongoService;
+    @InjectMocks
+    @Resource
+    private EntityExportService     entityExportService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(entityManagementService.findEntityDescriptor("XXX")).thenReturn(new EntityDescriptor());
+    }
+
+    @After
+    public void tearDown() {
+        entityExportService.close();
+    }
+
+    @Test
+    public void createExport() {
+        assert !entityExportService.createExport("XXX", EntityExport.FORMAT_NDJSON, null).isCsv();
+        assert entityExportService.createExport("XXX", EntityExport.FORMAT_CSV, 2).isCsv();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createExport_InvalidFormat() {
+        entityExportService.createExport("XXX", "xml", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createExport_InvalidParallelism() {
+        entityExportService.setExportThreads(2);
+        entityExportService.createExport("XXX", EntityExport.FORMAT_NDJSON, 3);
+    }
+
+    @Test
+    public void createExport_DefaultParallelismLimitedToPool() {
+        entityExportService.setExportThreads(1);
+        entityExportService.createExport("XXX", EntityExport.FORMAT_NDJSON, null);
+    }
+}
@@ -0,0 +1,150 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EntityExportTest {
+
+    private MongoService     mongoService;
+    private ExecutorService  executor;
+    private EntityDescriptor descriptor;
+
+    @Before
+    public void setUp() {
+        mongoService = mock(MongoService.class);
+        executor = Executors.newFixedThreadPool(4);
+        descriptor = new EntityDescriptor();
+        descriptor.setUriName("XXX");
+        descriptor.setFields(Arrays.asList(
+                new FieldDescriptor("A", FieldTypeService.DefaultFieldTypes.STRING, true),
+                new FieldDescriptor("B", FieldTypeService.DefaultFieldTypes.DECIMAL, true),
+                new FieldDescriptor("C", FieldTypeService.DefaultFieldTypes.STRING_ARR, true),
+                new FieldDescriptor("D", FieldTypeService.DefaultFieldTypes.DOCUMENT, true)
+        ));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private final <T> MongoIterable<T> mockIterable(T... documents) {
+        MongoIterable<T> iterable = mock(MongoIterable.class);
+        MongoCursor<T>   cursor   = mock(MongoCursor.class);
+        Iterator<T>      it       = Arrays.asList(documents).iterator();
+        when(iterable.iterator()).thenReturn(cursor);
+        when(iterable.first()).thenReturn(documents.length == 0 ? null : documents[0]);
+        when(cursor.hasNext()).thenAnswer(invocation -> it.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> it.next());
+        return iterable;
+    }
+
+    private void mockBoundaries(Object first, Object last) {
+        MongoIterable<Document> firstIterable = mockIterable(new Document("_id", first));
+        MongoIterable<Document> lastIterable  = mockIterable(new Document("_id", last));
+        when(mongoService.find(anyString(), any(), any(), any(), eq(1))).thenAnswer(invocation -> {
+            BsonDocument sort = ((Bson) invocation.getArguments()[3]).toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+            return sort.getInt32("_id").getValue() > 0 ? firstIterable : lastIterable;
+        });
+    }
+
+    private String write(EntityExport export) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export.writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void toObjectId() {
+        ObjectId id = EntityExport.toObjectId(1522615135L);
+        assert id.getTimestamp() == 1522615135;
+        assert id.compareTo(new ObjectId(new java.util.Date(1522615135000L))) < 0;
+    }
+
+    @Test
+    public void getRanges_ObjectIds() {
+        mockBoundaries(EntityExport.toObjectId(1000), EntityExport.toObjectId(1099));
+        List<Bson> ranges = new EntityExport(mongoService, new JsonOutputService(), executor, descriptor, null, EntityExport.FORMAT_NDJSON, 2).getRanges();
+
+        assert ranges.size() == 2 * EntityExport.RANGES_PER_WORKER;
+        Assert.assertEquals(BsonDocument.parse("{\"_id\": {\"$lt\": {\"$oid\": \"" + EntityExport.toObjectId(1012).toHexString() + "\"}}}"), toBson(ranges.get(0)));
+        Assert.assertEquals(BsonDocument.parse("{\"_id\": {\"$gte\": {\"$oid\": \"" + EntityExport.toObjectId(1087).toHexString() + "\"}}}"), toBson(ranges.get(ranges.size() - 1)));
+    }
+
+    @Test
+    public void getRanges_SingleRange() {
+        mockBoundaries("a", "b");
+        assert new EntityExport(mongoService, new JsonOutputService(), executor, descriptor, null, EntityExport.FORMAT_NDJSON, 2).getRanges().equals(Collections.singletonList(new Document()));
+
+        mockBoundaries(EntityExport.toObjectId(1000), EntityExport.toObjectId(1000));
+        assert new EntityExport(mongoService, new JsonOutputService(), executor, descriptor, null, EntityExport.FORMAT_NDJSON, 2).getRanges().equals(Collections.singletonList(new Document()));
+    }
+
+    private BsonDocument toBson(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+    }
+
+    @Test
+    public void writeTo_Ndjson() throws IOException {
+        mockBoundaries("a", "b");
+        MongoIterable<RawBsonDocument> documents = mockIterable(RawBsonDocument.parse("{\"A\": \"x\", \"D\": {\"$date\": 1522615135000}}"), RawBsonDocument.parse("{\"A\": \"y\"}"));
+        when(mongoService.findRaw(anyString(), any(), any(), any(), anyInt())).thenReturn(documents);
+
+        String result = write(new EntityExport(mongoService, new JsonOutputService(), executor, descriptor, null, EntityExport.FORMAT_NDJSON, 2));
+        Assert.assertEquals("{ \"A\" : \"x\", \"D\" : { \"$date\" : \"2018-04-01T20:38:55Z\" } }\n{ \"A\" : \"y\" }\n", result);
+    }
+
+    @Test
+    public void writeTo_Csv() throws IOException {
+        mockBoundaries("a", "b");
+        Document first = new Document("A", "com, vírgula e \"aspas\"").append("B", new Decimal128(new BigDecimal("10.50"))).append("C", Arrays.asList("a", 2L))
+                .append("D", new Document("E", new Date(1522615135000L)));
+        Document second = new Document("B", new Decimal128(new BigDecimal("1")));
+        MongoIterable<Document> documents = mockIterable(first, second);
+        when(mongoService.find(anyString(), any(), any())).thenReturn(documents);
+
+        String result = write(new EntityExport(mongoService, new JsonOutputService(), executor, descriptor, null, EntityExport.FORMAT_CSV, 1));
+        Assert.assertEquals("A,B,C,D\r\n\"com, vírgula e \"\"aspas\"\"\",10.50,\"[\"\"a\"\", 2]\",\"{ \"\"E\"\" : { \"\"$date\"\" : \"\"2018-04-01T20:38:55Z\"\" } }\"\r\n,1,,\r\n", result);
+    }
+
+    @Test(expected = IOException.class)
+    public void writeTo_Failure() throws IOException {
+        mockBoundaries("a", "b");
+        when(mongoService.findRaw(anyString(), any(), any(), any(), anyInt())).thenThrow(new IllegalStateException("falha"));
+        write(new EntityExport(mongoService, new JsonOutputService(), executor, descriptor, null, EntityExport.FORMAT_NDJSON, 2));
+    }
+}
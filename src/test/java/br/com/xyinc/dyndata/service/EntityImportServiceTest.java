@@ -0,0 +1,173 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.exception.FieldValidationException;
+import br.com.xyinc.dyndata.model.BulkImportResult;
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class EntityImportServiceTest {
+
+    @Mock
+    private EntityManagementService entityManagementService;
+    @Mock
+    private FieldTypeService        fieldTypeService;
+    @Mock
+    private MongoService            mongoService;
+    @Mock
+    private DynamicEntityService    dynamicEntityService;
+    @InjectMocks
+    @Resource
+    private EntityImportService     entityImportService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setUriName("XXX");
+        descriptor.setKeys(Collections.singletonList("A"));
+        when(entityManagementService.findEntityDescriptor("XXX")).thenReturn(descriptor);
+        when(fieldTypeService.toDocument(any(EntityDescriptor.class), anyMap())).thenAnswer(invocation -> {
+            Map<String, Object> values = (Map<String, Object>) invocation.getArguments()[1];
+            if (values.containsKey("invalido")) {
+                throw new FieldValidationException("Campo inválido!");
+            }
+            return new Document(values);
+        });
+        when(mongoService.callBulkWrite(anyString(), anyList(), anyBoolean())).thenAnswer(invocation -> {
+            List<?> models = (List<?>) invocation.getArguments()[1];
+            return BulkWriteResult.acknowledged(models.size(), 0, 0, 0, Collections.emptyList());
+        });
+    }
+
+    private InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importEntities_Ndjson() throws IOException {
+        BulkImportResult result = entityImportService.importEntities("XXX", body("{\"A\":1}\n{\"A\":2}\n{\"invalido\":true}\n10\n{\"A\":3}\n"), 2, false, false);
+        assert result.getReceived() == 5;
+        assert result.getWritten() == 3;
+        assert result.getFailed() == 2;
+        assert !result.isAborted();
+        Assert.assertEquals(3, result.getErrors().get(0).getLine());
+        Assert.assertEquals("Campo inválido!", result.getErrors().get(0).getMessage());
+        Assert.assertEquals(4, result.getErrors().get(1).getLine());
+
+        ArgumentCaptor<List> models = ArgumentCaptor.forClass(List.class);
+        verify(mongoService, times(2)).callBulkWrite(eq("dyn.XXX"), models.capture(), eq(false));
+        assert models.getAllValues().get(0).get(0) instanceof InsertOneModel;
+        verify(dynamicEntityService, times(2)).invalidateEntity(any(EntityDescriptor.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importEntities_TypeMismatch() throws IOException {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setUriName("tipos");
+        descriptor.setKeys(Collections.singletonList("A"));
+        descriptor.setFields(Arrays.asList(new FieldDescriptor("A", FieldTypeService.DefaultFieldTypes.LONG, false),
+                new FieldDescriptor("ativo", FieldTypeService.DefaultFieldTypes.BOOLEAN, true)));
+        when(entityManagementService.findEntityDescriptor("tipos")).thenReturn(descriptor);
+        FieldTypeService converter = new FieldTypeService();
+        when(fieldTypeService.toDocument(eq(descriptor), anyMap()))
+                .thenAnswer(invocation -> converter.toDocument(descriptor, (Map<String, Object>) invocation.getArguments()[1]));
+
+        BulkImportResult result = entityImportService.importEntities("tipos", body("{\"A\":1,\"ativo\":true}\n{\"A\":2,\"ativo\":5}\n{\"A\":3,\"ativo\":false}\n"), 10, true, false);
+        assert result.getReceived() == 3;
+        assert result.getWritten() == 2;
+        assert result.getFailed() == 1;
+        assert !result.isAborted();
+        Assert.assertEquals(2, result.getErrors().get(0).getLine());
+        assert result.getErrors().get(0).getMessage().startsWith("[ativo] ") : result.getErrors().get(0).getMessage();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importEntities_ArrayUpsert() throws IOException {
+        BulkImportResult result = entityImportService.importEntities("XXX", body("[\n{\"A\":1},\n{\"A\":2}\n]"), 10, true, true);
+        assert result.getReceived() == 2;
+        assert result.getFailed() == 0;
+
+        ArgumentCaptor<List> models = ArgumentCaptor.forClass(List.class);
+        verify(mongoService, times(1)).callBulkWrite(eq("dyn.XXX"), models.capture(), eq(true));
+        List<WriteModel<Document>> written = models.getValue();
+        assert written.size() == 2;
+        ReplaceOneModel<Document> replace = (ReplaceOneModel<Document>) written.get(1);
+        assert replace.getOptions().isUpsert();
+        Assert.assertEquals(BsonDocument.parse("{\"A\": 2}"), replace.getFilter().toBsonDocument(BsonDocument.class, com.mongodb.MongoClient.getDefaultCodecRegistry()));
+    }
+
+    @Test
+    public void importEntities_WriteErrors() throws IOException {
+        MongoBulkWriteException error = new MongoBulkWriteException(BulkWriteResult.acknowledged(1, 0, 0, 0, Collections.emptyList()),
+                Collections.singletonList(new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1)), null, new ServerAddress());
+        doThrow(error).when(mongoService).callBulkWrite(anyString(), anyList(), anyBoolean());
+
+        BulkImportResult result = entityImportService.importEntities("XXX", body("{\"A\":1}\n{\"A\":1}\n{\"A\":2}\n{\"A\":3}\n"), 2, true, false);
+        assert result.isAborted();
+        assert result.getWritten() == 1;
+        assert result.getFailed() == 1;
+        Assert.assertEquals(2, result.getErrors().get(0).getLine());
+        Assert.assertEquals("Chave de entidade já cadastrada!", result.getErrors().get(0).getMessage());
+        verify(mongoService, times(1)).callBulkWrite(anyString(), anyList(), anyBoolean());
+    }
+
+    @Test
+    public void importEntities_MalformedJson() throws IOException {
+        BulkImportResult result = entityImportService.importEntities("XXX", body("{\"A\":1}\n{\"A\":\n"), 10, false, false);
+        assert result.isAborted();
+        assert result.getWritten() == 1;
+        assert result.getFailed() == 1;
+        verify(mongoService, times(1)).callBulkWrite(anyString(), anyList(), anyBoolean());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void importEntities_InvalidBatchSize() throws IOException {
+        entityImportService.importEntities("XXX", body(""), 0, false, false);
+    }
+
+    @Test
+    public void importEntities_ErrorsTruncated() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < BulkImportResult.MAX_REPORTED_ERRORS + 5; i++) {
+            content.append("{\"invalido\":true}\n");
+        }
+        BulkImportResult result = entityImportService.importEntities("XXX", body(content.toString()), 10, false, false);
+        assert result.getFailed() == BulkImportResult.MAX_REPORTED_ERRORS + 5;
+        assert result.getErrors().size() == BulkImportResult.MAX_REPORTED_ERRORS;
+        assert result.isErrorsTruncated();
+        verify(mongoService, never()).callBulkWrite(anyString(), anyList(), anyBoolean());
+    }
+}
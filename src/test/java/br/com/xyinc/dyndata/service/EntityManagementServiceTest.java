@@ -6,10 +6,14 @@ import br.com.xyinc.dyndata.model.FieldDescriptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.MapType;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.mongodb.client.model.IndexModel;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -20,6 +24,12 @@ import java.util.*;
 
 import static br.com.xyinc.dyndata.service.EntityManagementService.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class EntityManagementServiceTest {
@@ -28,6 +38,8 @@ public class EntityManagementServiceTest {
     private EntityOperationService entityOperationService;
     @Mock
     private FieldTypeService       fieldTypeService;
+    @Mock
+    private MongoService           mongoService;
 
     @InjectMocks
     @Resource
@@ -75,6 +87,31 @@ public class EntityManagementServiceTest {
         assert "DDDD".equals(ed.getKeys().get(0));
     }
 
+    @Test
+    public void findEntityDescriptor_Cached() {
+        mockToValidEntityDescriptor();
+        EntityDescriptor ed = entityManagementService.findEntityDescriptor("XXXX");
+        assert ed == entityManagementService.findEntityDescriptor("XXXX");
+        verify(entityOperationService, times(1)).query(any(EntityDescriptor.class), any(Bson.class));
+    }
+
+    @Test
+    public void findEntityDescriptor_InvalidatedOnDelete() {
+        mockToValidEntityDescriptor();
+        EntityDescriptor ed = entityManagementService.findEntityDescriptor("XXXX");
+        entityManagementService.deleteEntity("XXXX");
+        assert ed != entityManagementService.findEntityDescriptor("XXXX");
+    }
+
+    @Test
+    public void loadEntityDescriptors() {
+        mockToValidEntityDescriptor();
+        entityManagementService.loadEntityDescriptors();
+        EntityDescriptor ed = entityManagementService.findEntityDescriptor("AAAA");
+        assert "BBBB".equals(ed.getEntityName());
+        verify(entityOperationService, times(1)).query(any(EntityDescriptor.class), any(Bson.class));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void findEntityDescriptor_Null() {
         entityManagementService.findEntityDescriptor("XXXX");
@@ -101,6 +138,173 @@ public class EntityManagementServiceTest {
         data.put(FIELDS_FIELD_NAME, getFieldDescriptorLong());
         data.put(SEQ_FIELD_NAME, "teste");
 
+        entityManagementService.createEntity(data);
+        verify(mongoService).ensureKeyIndex(DEFAULT_COLLECTION_PREFIX + "any", Collections.singletonList("teste"));
+    }
+
+    @Test
+    public void createEntity_DuplicatedKeysInCollection() {
+        doThrow(new EntityKeyException("")).when(mongoService).ensureKeyIndex(any(), any());
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, getFieldDescriptorLong());
+
+        try {
+            entityManagementService.createEntity(data);
+            Assert.fail();
+        } catch (EntityKeyException e) {
+            // esperado
+        }
+        InOrder inOrder = inOrder(entityOperationService, mongoService);
+        inOrder.verify(entityOperationService).replaceOne(any(EntityDescriptor.class), eq(data));
+        inOrder.verify(mongoService).ensureKeyIndex(DEFAULT_COLLECTION_PREFIX + "any", Collections.singletonList("teste"));
+        inOrder.verify(entityOperationService).deleteOne(any(EntityDescriptor.class), eq(Collections.singletonList("any")));
+        verify(mongoService, never()).ensureIndexesInBackground(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void createEntity_SaveFailed() {
+        doThrow(new IllegalStateException()).when(entityOperationService).replaceOne(any(EntityDescriptor.class), any(Map.class));
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, getFieldDescriptorLong());
+
+        try {
+            entityManagementService.createEntity(data);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+        verify(mongoService, never()).ensureKeyIndex(any(), any());
+        verify(mongoService, never()).ensureIndexesInBackground(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void createEntity_Indexes() {
+        FieldDescriptor indexed = new FieldDescriptor("code", FieldTypeService.DefaultFieldTypes.STRING, true);
+        indexed.setIndexed(true);
+        indexed.setUnique(true);
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, Arrays.asList(toMap(new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.LONG, false)), toMap(indexed)));
+        data.put(INDEXES_FIELD_NAME, Collections.singletonList(getIndexMap(null, "code", "-teste")));
+
+        entityManagementService.createEntity(data);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(mongoService).ensureIndexesInBackground(eq(DEFAULT_COLLECTION_PREFIX + "any"), captor.capture());
+        List<IndexModel> indexes = captor.getValue();
+        assert indexes.size() == 2;
+        assert "dyn_idx_code".equals(indexes.get(0).getOptions().getName());
+        assert indexes.get(0).getOptions().isUnique();
+        assert "dyn_idx_code_-teste".equals(indexes.get(1).getOptions().getName());
+        assert new Document("code", 1).append("teste", -1).equals(indexes.get(1).getKeys());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void createEntity_Indexes_StringOptions() {
+        Map<String, Object> indexed = toMap(new FieldDescriptor("code", FieldTypeService.DefaultFieldTypes.STRING, true));
+        indexed.put("indexed", "true");
+        indexed.put("unique", "TRUE");
+        Map<String, Object> index = getIndexMap("idx", "teste");
+        index.put("sparse", "true");
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, Arrays.asList(toMap(new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.LONG, false)), indexed));
+        data.put(INDEXES_FIELD_NAME, Collections.singletonList(index));
+
+        entityManagementService.createEntity(data);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(mongoService).ensureIndexesInBackground(eq(DEFAULT_COLLECTION_PREFIX + "any"), captor.capture());
+        List<IndexModel> indexes = captor.getValue();
+        assert indexes.size() == 2;
+        assert indexes.get(0).getOptions().isUnique();
+        assert indexes.get(1).getOptions().isSparse();
+        assert Boolean.TRUE.equals(indexed.get("unique"));
+
+        indexed.put("unique", "sim");
+        data.put(URI_FIELD_NAME, "other");
+        try {
+            entityManagementService.createEntity(data);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Valor inválido para a opção 'unique': sim", e.getMessage());
+        }
+    }
+
+    @Test
+    public void createEntity_Indexes_DuplicateName() {
+        FieldDescriptor indexed = new FieldDescriptor("code", FieldTypeService.DefaultFieldTypes.STRING, true);
+        indexed.setIndexed(true);
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, Arrays.asList(toMap(new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.LONG, false)), toMap(indexed)));
+        data.put(INDEXES_FIELD_NAME, Collections.singletonList(getIndexMap(null, "code")));
+
+        try {
+            entityManagementService.createEntity(data);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Todos os índices devem ter nomes distintos entre si! Índice: dyn_idx_code", e.getMessage());
+        }
+        verify(mongoService, never()).ensureIndexesInBackground(any(), any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createEntity_Indexes_UniqueWithoutIndexed() {
+        FieldDescriptor field = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.LONG, false);
+        field.setUnique(true);
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, Collections.singletonList(toMap(field)));
+
+        entityManagementService.createEntity(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createEntity_Indexes_DocumentField() {
+        FieldDescriptor field = new FieldDescriptor("doc", FieldTypeService.DefaultFieldTypes.DOCUMENT, true);
+        field.setIndexed(true);
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, Arrays.asList(toMap(new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.LONG, false)), toMap(field)));
+
+        entityManagementService.createEntity(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createEntity_Indexes_UndeclaredField() {
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(URI_FIELD_NAME, "any");
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        data.put(FIELDS_FIELD_NAME, getFieldDescriptorLong());
+        data.put(INDEXES_FIELD_NAME, Collections.singletonList(getIndexMap("idx", "other")));
+
         entityManagementService.createEntity(data);
     }
 
@@ -315,6 +519,31 @@ public class EntityManagementServiceTest {
         entityManagementService.updateEntity(data, "aAA");
     }
 
+    @Test
+    public void updateEntity_DuplicatedKeysInCollection() {
+        Document prevDoc = new Document(URI_FIELD_NAME, "aAA");
+        prevDoc.put(KEYS_FIELD_NAME, Collections.singletonList("teste"));
+        when(entityOperationService.query(any(EntityDescriptor.class), any(Bson.class))).thenReturn(Collections.singletonList(prevDoc));
+        doThrow(new EntityKeyException("")).when(mongoService).ensureKeyIndex(any(), any());
+        HashMap<String, Object> data = new HashMap<>();
+
+        data.put(ENTITY_FIELD_NAME, "Any Entity");
+        data.put(FIELDS_FIELD_NAME, getFieldDescriptorString());
+
+        try {
+            entityManagementService.updateEntity(data, "aAA");
+            Assert.fail();
+        } catch (EntityKeyException e) {
+            // esperado
+        }
+        InOrder inOrder = inOrder(entityOperationService, mongoService);
+        inOrder.verify(entityOperationService).replaceOne(any(EntityDescriptor.class), eq(data));
+        inOrder.verify(mongoService).ensureKeyIndex(DEFAULT_COLLECTION_PREFIX + "aAA", Collections.singletonList("teste"));
+        inOrder.verify(entityOperationService).replaceOne(any(EntityDescriptor.class), eq(prevDoc));
+        verify(entityOperationService, never()).deleteOne(any(EntityDescriptor.class), any());
+        verify(mongoService, never()).ensureIndexesInBackground(any(), any());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void updateEntity_NotFound() {
         HashMap<String, Object> data = new HashMap<>();
@@ -354,6 +583,22 @@ public class EntityManagementServiceTest {
     }
 
 
+    private Map<String, Object> getIndexMap(String name, String... fields) {
+        Map<String, Object> index = new HashMap<>();
+        index.put("name", name);
+        index.put(FIELDS_FIELD_NAME, Arrays.asList(fields));
+        return index;
+    }
+
+    private Map<String, Object> toMap(FieldDescriptor fieldDescriptor) {
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            return mapper.readValue(mapper.writeValueAsString(fieldDescriptor), mapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private List<Map<String, Object>> getFieldDescriptorString() {
         FieldDescriptor strFieldDescriptor = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.STRING, false);
         strFieldDescriptor.setMinLength(10);
@@ -3,19 +3,36 @@ package br.com.xyinc.dyndata.service;
 import br.com.xyinc.dyndata.model.EntityDescriptor;
 import br.com.xyinc.dyndata.model.FieldDescriptor;
 import com.mongodb.MongoClient;
+import com.mongodb.client.MongoIterable;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
 import java.util.*;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class EntityOperationServiceTest {
@@ -25,6 +42,8 @@ public class EntityOperationServiceTest {
     private MongoService     mongoService;
     @Mock
     private FieldTypeService fieldTypeService;
+    @Spy
+    private MetricsService   metricsService = new MetricsService();
 
     @InjectMocks
     @Resource
@@ -79,8 +98,98 @@ public class EntityOperationServiceTest {
     }
 
     @Test
+    public void getKeySort() {
+        Bson sort = entityOperationService.getKeySort(getSampleEntityDescriptor(), true);
+        Assert.assertEquals("{ \"B\" : -1, \"A\" : -1 }", sort.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson());
+    }
+
+    @Test
+    public void getKeysetFilter_FromToken() {
+        Document last = new Document();
+        last.put("A", 20);
+        last.put("B", "15");
+        String       token          = entityOperationService.getContinuationToken(getSampleEntityDescriptor(), last);
+        Bson         condition      = entityOperationService.getKeysetFilter(getSampleEntityDescriptor(), token, false);
+        BsonDocument asBsonDocument = condition.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+        Assert.assertEquals("{ \"$or\" : [{ \"B\" : { \"$gt\" : \"15\" } }, { \"B\" : \"15\", \"A\" : { \"$gt\" : 20 } }] }", asBsonDocument.toJson());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getKeysetFilter_InvalidToken() {
+        entityOperationService.getKeysetFilter(getSampleEntityDescriptor(), "%%%", false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getKeysetFilter_TokenFromOtherEntity() {
+        String token = Base64.getUrlEncoder().encodeToString("{\"C\": 1}".getBytes());
+        entityOperationService.getKeysetFilter(getSampleEntityDescriptor(), token, false);
+    }
+
+    @Test
+    public void getFilterFromParams() {
+        Map<String, String> params = new HashMap<>();
+        params.put("A[gte]", "10");
+        params.put("A[lt]", "20");
+        params.put("B[prefix]", "a.b");
+        Bson         filter         = entityOperationService.getFilterFromParams(getSampleEntityDescriptor(), params);
+        BsonDocument asBsonDocument = filter.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+        Assert.assertEquals("{ \"A\" : { \"$gte\" : 10, \"$lt\" : 20 }, \"B\" : { \"$regex\" : \"^a\\\\.b\", \"$options\" : \"\" } }", asBsonDocument.toJson());
+    }
+
+    @Test
+    public void getFilterFromParams_EqualsAndIn() {
+        Map<String, String> params = new HashMap<>();
+        params.put("A[in]", "1,2");
+        params.put("B", "x");
+        Bson         filter         = entityOperationService.getFilterFromParams(getSampleEntityDescriptor(), params);
+        BsonDocument asBsonDocument = filter.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+        Assert.assertEquals("{ \"A\" : { \"$in\" : [1, 2] }, \"B\" : \"x\" }", asBsonDocument.toJson());
+    }
+
+    @Test
+    public void getFilterFromParams_PlanReused() {
+        EntityDescriptor ed = getSampleEntityDescriptor();
+        entityOperationService.getFilterFromParams(ed, Collections.singletonMap("A", "1"));
+        QueryFilterPlan plan = QueryFilterPlan.get(ed, "A", shape -> null);
+        Bson filter = entityOperationService.getFilterFromParams(ed, Collections.singletonMap("A", "2"));
+        assert plan != null && plan == QueryFilterPlan.get(ed, "A", shape -> null);
+        Assert.assertEquals("{ \"A\" : 2 }", filter.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson());
+    }
+
+    @Test
+    public void getFilterFromParams_Empty() {
+        assert entityOperationService.getFilterFromParams(getSampleEntityDescriptor(), new HashMap<>()) == null;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getFilterFromParams_UndeclaredField() {
+        entityOperationService.getFilterFromParams(getSampleEntityDescriptor(), Collections.singletonMap("C", "1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getFilterFromParams_InvalidValue() {
+        entityOperationService.getFilterFromParams(getSampleEntityDescriptor(), Collections.singletonMap("A[gt]", "abc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getFilterFromParams_PrefixOnNumber() {
+        entityOperationService.getFilterFromParams(getSampleEntityDescriptor(), Collections.singletonMap("A[prefix]", "1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
     public void get() {
-        entityOperationService.get(getSampleEntityDescriptor(), Arrays.asList("15", "20"));
+        MongoIterable<RawBsonDocument> documents = mock(MongoIterable.class);
+        RawBsonDocument                document  = RawBsonDocument.parse("{\"A\": 20, \"B\": \"15\"}");
+        ArgumentCaptor<Bson>           condition = ArgumentCaptor.forClass(Bson.class);
+        when(documents.first()).thenReturn(document);
+        when(mongoService.findRaw(any(), condition.capture(), any(), any(), eq(1))).thenReturn(documents);
+
+        assert entityOperationService.get(getSampleEntityDescriptor(), Arrays.asList("15", "20")).get() == document;
+        Assert.assertEquals("{ \"B\" : \"15\", \"A\" : 20 }", condition.getValue().toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson());
+
+        when(documents.first()).thenReturn(null);
+        assert !entityOperationService.get(getSampleEntityDescriptor(), Arrays.asList("15", "20")).isPresent();
     }
 
     @Test(expected = IllegalStateException.class)
@@ -90,8 +199,112 @@ public class EntityOperationServiceTest {
         entityOperationService.get(ed, Arrays.asList("15", "20"));
     }
 
+    @Test
+    public void getMany_CompositeKey() {
+        ArgumentCaptor<Bson> condition = ArgumentCaptor.forClass(Bson.class);
+        when(mongoService.callFind(any(), condition.capture(), any())).thenReturn(Arrays.asList(
+                new Document("A", 2).append("B", "y"),
+                new Document("A", 1).append("B", "x")
+        ));
+        List<Document> result = entityOperationService.getMany(getSampleEntityDescriptor(), Arrays.asList(
+                Arrays.asList("x", "1"), Arrays.asList("z", "3"), Arrays.asList("y", "2"), Arrays.asList("x", "1")
+        ));
+
+        Assert.assertEquals("{ \"$or\" : [{ \"B\" : \"x\", \"A\" : 1 }, { \"B\" : \"z\", \"A\" : 3 }, { \"B\" : \"y\", \"A\" : 2 }] }",
+                condition.getValue().toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson());
+        assert result.size() == 4;
+        assert "x".equals(result.get(0).get("B"));
+        assert result.get(1) == null;
+        assert "y".equals(result.get(2).get("B"));
+        assert result.get(3) == result.get(0);
+    }
+
+    @Test
+    public void getMany_SingleDecimalKey() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setKeys(Collections.singletonList("A"));
+        descriptor.setFields(Collections.singletonList(new FieldDescriptor("A", "Decimal", false)));
+        ArgumentCaptor<Bson> condition = ArgumentCaptor.forClass(Bson.class);
+        when(mongoService.callFind(any(), condition.capture(), any())).thenReturn(Collections.singletonList(new Document("A", new Decimal128(new BigDecimal("1.50")))));
+        List<Document> result = entityOperationService.getMany(descriptor, Arrays.asList(Collections.singletonList("1.5"), Collections.singletonList("2")));
+
+        Assert.assertEquals("{ \"A\" : { \"$in\" : [{ \"$numberDecimal\" : \"1.5\" }, { \"$numberDecimal\" : \"2\" }] } }",
+                condition.getValue().toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson());
+        assert result.get(0) != null;
+        assert result.get(1) == null;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getMany_WrongSize() {
+        entityOperationService.getMany(getSampleEntityDescriptor(), Collections.singletonList(Collections.singletonList("15")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getMany_entityWithNoKey() {
+        entityOperationService.getMany(new EntityDescriptor(), Collections.singletonList(Collections.singletonList("15")));
+    }
+
+    @Test
+    public void parseDocument_KeysFromId() {
+        EntityDescriptor ed   = getSampleEntityDescriptor();
+        InputStream      body = new ByteArrayInputStream(new byte[0]);
+        entityOperationService.parseDocument(ed, body, Arrays.asList("15", "20"));
+        Map<String, BsonValue> keyValues = new HashMap<>();
+        keyValues.put("B", new BsonString("15"));
+        keyValues.put("A", new BsonInt32(20));
+        verify(fieldTypeService).parseDocument(ed, body, keyValues);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseDocument_WrongSize() {
+        entityOperationService.parseDocument(getSampleEntityDescriptor(), new ByteArrayInputStream(new byte[0]), Collections.singletonList("15"));
+    }
+
+    @Test
+    public void insertOne() {
+        RawBsonDocument document = RawBsonDocument.parse("{\"A\": 20, \"B\": \"15\"}");
+        entityOperationService.insertOne(getSampleEntityDescriptor(), document);
+        verify(mongoService).callInsertOne(getSampleEntityDescriptor().getCollectionName(), document);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void insertOne_entityWithNoKey() {
+        EntityDescriptor ed = getSampleEntityDescriptor();
+        ed.setKeys(new ArrayList<>());
+        entityOperationService.insertOne(ed, RawBsonDocument.parse("{}"));
+    }
+
+    @Test
+    public void updateOne() {
+        EntityDescriptor ed = getSampleEntityDescriptor();
+        when(mongoService.callUpdateOne(any(), any(), any())).thenReturn(1L);
+        assert entityOperationService.updateOne(ed, Arrays.asList("15", "20"), new HashMap<>());
+        when(mongoService.callUpdateOne(any(), any(), any())).thenReturn(0L);
+        assert !entityOperationService.updateOne(ed, Arrays.asList("15", "20"), new HashMap<>());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void updateOne_entityWithNoKey() {
+        EntityDescriptor ed = getSampleEntityDescriptor();
+        ed.setKeys(new ArrayList<>());
+        entityOperationService.updateOne(ed, Arrays.asList("15", "20"), new HashMap<>());
+    }
+
     @Test
     public void replaceOne() {
+        RawBsonDocument document = RawBsonDocument.parse("{\"A\": 20, \"B\": \"15\"}");
+        when(mongoService.callReplaceOne(any(), eq(document), any(Bson.class))).thenReturn(1L);
+        assert entityOperationService.replaceOne(getSampleEntityDescriptor(), document);
+        when(mongoService.callReplaceOne(any(), eq(document), any(Bson.class))).thenReturn(0L);
+        assert !entityOperationService.replaceOne(getSampleEntityDescriptor(), document);
+
+        ArgumentCaptor<Bson> condition = ArgumentCaptor.forClass(Bson.class);
+        verify(mongoService, times(2)).callReplaceOne(any(), eq(document), condition.capture());
+        Assert.assertEquals(BsonDocument.parse("{\"B\": \"15\", \"A\": 20}"), condition.getValue().toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()));
+    }
+
+    @Test
+    public void replaceOne_Map() {
         entityOperationService.replaceOne(getSampleEntityDescriptor(), new HashMap<>());
     }
 
@@ -99,7 +312,7 @@ public class EntityOperationServiceTest {
     public void replaceOne_entityWithNoKey() {
         EntityDescriptor ed = getSampleEntityDescriptor();
         ed.setKeys(new ArrayList<>());
-        entityOperationService.replaceOne(ed, new HashMap<>());
+        entityOperationService.replaceOne(ed, RawBsonDocument.parse("{}"));
     }
 
     @Test
@@ -5,6 +5,7 @@ import br.com.xyinc.dyndata.model.EntityDescriptor;
 import br.com.xyinc.dyndata.model.FieldDescriptor;
 import br.com.xyinc.dyndata.model.FieldType;
 import org.bson.*;
+import org.bson.types.Decimal128;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,7 +15,10 @@ import org.mockito.MockitoAnnotations;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -149,7 +153,15 @@ public class FieldTypeServiceTest {
         FieldType type   = new FieldType(Timestamp.class);
         Timestamp t      = new Timestamp(1565746);
         BsonValue result = fieldTypeService.toBson(t, null, type, new ArrayList<>());
-        Assert.assertEquals(t.getTime(), result.asTimestamp().getValue());
+        Assert.assertEquals(t.getTime(), result.asDateTime().getValue());
+    }
+
+    @Test
+    public void toBson_Timestamp_FromDate() {
+        FieldType type   = new FieldType(Timestamp.class);
+        Date      d      = new Date(1522615135000L);
+        BsonValue result = fieldTypeService.toBson(d, null, type, new ArrayList<>());
+        Assert.assertEquals(d.getTime(), result.asDateTime().getValue());
     }
 
     @Test
@@ -157,7 +169,7 @@ public class FieldTypeServiceTest {
         FieldType type   = new FieldType(Timestamp.class);
         long      t      = 1565746455L;
         BsonValue result = fieldTypeService.toBson(t, null, type, new ArrayList<>());
-        Assert.assertEquals(t, result.asTimestamp().getValue());
+        Assert.assertEquals(t, result.asDateTime().getValue());
     }
 
     @Test
@@ -166,8 +178,8 @@ public class FieldTypeServiceTest {
         Timestamp t    = new Timestamp(1522615135000L);
         BsonValue gmt  = fieldTypeService.toBson("2018-04-01T20:38:55.000+0000", null, type, new ArrayList<>());
         BsonValue bsb  = fieldTypeService.toBson("2018-04-01T17:38:55.000-0300", null, type, new ArrayList<>());
-        Assert.assertEquals(t.getTime(), gmt.asTimestamp().getValue());
-        Assert.assertEquals(t.getTime(), bsb.asTimestamp().getValue());
+        Assert.assertEquals(t.getTime(), gmt.asDateTime().getValue());
+        Assert.assertEquals(t.getTime(), bsb.asDateTime().getValue());
     }
 
     @Test(expected = TimestampFormatException.class)
@@ -329,6 +341,27 @@ public class FieldTypeServiceTest {
         fieldTypeService.iterateFields(fieldsDocument, val, new ArrayList<>(), result);
     }
 
+    @Test
+    public void iterateFields_MinMaxValidation_Decimal() {
+        FieldDescriptor decimalFieldDescriptor = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.DECIMAL, false);
+        decimalFieldDescriptor.setMin(BigDecimal.ZERO);
+        List<FieldDescriptor> fieldsDocument = Collections.singletonList(decimalFieldDescriptor);
+        Map<String, Object>   val            = new HashMap<>();
+        val.put("teste", "10.5");
+        BsonDocument result = new BsonDocument();
+
+        fieldTypeService.iterateFields(fieldsDocument, val, new ArrayList<>(), result);
+        Assert.assertEquals(new BigDecimal("10.5"), result.getDecimal128("teste").getValue().bigDecimalValue());
+
+        val.put("teste", "-0.1");
+        try {
+            fieldTypeService.iterateFields(fieldsDocument, val, new ArrayList<>(), new BsonDocument());
+            Assert.fail();
+        } catch (FieldValidationException e) {
+            assert e.getMessage().contains("maior ou igual a 0");
+        }
+    }
+
     @Test
     public void iterateFields_LengthValidation_String_OK() {
         List<FieldDescriptor> fieldsDocument = getFieldDescriptorString();
@@ -431,6 +464,257 @@ public class FieldTypeServiceTest {
         fieldTypeService.toDocument(descriptor, val);
     }
 
+    @Test
+    public void toDocument_ConversionPlanCached() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(getFieldDescriptorInt());
+        Map<String, Object> val = new HashMap<>();
+        val.put("teste", 15);
+
+        assert ((BsonValue) fieldTypeService.toDocument(descriptor, val).get("teste")).asInt32().getValue() == 15;
+        DocumentConversionPlan plan = descriptor.computeAttachmentIfAbsent(DocumentConversionPlan.ATTACHMENT_NAME, d -> null);
+        assert plan != null;
+        fieldTypeService.toDocument(descriptor, val);
+        assert descriptor.computeAttachmentIfAbsent(DocumentConversionPlan.ATTACHMENT_NAME, d -> null) == plan;
+
+        descriptor.setFields(getFieldDescriptorString());
+        assert descriptor.computeAttachmentIfAbsent(DocumentConversionPlan.ATTACHMENT_NAME, d -> null) == null;
+    }
+
+    @Test
+    public void toDocument_SequenceField() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(Collections.singletonList(new FieldDescriptor("id", FieldTypeService.DefaultFieldTypes.LONG, false)));
+        descriptor.setSequenceField("id");
+        descriptor.setKeys(Collections.singletonList("id"));
+
+        assert ((BsonValue) fieldTypeService.toDocument(descriptor, new HashMap<>()).get("id")).asInt64().getValue() == 35L;
+    }
+
+    @Test
+    public void toDocument_NestedDocument() {
+        FieldDescriptor nested = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.STRING, false);
+        nested.setMaxLength(3);
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(Collections.singletonList(new FieldDescriptor("doc", FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, false, Collections.singletonList(nested))));
+        Map<String, Object> item = new HashMap<>();
+        item.put("teste", "abc");
+        item.put("esteNãoDeveEstarLá", "teste");
+        Map<String, Object> val = new HashMap<>();
+        val.put("doc", Collections.singletonList(item));
+
+        BsonArray result = (BsonArray) fieldTypeService.toDocument(descriptor, val).get("doc");
+        Assert.assertEquals(new BsonDocument("teste", new BsonString("abc")), result.get(0));
+
+        item.put("teste", "abcd");
+        try {
+            fieldTypeService.toDocument(descriptor, val);
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            assert e.getMessage().startsWith("[doc=>teste] ");
+        }
+    }
+
+    @Test
+    public void toDocument_RecursiveDocumentFields() {
+        FieldDescriptor       children = new FieldDescriptor("filhos", FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, true);
+        List<FieldDescriptor> fields   = Arrays.asList(new FieldDescriptor("nome", FieldTypeService.DefaultFieldTypes.STRING, false), children);
+        children.setDocumentFields(fields);
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(fields);
+
+        Map<String, Object> child = new HashMap<>();
+        child.put("nome", "filho");
+        Map<String, Object> val = new HashMap<>();
+        val.put("nome", "pai");
+        val.put("filhos", Collections.singletonList(child));
+
+        BsonArray result = (BsonArray) fieldTypeService.toDocument(descriptor, val).get("filhos");
+        assert "filho".equals(result.get(0).asDocument().getString("nome").getValue());
+        assert result.get(0).asDocument().isNull("filhos");
+    }
+
+    @Test
+    public void parseDocument_Types() {
+        FieldDescriptor nested = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.STRING, false);
+        FieldDescriptor def    = new FieldDescriptor("padrao", FieldTypeService.DefaultFieldTypes.INTEGER, false);
+        def.setDefaultValue("7");
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(Arrays.asList(
+                new FieldDescriptor("int", FieldTypeService.DefaultFieldTypes.INTEGER, false),
+                new FieldDescriptor("long", FieldTypeService.DefaultFieldTypes.LONG, false),
+                new FieldDescriptor("dec", FieldTypeService.DefaultFieldTypes.DECIMAL, false),
+                new FieldDescriptor("bool", FieldTypeService.DefaultFieldTypes.BOOLEAN, false),
+                new FieldDescriptor("data", FieldTypeService.DefaultFieldTypes.TIMESTAMP, false),
+                new FieldDescriptor("str", FieldTypeService.DefaultFieldTypes.STRING, false),
+                new FieldDescriptor("arr", FieldTypeService.DefaultFieldTypes.LONG_ARR, false),
+                new FieldDescriptor("doc", FieldTypeService.DefaultFieldTypes.DOCUMENT, false, Collections.singletonList(nested)),
+                new FieldDescriptor("nulo", FieldTypeService.DefaultFieldTypes.STRING, true),
+                def));
+
+        RawBsonDocument result = parseDocument(descriptor, "{\"int\": \"15\", \"long\": 10, \"dec\": 1.50, \"bool\": \"true\", "
+                + "\"data\": \"2018-04-01T17:38:55.000-0300\", \"str\": 12, \"arr\": [1, \"2\"], \"outro\": {\"a\": [1, {}]}, "
+                + "\"doc\": {\"teste\": \"abc\", \"esteNãoDeveEstarLá\": 1}}");
+
+        Assert.assertEquals(new BsonInt32(15), result.get("int"));
+        Assert.assertEquals(new BsonInt64(10), result.get("long"));
+        Assert.assertEquals(new BsonDecimal128(new Decimal128(new BigDecimal("1.50"))), result.get("dec"));
+        Assert.assertEquals(BsonBoolean.TRUE, result.get("bool"));
+        Assert.assertEquals(new BsonDateTime(1522615135000L), result.get("data"));
+        Assert.assertEquals(new BsonString("12"), result.get("str"));
+        Assert.assertEquals(new BsonArray(Arrays.asList(new BsonInt64(1), new BsonInt64(2))), result.get("arr"));
+        Assert.assertEquals(new BsonDocument("teste", new BsonString("abc")), result.get("doc"));
+        Assert.assertEquals(BsonNull.VALUE, result.get("nulo"));
+        Assert.assertEquals(new BsonInt32(7), result.get("padrao"));
+        assert !result.containsKey("outro");
+    }
+
+    @Test
+    public void parseDocument_FailsFast() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(getFieldDescriptorInt());
+        try {
+            // O JSON inválido após o campo não chega a ser lido
+            parseDocument(descriptor, "{\"teste\": 21, \"outro\": ");
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            assert e.getMessage().startsWith("[teste] ");
+            assert e.getCause() instanceof FieldValidationException;
+        }
+    }
+
+    @Test
+    public void parseDocument_NestedError() {
+        FieldDescriptor nested = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.STRING, false);
+        nested.setMaxLength(3);
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(Collections.singletonList(new FieldDescriptor("doc", FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, false, Collections.singletonList(nested))));
+        try {
+            parseDocument(descriptor, "{\"doc\": [{\"teste\": \"abc\"}, {\"teste\": \"abcd\"}]}");
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            assert e.getMessage().startsWith("[doc=>teste] ");
+        }
+    }
+
+    @Test
+    public void parseDocument_ArrayLength() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(getFieldDescriptorStringArray());
+        assert parseDocument(descriptor, "{\"teste\": [\"a\", \"b\"]}").getArray("teste").size() == 2;
+        for (String json : Arrays.asList("{\"teste\": [\"a\"]}", "{\"teste\": [\"a\", \"b\", \"c\", \"d\", \"e\"]}", "{\"teste\": \"a\"}", "{\"teste\": [\"a\", null]}")) {
+            try {
+                parseDocument(descriptor, json);
+                Assert.fail(json);
+            } catch (DocumentParseException e) {
+                assert e.getCause() instanceof FieldValidationException;
+            }
+        }
+    }
+
+    @Test
+    public void parseDocument_SequenceAndFixedValues() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(Arrays.asList(new FieldDescriptor("id", FieldTypeService.DefaultFieldTypes.LONG, false),
+                new FieldDescriptor("chave", FieldTypeService.DefaultFieldTypes.INTEGER, false)));
+        descriptor.setSequenceField("id");
+        descriptor.setKeys(Collections.singletonList("chave"));
+
+        RawBsonDocument result = fieldTypeService.parseDocument(descriptor, toStream("{\"chave\": 1}"), Collections.singletonMap("chave", new BsonInt32(2)));
+        Assert.assertEquals(new BsonInt64(35), result.get("id"));
+        Assert.assertEquals(new BsonInt32(2), result.get("chave"));
+
+        try {
+            parseDocument(descriptor, "{}");
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            assert e.getCause() instanceof EntityKeyException;
+        }
+    }
+
+    @Test
+    public void parseDocument_InvalidJson() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(getFieldDescriptorInt());
+        for (String json : Arrays.asList("[]", "", "{\"teste\": 15", "{\"teste\": 15} {}", "{\"teste\": 15, \"teste\": 16}", "{\"teste\": {}}")) {
+            try {
+                parseDocument(descriptor, json);
+                Assert.fail(json);
+            } catch (DocumentParseException e) {
+                assert e.getMessage() != null;
+            }
+        }
+    }
+
+    private RawBsonDocument parseDocument(EntityDescriptor descriptor, String json) {
+        return fieldTypeService.parseDocument(descriptor, toStream(json), Collections.emptyMap());
+    }
+
+    private InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void toPartialUpdate_SetAndUnset() {
+        FieldDescriptor nome = new FieldDescriptor("nome", FieldTypeService.DefaultFieldTypes.STRING, false);
+        nome.setMaxLength(5);
+        FieldDescriptor ativo = new FieldDescriptor("ativo", FieldTypeService.DefaultFieldTypes.BOOLEAN, false);
+        ativo.setDefaultValue("true");
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(Arrays.asList(
+                new FieldDescriptor("codigo", FieldTypeService.DefaultFieldTypes.LONG, false),
+                nome,
+                ativo,
+                new FieldDescriptor("obs", FieldTypeService.DefaultFieldTypes.STRING, true),
+                new FieldDescriptor("outro", FieldTypeService.DefaultFieldTypes.STRING, true)
+        ));
+        descriptor.setKeys(Collections.singletonList("codigo"));
+        Map<String, Object> val = new HashMap<>();
+        val.put("codigo", 99);
+        val.put("nome", "abc");
+        val.put("ativo", null);
+        val.put("obs", null);
+        val.put("esteNãoDeveEstarLá", "teste");
+
+        Document update = fieldTypeService.toPartialUpdate(descriptor, val);
+        Document set    = (Document) update.get("$set");
+        Document unset  = (Document) update.get("$unset");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("nome", "ativo")), set.keySet());
+        assert "abc".equals(((BsonValue) set.get("nome")).asString().getValue());
+        assert ((BsonValue) set.get("ativo")).asBoolean().getValue();
+        Assert.assertEquals(Collections.singleton("obs"), unset.keySet());
+
+        val.put("nome", "abcdef");
+        try {
+            fieldTypeService.toPartialUpdate(descriptor, val);
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            assert e.getMessage().startsWith("[nome] ");
+        }
+
+        try {
+            fieldTypeService.toPartialUpdate(descriptor, Collections.singletonMap("ativo", 5));
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            assert e.getMessage().startsWith("[ativo] ");
+        }
+    }
+
+    @Test(expected = DocumentParseException.class)
+    public void toPartialUpdate_NotNullable() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(getFieldDescriptorInt());
+        fieldTypeService.toPartialUpdate(descriptor, Collections.singletonMap("teste", null));
+    }
+
+    @Test(expected = DocumentParseException.class)
+    public void toPartialUpdate_OnlyKeys() {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setFields(getFieldDescriptorInt());
+        descriptor.setKeys(Collections.singletonList("teste"));
+        fieldTypeService.toPartialUpdate(descriptor, Collections.singletonMap("teste", 15));
+    }
+
     private List<FieldDescriptor> getFieldDescriptorInt() {
         FieldDescriptor intFieldDescriptor = new FieldDescriptor("teste", FieldTypeService.DefaultFieldTypes.INTEGER, false);
         intFieldDescriptor.setMin(BigDecimal.valueOf(10));
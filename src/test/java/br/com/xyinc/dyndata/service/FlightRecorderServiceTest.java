@@ -0,0 +1,92 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import br.com.xyinc.dyndata.model.RecordingStatus;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FlightRecorderServiceTest {
+
+    private final FlightRecorderService flightRecorderService = new FlightRecorderService();
+    private final FieldTypeService      fieldTypeService      = new FieldTypeService();
+
+    @After
+    public void tearDown() {
+        flightRecorderService.close();
+    }
+
+    @Test
+    public void recording_ConversionEvents() throws Exception {
+        EntityDescriptor descriptor = new EntityDescriptor();
+        descriptor.setUriName("jfrConversao");
+        descriptor.setFields(Arrays.asList(new FieldDescriptor("nome", FieldTypeService.DefaultFieldTypes.STRING, true),
+                new FieldDescriptor("valor", FieldTypeService.DefaultFieldTypes.INTEGER, true)));
+
+        assert flightRecorderService.getStatus() == null;
+        RecordingStatus started = flightRecorderService.start(FlightRecorderService.DEFAULT_CONFIGURATION, 60, 0);
+        Assert.assertEquals("RUNNING", started.getState());
+        Assert.assertEquals(60, started.getMaxAgeSeconds());
+
+        fieldTypeService.toDocument(descriptor, Collections.singletonMap("nome", "abc"));
+        fieldTypeService.parseDocument(descriptor, new ByteArrayInputStream("{\"nome\": \"abc\", \"valor\": 1}".getBytes(StandardCharsets.UTF_8)), Collections.emptyMap());
+        Assert.assertEquals("STOPPED", flightRecorderService.stop().getState());
+
+        Path file = flightRecorderService.dump();
+        try {
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> "br.com.xyinc.dyndata.DocumentConversion".equals(event.getEventType().getName()))
+                    .filter(event -> "jfrConversao".equals(event.getString("entity")))
+                    .collect(Collectors.toList());
+            Assert.assertEquals(2, events.size());
+            for (RecordedEvent event : events) {
+                Assert.assertEquals(2, event.getInt("fields"));
+                assert event.getLong("bytes") > 0;
+            }
+        } finally {
+            flightRecorderService.delete(file);
+        }
+        assert !Files.exists(file);
+    }
+
+    @Test
+    public void recording_InvalidState() {
+        try {
+            flightRecorderService.stop();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Nenhuma gravação em andamento!", e.getMessage());
+        }
+        try {
+            flightRecorderService.dump();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Nenhuma gravação disponível!", e.getMessage());
+        }
+        try {
+            flightRecorderService.start("inexistente", 60, 0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage().startsWith("Configuração do Flight Recorder inválida: inexistente") : e.getMessage();
+        }
+        flightRecorderService.start(FlightRecorderService.DEFAULT_CONFIGURATION, 60, 0);
+        try {
+            flightRecorderService.start(FlightRecorderService.DEFAULT_CONFIGURATION, 60, 0);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Já existe uma gravação em andamento!", e.getMessage());
+        }
+    }
+}
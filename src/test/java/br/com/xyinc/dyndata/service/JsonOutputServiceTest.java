@@ -0,0 +1,72 @@
+package br.com.xyinc.dyndata.service;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.types.Decimal128;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+public class JsonOutputServiceTest {
+
+    private static final String SAMPLE = "{\"S\": \"a\\\"b\", \"L\": {\"$numberLong\": \"10\"}, \"D\": {\"$date\": 1522615135000}, "
+            + "\"N\" : { \"$numberDecimal\" : \"1.50\" }, \"A\" : [1, { \"B\" : true }], \"Z\" : null }";
+
+    private final JsonOutputService jsonOutputService = new JsonOutputService();
+
+    private String toJson(Bson document) {
+        return new String(jsonOutputService.toJson(document), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void toJson_Raw() {
+        Assert.assertEquals("{ \"S\" : \"a\\\"b\", \"L\" : 10, \"D\" : { \"$date\" : \"2018-04-01T20:38:55Z\" }, "
+                + "\"N\" : { \"$numberDecimal\" : \"1.50\" }, \"A\" : [1, { \"B\" : true }], \"Z\" : null }", toJson(RawBsonDocument.parse(SAMPLE)));
+    }
+
+    @Test
+    public void toJson_DocumentAndBsonDocument() {
+        Document document = new Document("S", "a\"b").append("L", 10L).append("D", new Date(1522615135000L))
+                .append("N", new Decimal128(new BigDecimal("1.50"))).append("A", Arrays.asList(1, new Document("B", true))).append("Z", null);
+        Assert.assertEquals(toJson(RawBsonDocument.parse(SAMPLE)), toJson(document));
+        Assert.assertEquals(toJson(RawBsonDocument.parse(SAMPLE)), toJson(BsonDocument.parse(SAMPLE)));
+        Assert.assertEquals("null", toJson(null));
+    }
+
+    @Test
+    public void toJson_Extended() {
+        JsonOutputService extended = new JsonOutputService();
+        extended.setJsonMode(JsonMode.EXTENDED);
+        assert extended.getJsonMode() == JsonMode.EXTENDED;
+        Assert.assertEquals("{ \"L\" : { \"$numberLong\" : \"10\" }, \"D\" : { \"$date\" : { \"$numberLong\" : \"1522615135000\" } } }",
+                new String(extended.toJson(RawBsonDocument.parse("{\"L\": {\"$numberLong\": \"10\"}, \"D\": {\"$date\": 1522615135000}}")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void toJsonValue() {
+        Assert.assertEquals("[1, { \"B\" : true }]", jsonOutputService.toJsonValue(Arrays.asList(1, new Document("B", true))));
+        Assert.assertEquals("{ \"L\" : 10 }", jsonOutputService.toJsonValue(new Document("L", 10L)));
+        Assert.assertEquals("\"a:}\"", jsonOutputService.toJsonValue("a:}"));
+        Assert.assertEquals("null", jsonOutputService.toJsonValue(null));
+    }
+
+    @Test
+    public void writeDocuments() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jsonOutputService.writeDocuments(Arrays.asList(RawBsonDocument.parse("{\"A\": \"ç\"}"), null, new Document("A", 2)), out, false);
+        Assert.assertEquals("[{ \"A\" : \"ç\" },null,{ \"A\" : 2 }]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        out.reset();
+        jsonOutputService.writeDocuments(Arrays.asList(RawBsonDocument.parse("{\"A\": 1}"), new Document("A", 2)), out, true);
+        Assert.assertEquals("{ \"A\" : 1 }\n{ \"A\" : 2 }\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
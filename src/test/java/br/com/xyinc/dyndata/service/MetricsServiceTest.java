@@ -0,0 +1,97 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.exception.DocumentParseException;
+import br.com.xyinc.dyndata.exception.FieldValidationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class MetricsServiceTest {
+
+    private final MetricsService metricsService = new MetricsService();
+    private final MeterRegistry  registry       = metricsService.getRegistry();
+
+    @Test
+    public void timeOperation_Outcomes() {
+        assert metricsService.timeOperation("produto", MetricsService.Operations.GET, () -> 1) == 1;
+        try {
+            metricsService.timeOperation("produto", MetricsService.Operations.CREATE, () -> {
+                throw new DocumentParseException("[nome] erro", new FieldValidationException("erro"));
+            });
+            Assert.fail();
+        } catch (DocumentParseException e) {
+            // esperado
+        }
+        try {
+            metricsService.timeOperation("produto", MetricsService.Operations.DELETE, () -> {
+                throw new IllegalStateException();
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+
+        assert registry.get(MetricsService.OPERATION_TIMER).tags("entity", "produto", "operation", "get", "outcome", MetricsService.OUTCOME_SUCCESS).timer().count() == 1;
+        assert registry.get(MetricsService.OPERATION_TIMER).tags("operation", "create", "outcome", MetricsService.OUTCOME_CLIENT_ERROR).timer().count() == 1;
+        assert registry.get(MetricsService.OPERATION_TIMER).tags("operation", "delete", "outcome", MetricsService.OUTCOME_SERVER_ERROR).timer().count() == 1;
+        Assert.assertEquals(1.0, registry.get(MetricsService.VALIDATION_FAILURES).tags("entity", "produto", "exception", "FieldValidationException").counter().count(), 0);
+    }
+
+    @Test
+    public void timeStage() {
+        assert "ok".equals(metricsService.timeStage(null, MetricsService.Stages.FILTER, () -> "ok"));
+        metricsService.recordStage("produto", MetricsService.Stages.DESCRIPTOR, metricsService.start());
+        assert registry.get(MetricsService.STAGE_TIMER).tags("entity", "none", "stage", "filter").timer().count() == 1;
+        assert registry.get(MetricsService.STAGE_TIMER).tags("entity", "produto", "stage", "descriptor").timer().count() == 1;
+    }
+
+    @Test
+    public void recordDocumentSize() {
+        RawBsonDocument document = RawBsonDocument.parse("{\"A\": 1}");
+        metricsService.recordDocumentSize("produto", MetricsService.Directions.WRITE, document);
+        Assert.assertEquals(document.getByteBuffer().remaining(), registry.get(MetricsService.DOCUMENT_SIZE).tags("direction", "write").summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void recordMongoCommand() {
+        metricsService.recordMongoCommand("find", "dyn.produto", 1000, true);
+        metricsService.recordMongoCommand("find", "dyn.produto", 3000, true);
+        metricsService.recordMongoCommand("find", "dyn.produto", 2000, false);
+        metricsService.recordMongoCommand("ping", null, 500, true);
+
+        Timer success = registry.get(MetricsService.MONGO_COMMAND_TIMER).tags("command", "find", "collection", "dyn.produto", "outcome", MetricsService.OUTCOME_SUCCESS).timer();
+        assert success.count() == 2;
+        Assert.assertEquals(4000, success.totalTime(TimeUnit.NANOSECONDS), 0);
+        assert registry.get(MetricsService.MONGO_COMMAND_TIMER).tags("command", "find", "outcome", MetricsService.OUTCOME_SERVER_ERROR).timer().count() == 1;
+        assert registry.get(MetricsService.MONGO_COMMAND_TIMER).tags("command", "ping", "collection", "none").timer().count() == 1;
+        assert registry.find(MetricsService.MONGO_COMMAND_TIMER).meters().size() == 3;
+    }
+
+    @Test
+    public void mongoCommandCollection() {
+        assert "produto".equals(MongoCommandMetrics.getCollection("find", BsonDocument.parse("{\"find\": \"produto\", \"filter\": {}}")));
+        assert "produto".equals(MongoCommandMetrics.getCollection("getMore", BsonDocument.parse("{\"getMore\": {\"$numberLong\": \"10\"}, \"collection\": \"produto\"}")));
+        assert MongoCommandMetrics.getCollection("ping", BsonDocument.parse("{\"ping\": 1}")) == null;
+    }
+
+    @Test
+    public void mongoCommandFilterShape() {
+        BsonDocument find = BsonDocument.parse("{\"find\": \"produto\", \"filter\": {\"$and\": [{\"empresa\": 1}, {\"codigo\": {\"$gt\": 10}}], "
+                + "\"tags\": {\"$in\": [\"a\", \"b\"]}}}");
+        Assert.assertEquals("{\"$and\": [{\"empresa\": ?}, {\"codigo\": {\"$gt\": ?}}], \"tags\": {\"$in\": ?}}",
+                FilterShape.of(MongoCommandMetrics.getFilter("find", find)));
+        BsonDocument delete = BsonDocument.parse("{\"delete\": \"produto\", \"deletes\": [{\"q\": {\"codigo\": 5}, \"limit\": 1}]}");
+        Assert.assertEquals("{\"codigo\": ?}", FilterShape.of(MongoCommandMetrics.getFilter("delete", delete)));
+        Assert.assertEquals(FilterShape.NONE, FilterShape.of(MongoCommandMetrics.getFilter("insert", BsonDocument.parse("{\"insert\": \"produto\"}"))));
+
+        assert MongoCommandMetrics.getDocumentCount("find", BsonDocument.parse("{\"cursor\": {\"id\": 0, \"firstBatch\": [{}, {}]}, \"ok\": 1}")) == 2;
+        assert MongoCommandMetrics.getDocumentCount("getMore", BsonDocument.parse("{\"cursor\": {\"id\": 0, \"nextBatch\": [{}]}, \"ok\": 1}")) == 1;
+        assert MongoCommandMetrics.getDocumentCount("update", BsonDocument.parse("{\"n\": 1, \"nModified\": 0, \"ok\": 1}")) == 1;
+        assert MongoCommandMetrics.getDocumentCount("findAndModify", BsonDocument.parse("{\"value\": {\"lastId\": 3}, \"ok\": 1}")) == 1;
+    }
+}
@@ -0,0 +1,60 @@
+package br.com.xyinc.dyndata.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SequenceBlockAllocatorTest {
+
+    @Test
+    public void next_sequentialWithinBlocks() {
+        AtomicLong             lastId    = new AtomicLong(0);
+        AtomicInteger          calls     = new AtomicInteger(0);
+        SequenceBlockAllocator allocator = new SequenceBlockAllocator(10, count -> {
+            calls.incrementAndGet();
+            return lastId.addAndGet(count);
+        });
+        for (long i = 1; i <= 25; i++) {
+            Assert.assertEquals(i, allocator.next());
+        }
+        Assert.assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void next_continuesFromReservedRange() {
+        AtomicLong             lastId    = new AtomicLong(100);
+        SequenceBlockAllocator allocator = new SequenceBlockAllocator(5, lastId::addAndGet);
+        Assert.assertEquals(101, allocator.next());
+        lastId.addAndGet(50);
+        for (int i = 0; i < 4; i++) {
+            allocator.next();
+        }
+        Assert.assertEquals(156, allocator.next());
+    }
+
+    @Test
+    public void next_concurrentUnique() throws InterruptedException {
+        AtomicLong             lastId    = new AtomicLong(0);
+        SequenceBlockAllocator allocator = new SequenceBlockAllocator(7, lastId::addAndGet);
+        Set<Long>              values    = ConcurrentHashMap.newKeySet();
+        ExecutorService        executor  = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> values.add(allocator.next()));
+        }
+        executor.shutdown();
+        assert executor.awaitTermination(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1000, values.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidBlockSize() {
+        new SequenceBlockAllocator(0, count -> count);
+    }
+}
@@ -0,0 +1,106 @@
+package br.com.xyinc.dyndata.service;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SlowOperationLogTest {
+
+    private static final ConnectionDescription CONNECTION = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final AtomicInteger requestIds = new AtomicInteger();
+
+    private MongoService     mongoService;
+    private SlowOperationLog slowOperationLog;
+
+    @Before
+    public void setUp() {
+        mongoService = mock(MongoService.class);
+        when(mongoService.getSlowOperationThreshold()).thenReturn(100);
+        when(mongoService.explainFind(any(String.class), any(BsonDocument.class), any(BsonDocument.class)))
+                .thenReturn(Document.parse("{\"queryPlanner\": {\"winningPlan\": {\"stage\": \"COLLSCAN\"}}, \"ok\": 1}"));
+        slowOperationLog = new SlowOperationLog(mongoService);
+    }
+
+    @After
+    public void tearDown() {
+        slowOperationLog.close();
+    }
+
+    private void execute(String commandName, String command, long elapsedMillis) {
+        int requestId = requestIds.incrementAndGet();
+        slowOperationLog.commandStarted(new CommandStartedEvent(requestId, CONNECTION, "dyndata", commandName, BsonDocument.parse(command)));
+        slowOperationLog.commandSucceeded(new CommandSucceededEvent(requestId, CONNECTION, commandName, BsonDocument.parse("{\"ok\": 1}"),
+                TimeUnit.MILLISECONDS.toNanos(elapsedMillis)));
+    }
+
+    /**
+     * Aguarda o processamento em segundo plano até o formato receber o explain. O {@code verify} com {@code timeout}
+     * do Mockito não serve aqui, pois falha assim que encontra uma chamada com outros argumentos.
+     */
+    private void awaitExplained(String shape) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!slowOperationLog.getExplainedShapes().containsKey(shape)) {
+            assert System.nanoTime() < deadline : "Explain não obtido para " + shape;
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void slowFind_ExplainOncePerShape() throws InterruptedException {
+        execute("find", "{\"find\": \"dyn.produto\", \"filter\": {\"codigo\": 1}, \"sort\": {\"nome\": 1}}", 150);
+        execute("find", "{\"find\": \"dyn.produto\", \"filter\": {\"codigo\": 2}}", 300);
+        // Operações rápidas, fora das entidades ou que não são buscas não geram explain
+        execute("find", "{\"find\": \"dyn.produto\", \"filter\": {\"nome\": \"a\"}}", 10);
+        execute("find", "{\"find\": \"seq.collections\", \"filter\": {\"nome\": \"a\"}}", 500);
+        execute("delete", "{\"delete\": \"dyn.produto\", \"deletes\": [{\"q\": {\"nome\": \"a\"}, \"limit\": 1}]}", 500);
+        // As operações são processadas em ordem: após o explain deste formato, as anteriores já foram processadas
+        execute("find", "{\"find\": \"dyn.produto\", \"filter\": {\"codigo\": {\"$gt\": 5}}}", 200);
+        awaitExplained("dyn.produto {\"codigo\": {\"$gt\": ?}}");
+        verify(mongoService).explainFind(eq("dyn.produto"), eq(BsonDocument.parse("{\"codigo\": {\"$gt\": 5}}")), any(BsonDocument.class));
+
+        verify(mongoService).explainFind("dyn.produto", BsonDocument.parse("{\"codigo\": 1}"), BsonDocument.parse("{\"nome\": 1}"));
+        verify(mongoService, times(2)).explainFind(any(String.class), any(BsonDocument.class), any(BsonDocument.class));
+        Assert.assertEquals(2, slowOperationLog.getExplainedShapes().size());
+        assert slowOperationLog.getExplainedShapes().get("dyn.produto {\"codigo\": ?}");
+    }
+
+    @Test
+    public void disabled() throws InterruptedException {
+        when(mongoService.getSlowOperationThreshold()).thenReturn(0);
+        execute("find", "{\"find\": \"dyn.produto\", \"filter\": {\"codigo\": 1}}", 1000);
+        when(mongoService.getSlowOperationThreshold()).thenReturn(100);
+        execute("find", "{\"find\": \"dyn.produto\", \"filter\": {\"nome\": \"a\"}}", 200);
+        awaitExplained("dyn.produto {\"nome\": ?}");
+        verify(mongoService).explainFind(eq("dyn.produto"), eq(BsonDocument.parse("{\"nome\": \"a\"}")), any(BsonDocument.class));
+        verify(mongoService, times(1)).explainFind(any(String.class), any(BsonDocument.class), any(BsonDocument.class));
+    }
+
+    @Test
+    public void isCollectionScan() {
+        assert SlowOperationLog.isCollectionScan(Document.parse("{\"queryPlanner\": {\"winningPlan\": {\"stage\": \"SORT\", "
+                + "\"inputStage\": {\"stage\": \"COLLSCAN\", \"direction\": \"forward\"}}}}"));
+        assert SlowOperationLog.isCollectionScan(Document.parse("{\"queryPlanner\": {\"winningPlan\": {\"stage\": \"SHARD_MERGE\", "
+                + "\"shards\": [{\"winningPlan\": {\"stage\": \"IXSCAN\"}}, {\"winningPlan\": {\"stage\": \"COLLSCAN\"}}]}}}"));
+        assert !SlowOperationLog.isCollectionScan(Document.parse("{\"queryPlanner\": {\"winningPlan\": {\"stage\": \"FETCH\", "
+                + "\"inputStage\": {\"stage\": \"IXSCAN\", \"indexName\": \"codigo_1\"}}, "
+                + "\"rejectedPlans\": [{\"stage\": \"COLLSCAN\"}]}}"));
+        assert !SlowOperationLog.isCollectionScan(Document.parse("{\"ok\": 1}"));
+    }
+}
@@ -0,0 +1,165 @@
+package br.com.xyinc.dyndata.service;
+
+import br.com.xyinc.dyndata.model.EntityDescriptor;
+import br.com.xyinc.dyndata.model.FieldDescriptor;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClient;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.annotation.Resource;
+import java.util.*;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TimestampMigrationServiceTest {
+
+    @Mock
+    private MongoService              mongoService;
+    @Mock
+    private EntityManagementService   entityManagementService;
+    @Mock
+    private DynamicEntityService      dynamicEntityService;
+    @InjectMocks
+    @Resource
+    private TimestampMigrationService timestampMigrationService;
+
+    private EntityDescriptor descriptor;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        timestampMigrationService.setDelayMillis(0);
+        descriptor = new EntityDescriptor();
+        descriptor.setUriName("XXX");
+        descriptor.setFields(Arrays.asList(
+                new FieldDescriptor("A", FieldTypeService.DefaultFieldTypes.STRING, false),
+                new FieldDescriptor("T", FieldTypeService.DefaultFieldTypes.TIMESTAMP, true),
+                new FieldDescriptor("D", FieldTypeService.DefaultFieldTypes.DOCUMENT_ARR, true,
+                        Collections.singletonList(new FieldDescriptor("U", FieldTypeService.DefaultFieldTypes.TIMESTAMP_ARR, true)))
+        ));
+    }
+
+    private static String toJson(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()).toJson();
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoIterable<Document> mockIterable(List<Document> documents) {
+        MongoIterable<Document> iterable = mock(MongoIterable.class);
+        when(iterable.into(any())).thenReturn(new ArrayList<>(documents));
+        return iterable;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void migrate() throws InterruptedException {
+        Document document = new Document("_id", 1)
+                .append("A", "x")
+                .append("T", new BsonTimestamp(1522615135000L))
+                .append("D", Collections.singletonList(new Document("U", Arrays.asList(new BsonTimestamp(1000L), new BsonTimestamp(2000L)))));
+        MongoIterable<Document> batch  = mockIterable(Collections.singletonList(document));
+        MongoIterable<Document> second = mockIterable(Collections.singletonList(new Document("_id", 2).append("T", new BsonTimestamp(1L))));
+        MongoIterable<Document> empty  = mockIterable(Collections.emptyList());
+        ArgumentCaptor<Bson>    filter = ArgumentCaptor.forClass(Bson.class);
+        ArgumentCaptor<Bson>    sort   = ArgumentCaptor.forClass(Bson.class);
+        when(mongoService.find(anyString(), filter.capture(), any(), sort.capture(), eq(1))).thenReturn(batch, second, empty);
+        when(mongoService.callBulkWrite(anyString(), any(), eq(false))).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+        timestampMigrationService.setBatchSize(1);
+
+        assert timestampMigrationService.migrate(descriptor) == 2;
+
+        // Cada lote lê apenas os objetos seguintes ao último _id do lote anterior
+        String typeFilter = "{ \"$or\" : [{ \"T\" : { \"$type\" : 17 } }, { \"D.U\" : { \"$type\" : 17 } }] }";
+        Assert.assertEquals(typeFilter, toJson(filter.getAllValues().get(0)));
+        Assert.assertEquals("{ \"_id\" : { \"$gt\" : 1 }, \"$or\" : [{ \"T\" : { \"$type\" : 17 } }, { \"D.U\" : { \"$type\" : 17 } }] }",
+                toJson(filter.getAllValues().get(1)));
+        Assert.assertEquals("{ \"_id\" : { \"$gt\" : 2 }, \"$or\" : [{ \"T\" : { \"$type\" : 17 } }, { \"D.U\" : { \"$type\" : 17 } }] }",
+                toJson(filter.getAllValues().get(2)));
+        Assert.assertEquals("{ \"_id\" : 1 }", toJson(sort.getValue()));
+        ArgumentCaptor<List> updates = ArgumentCaptor.forClass(List.class);
+        verify(mongoService, times(2)).callBulkWrite(eq("dyn.XXX"), updates.capture(), eq(false));
+        UpdateOneModel<Document> update = (UpdateOneModel<Document>) updates.getAllValues().get(0).get(0);
+        Document                 set    = (Document) ((Document) update.getUpdate()).get("$set");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("T", "D")), set.keySet());
+        Assert.assertEquals(new Date(1522615135000L), set.get("T"));
+        Assert.assertEquals(Arrays.asList(new Date(1000L), new Date(2000L)), ((Document) ((List) set.get("D")).get(0)).get("U"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("_id", "T", "D")), ((Document) update.getFilter()).keySet());
+        verify(dynamicEntityService, times(2)).invalidateEntity(descriptor);
+    }
+
+    @Test
+    public void migrate_DuplicateKey() throws InterruptedException {
+        MongoIterable<Document> batch = mockIterable(Arrays.asList(new Document("_id", 1).append("T", new BsonTimestamp(1L)),
+                new Document("_id", 2).append("T", new BsonTimestamp(2L))));
+        MongoIterable<Document> empty = mockIterable(Collections.emptyList());
+        when(mongoService.find(anyString(), any(), any(), any(), anyInt())).thenReturn(batch, empty);
+        when(mongoService.callBulkWrite(anyString(), any(), eq(false))).thenThrow(new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()),
+                Collections.singletonList(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)), null, new ServerAddress()));
+        timestampMigrationService.setBatchSize(2);
+
+        // O objeto com chave duplicada é ignorado e a conversão continua nos lotes seguintes
+        assert timestampMigrationService.migrate(descriptor) == 1;
+        verify(mongoService, times(2)).find(anyString(), any(), any(), any(), anyInt());
+        verify(mongoService, times(1)).callBulkWrite(anyString(), any(), eq(false));
+        verify(dynamicEntityService).invalidateEntity(descriptor);
+    }
+
+    @Test
+    public void migrate_ChangedDuringMigration() throws InterruptedException {
+        MongoIterable<Document> first  = mockIterable(Arrays.asList(new Document("_id", 1).append("T", new BsonTimestamp(1L)),
+                new Document("_id", 2).append("T", new BsonTimestamp(2L))));
+        MongoIterable<Document> second = mockIterable(Collections.singletonList(new Document("_id", 2).append("T", new BsonTimestamp(3L))));
+        when(mongoService.find(anyString(), any(), any(), any(), anyInt())).thenReturn(first, second);
+        when(mongoService.callBulkWrite(anyString(), any(), eq(false))).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+
+        // O objeto alterado durante a primeira passada é convertido na passada seguinte
+        assert timestampMigrationService.migrate(descriptor) == 2;
+        verify(mongoService, times(2)).callBulkWrite(anyString(), any(), eq(false));
+    }
+
+    @Test
+    public void migrate_StopsWhenNothingModified() throws InterruptedException {
+        MongoIterable<Document> batch = mockIterable(Collections.singletonList(new Document("_id", 1).append("T", new BsonTimestamp(1L))));
+        when(mongoService.find(anyString(), any(), any(), any(), anyInt())).thenReturn(batch);
+        when(mongoService.callBulkWrite(anyString(), any(), eq(false))).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, Collections.emptyList()));
+
+        assert timestampMigrationService.migrate(descriptor) == 0;
+        verify(mongoService, times(1)).callBulkWrite(anyString(), any(), eq(false));
+        verify(dynamicEntityService).invalidateEntity(descriptor);
+    }
+
+    @Test
+    public void migrate_NoTimestampFields() throws InterruptedException {
+        descriptor.setFields(Collections.singletonList(new FieldDescriptor("A", FieldTypeService.DefaultFieldTypes.STRING, false)));
+        assert timestampMigrationService.migrate(descriptor) == 0;
+        verify(mongoService, never()).find(anyString(), any(), any(), any(), anyInt());
+        verify(dynamicEntityService, never()).invalidateEntity(any());
+    }
+
+    @Test
+    public void convertTimestamps_Unchanged() {
+        Document document = new Document("A", Arrays.asList(1, 2)).append("B", new Document("C", "x"));
+        assert TimestampMigrationService.convertTimestamps(document) == document;
+    }
+}
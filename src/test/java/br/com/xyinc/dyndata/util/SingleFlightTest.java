@@ -0,0 +1,110 @@
+package br.com.xyinc.dyndata.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_Coalesced() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger                loads   = new AtomicInteger();
+        CountDownLatch               started = new CountDownLatch(1);
+        CountDownLatch               release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> flights.execute("a", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "result";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> second = executor.submit(() -> flights.execute("a", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assert "result".equals(first.get(5, TimeUnit.SECONDS));
+        assert "result".equals(second.get(5, TimeUnit.SECONDS));
+        assert loads.get() == 1;
+        assert "new".equals(flights.execute("a", () -> "new"));
+    }
+
+    @Test
+    public void execute_ExceptionShared() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CountDownLatch               started = new CountDownLatch(1);
+        CountDownLatch               release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> flights.execute("a", () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalArgumentException("falha");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> second = executor.submit(() -> flights.execute("a", () -> "other"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assert isIllegalArgument(first);
+        assert isIllegalArgument(second);
+    }
+
+    @Test
+    public void forget() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CountDownLatch               started = new CountDownLatch(1);
+        CountDownLatch               release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> flights.execute("a", () -> {
+            started.countDown();
+            await(release);
+            return "old";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        flights.forget("a");
+        assert "new".equals(flights.execute("a", () -> "new"));
+        release.countDown();
+        assert "old".equals(first.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isIllegalArgument(Future<String> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof IllegalArgumentException;
+        }
+    }
+}
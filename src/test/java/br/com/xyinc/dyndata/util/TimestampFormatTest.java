@@ -0,0 +1,74 @@
+package br.com.xyinc.dyndata.util;
+
+import br.com.xyinc.dyndata.exception.TimestampFormatException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.stream.IntStream;
+
+public class TimestampFormatTest {
+
+    private static final long MILLIS = 1522615135000L;
+
+    @Test
+    public void parse_Canonical() {
+        Assert.assertEquals(MILLIS, TimestampFormat.parse("2018-04-01T20:38:55.000+0000"));
+        Assert.assertEquals(MILLIS, TimestampFormat.parse("2018-04-01T17:38:55.000-0300"));
+        Assert.assertEquals(MILLIS + 123, TimestampFormat.parse("2018-04-01T23:08:55.123+0230"));
+        Assert.assertEquals(MILLIS, TimestampFormat.parse("2018-04-01T20:38:55Z"));
+        Assert.assertEquals(MILLIS + 5, TimestampFormat.parse("2018-04-01T20:38:55.005Z"));
+        Assert.assertEquals(MILLIS, TimestampFormat.parse("2018-04-01T17:38:55-03:00"));
+        assert TimestampFormat.parseCanonical("2018-04-01T17:38:55.000-0300") == MILLIS;
+    }
+
+    @Test
+    public void parse_Alternative() {
+        assert TimestampFormat.parseCanonical("2018-04-01T20:38:55.1Z") == Long.MIN_VALUE;
+        Assert.assertEquals(MILLIS + 100, TimestampFormat.parse("2018-04-01T20:38:55.1Z"));
+        Assert.assertEquals(MILLIS + 123, TimestampFormat.parse("2018-04-01T20:38:55.123456789+00:00"));
+        Assert.assertEquals(MILLIS - 55000, TimestampFormat.parse("2018-04-01T17:38-03"));
+    }
+
+    @Test
+    public void parse_Invalid() {
+        String[] invalid = {"2018-04-01T20:38:55", "2018-04-01", "2018-13-01T20:38:55.000Z", "2018-02-29T20:38:55.000Z",
+                "2018-04-01T24:00:00.000Z", "2018-04-01T20:38:55.000+1900", "2018-04-01 20:38:55.000Z", "", "agora"};
+        for (String text : invalid) {
+            try {
+                TimestampFormat.parse(text);
+                Assert.fail(text);
+            } catch (TimestampFormatException e) {
+                Assert.assertEquals("Campos tipo Timestamp devem ser enviados no formato ISO", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void parse_SameAsSimpleDateFormat() {
+        SimpleDateFormat legacy = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        legacy.setTimeZone(TimeZone.getTimeZone("GMT-03:00"));
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long   millis = (long) (random.nextDouble() * 4_000_000_000_000L) - 1_000_000_000_000L;
+            String text   = legacy.format(millis);
+            Assert.assertEquals(text, millis, TimestampFormat.parse(text));
+        }
+    }
+
+    @Test
+    public void parse_Concurrent() {
+        assert IntStream.range(0, 10_000).parallel()
+                .allMatch(i -> TimestampFormat.parse(TimestampFormat.format(MILLIS + i * 1000L)) == MILLIS + i * 1000L);
+    }
+
+    @Test
+    public void format() {
+        Assert.assertEquals("2018-04-01T20:38:55.000+0000", TimestampFormat.format(MILLIS));
+        Assert.assertEquals("1970-01-01T00:00:00.000+0000", TimestampFormat.format(0));
+        Assert.assertEquals("1969-12-31T23:59:59.999+0000", TimestampFormat.format(-1));
+        Assert.assertEquals("2000-02-29T12:00:00.007+0000", TimestampFormat.format(951825600007L));
+    }
+}